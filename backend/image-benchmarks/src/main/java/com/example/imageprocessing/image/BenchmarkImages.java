@@ -0,0 +1,70 @@
+package com.example.imageprocessing.image;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Fixtures shared by the benchmarks: deterministic synthetic photos and a transformation
+ * service wired without S3 or a database, since only the in-memory pipeline is measured.
+ */
+final class BenchmarkImages {
+
+    private BenchmarkImages() {
+    }
+
+    static ImageTransformationService newTransformationService() {
+        ColorProfileConverter colorProfileConverter = new ColorProfileConverter(32);
+        return new ImageTransformationService(null, null, null, null, new ObjectMapper(),
+                new TiledImageProcessor(colorProfileConverter), new LosslessJpegTransformer(), new TransformationPlanner(),
+                new TransformMetrics(new SimpleMeterRegistry()), null,
+                new AnimatedGifProcessor(0, 16), new ConvolutionFilter(0),
+                new WatermarkRenderer(null, null, colorProfileConverter, 64L << 20, 32L << 20), colorProfileConverter);
+    }
+
+    /**
+     * Parses sizes written as {@code WIDTHxHEIGHT}, the format used by the {@code size} benchmark parameters.
+     */
+    static Dimension parseSize(String size) {
+        String[] parts = size.split("x");
+        return new Dimension(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    /**
+     * Gradients plus noise: smooth areas and fine detail, so encoders and resamplers do realistic work.
+     */
+    static BufferedImage createPhoto(Dimension size) {
+        BufferedImage image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < size.height; y++) {
+            for (int x = 0; x < size.width; x++) {
+                int red = (x * 255 / size.width + random.nextInt(24)) & 0xFF;
+                int green = (y * 255 / size.height + random.nextInt(24)) & 0xFF;
+                int blue = ((x + y) * 255 / (size.width + size.height) + random.nextInt(24)) & 0xFF;
+                image.setRGB(x, y, (red << 16) | (green << 8) | blue);
+            }
+        }
+        return image;
+    }
+
+    static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, format, output)) {
+            throw new IOException("No image writer available for format: " + format);
+        }
+        return output.toByteArray();
+    }
+
+    static Image source(String format) {
+        Image image = new Image();
+        image.setFilename("benchmark." + format);
+        image.setContentType("png".equals(format) ? "image/png" : "image/jpeg");
+        return image;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.imageprocessing.image;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the in-memory transformation pipeline: end to end from encoded bytes to encoded bytes,
+ * and each stage (resize, crop, filters, encode) in isolation. The fork runs with the Vector API
+ * module, like the service, so the color-matrix filters use their SIMD kernel.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class ImageTransformationBenchmark {
+
+    @Param({"640x480", "1920x1080", "4000x3000"})
+    public String size;
+
+    @Param({"jpg", "png"})
+    public String format;
+
+    private ImageTransformationService service;
+    private BufferedImage decoded;
+    private byte[] encoded;
+    private TransformationPlan endToEndPlan;
+    private TransformationPlan resizePlan;
+    private TransformationPlan cropPlan;
+    private ImageTransformationService.FilterOptions stackedFilters;
+    private final ConvolutionFilter convolutionFilter = new ConvolutionFilter(0);
+    private final WatermarkRenderer watermarkRenderer = new WatermarkRenderer(null, null, new ColorProfileConverter(32), 64L << 20, 32L << 20);
+    private ImageTransformationService.WatermarkOptions watermark;
+
+    @Setup
+    public void setUp() throws IOException {
+        service = BenchmarkImages.newTransformationService();
+        Dimension dimension = BenchmarkImages.parseSize(size);
+        decoded = BenchmarkImages.createPhoto(dimension);
+        encoded = BenchmarkImages.encode(decoded, format);
+
+        TransformationPlanner planner = new TransformationPlanner();
+        Image source = BenchmarkImages.source(format);
+
+        ImageTransformationService.CropOptions crop = new ImageTransformationService.CropOptions();
+        crop.setX(dimension.width / 8);
+        crop.setY(dimension.height / 8);
+        crop.setWidth(dimension.width * 3 / 4);
+        crop.setHeight(dimension.height * 3 / 4);
+
+        ImageTransformationService.ResizeOptions resize = new ImageTransformationService.ResizeOptions();
+        resize.setWidth(dimension.width / 2);
+
+        ImageTransformationService.FilterOptions filters = new ImageTransformationService.FilterOptions();
+        filters.setSepia(true);
+
+        ImageTransformationService.TransformationOptions endToEnd = new ImageTransformationService.TransformationOptions();
+        endToEnd.setCrop(crop);
+        endToEnd.setResize(resize);
+        endToEnd.setRotate(90);
+        endToEnd.setFilters(filters);
+        endToEndPlan = planner.plan(source, endToEnd, dimension);
+
+        ImageTransformationService.TransformationOptions resizeOnly = new ImageTransformationService.TransformationOptions();
+        resizeOnly.setResize(resize);
+        resizePlan = planner.plan(source, resizeOnly, dimension);
+
+        ImageTransformationService.TransformationOptions cropOnly = new ImageTransformationService.TransformationOptions();
+        cropOnly.setCrop(crop);
+        cropPlan = planner.plan(source, cropOnly, dimension);
+
+        stackedFilters = new ImageTransformationService.FilterOptions();
+        stackedFilters.setBrightness(1.1);
+        stackedFilters.setContrast(1.2);
+        stackedFilters.setSaturation(0.8);
+        stackedFilters.setHue(30.0);
+        stackedFilters.setSepia(true);
+
+        watermark = new ImageTransformationService.WatermarkOptions();
+        watermark.setText("Image Processing Service");
+        watermark.setTile(true);
+    }
+
+    @Benchmark
+    public byte[] applyTransformations() throws IOException {
+        return run(endToEndPlan);
+    }
+
+    @Benchmark
+    public byte[] resize() throws IOException {
+        return run(resizePlan);
+    }
+
+    @Benchmark
+    public byte[] crop() throws IOException {
+        return run(cropPlan);
+    }
+
+    @Benchmark
+    public void grayscaleFilter(Blackhole blackhole) {
+        blackhole.consume(service.applyGrayscaleFilter(decoded));
+    }
+
+    @Benchmark
+    public void sepiaFilter(Blackhole blackhole) {
+        blackhole.consume(service.applySepiaFilter(decoded));
+    }
+
+    // Five adjustments fused into one color matrix; should cost the same as sepiaFilter alone
+    @Benchmark
+    public void stackedFilters(Blackhole blackhole) {
+        blackhole.consume(ColorMatrix.of(stackedFilters).apply(decoded));
+    }
+
+    // The exact Gaussian kernel; its cost grows with the radius up to MAX_EXACT_SIGMA
+    @Benchmark
+    public void blurSmall(Blackhole blackhole) {
+        blackhole.consume(convolutionFilter.blur(decoded, 2));
+    }
+
+    // Running box sums; should cost about the same as blurSmall whatever the sigma
+    @Benchmark
+    public void blurLarge(Blackhole blackhole) {
+        blackhole.consume(convolutionFilter.blur(decoded, 40));
+    }
+
+    @Benchmark
+    public void sharpen(Blackhole blackhole) {
+        blackhole.consume(convolutionFilter.sharpen(decoded, 1, 1));
+    }
+
+    // The overlay is rendered on the first invocation and reused from the cache afterwards
+    @Benchmark
+    public void watermark(Blackhole blackhole) throws IOException {
+        blackhole.consume(watermarkRenderer.apply(decoded, watermark));
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        service.writeImage(decoded, format, output);
+        return output.toByteArray();
+    }
+
+    private byte[] run(TransformationPlan plan) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        service.applyTransformations(new ByteArrayInputStream(encoded), output, plan);
+        return output.toByteArray();
+    }
+}
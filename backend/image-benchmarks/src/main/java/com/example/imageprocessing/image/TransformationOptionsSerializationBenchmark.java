@@ -0,0 +1,51 @@
+package com.example.imageprocessing.image;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the JSON serialization of {@link ImageTransformationService.TransformationOptions}
+ * that is stored with every transformed image.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransformationOptionsSerializationBenchmark {
+
+    private ImageTransformationService service;
+    private ImageTransformationService.TransformationOptions options;
+
+    @Setup
+    public void setUp() {
+        service = BenchmarkImages.newTransformationService();
+
+        ImageTransformationService.ResizeOptions resize = new ImageTransformationService.ResizeOptions();
+        resize.setWidth(800);
+        resize.setHeight(600);
+
+        ImageTransformationService.CropOptions crop = new ImageTransformationService.CropOptions();
+        crop.setX(10);
+        crop.setY(20);
+        crop.setWidth(1024);
+        crop.setHeight(768);
+
+        ImageTransformationService.FilterOptions filters = new ImageTransformationService.FilterOptions();
+        filters.setGrayscale(true);
+
+        options = new ImageTransformationService.TransformationOptions();
+        options.setResize(resize);
+        options.setCrop(crop);
+        options.setRotate(90);
+        options.setFormat("png");
+        options.setFilters(filters);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return service.transformationOptionsToJson(options);
+    }
+}
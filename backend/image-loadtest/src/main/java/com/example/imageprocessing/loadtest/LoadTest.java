@@ -0,0 +1,263 @@
+package com.example.imageprocessing.loadtest;
+
+import com.example.imageprocessing.ImageServiceApplication;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Offline end-to-end load test: boots the service against an in-memory S3 stand-in and an
+ * embedded H2 database, seeds users and images, drives a weighted mix of API calls at a fixed
+ * concurrency and reports latency percentiles and throughput per endpoint. A first argument of
+ * {@code startup} runs the {@link StartupBenchmark} instead.
+ *
+ * <pre>
+ * java -jar image-loadtest/target/image-loadtest.jar --concurrency=32 --duration=120 --mix=list:50,transform:50
+ * </pre>
+ */
+public class LoadTest {
+    private static final String PASSWORD = "loadtest-password";
+    private static final String BUCKET = "loadtest-bucket";
+    private static final int BULK_UPLOAD_FILES = 20;
+
+    private final LoadTestConfig config;
+    private final EndpointStats stats = new EndpointStats();
+    private final List<UserSession> sessions = new ArrayList<>();
+    private final AtomicInteger registeredUsers = new AtomicInteger();
+    private byte[] sampleImage;
+    private ServiceClient client;
+
+    public LoadTest(LoadTestConfig config) {
+        this.config = config;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && "startup".equals(args[0])) {
+            StartupBenchmark.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        new LoadTest(LoadTestConfig.fromArgs(args)).run();
+    }
+
+    public void run() throws Exception {
+        try (LocalS3Server s3 = new LocalS3Server()) {
+            ConfigurableApplicationContext context = startService(s3.getEndpoint());
+            try {
+                String baseUrl = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port");
+                client = new ServiceClient(baseUrl, stats);
+                sampleImage = createSampleImage(config.getImageWidth(), config.getImageHeight());
+
+                seed();
+                System.out.printf("Seeded %d users with %d images each (%d objects in local S3)%n",
+                        config.getUsers(), config.getImagesPerUser(), s3.getObjectCount());
+
+                drive(config.getWarmupSeconds());
+                stats.setRecording(true);
+                long start = System.nanoTime();
+                drive(config.getDurationSeconds());
+                double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+                stats.setRecording(false);
+
+                System.out.printf("%nConcurrency %d, %.1fs measured after %ds warm-up%n%n",
+                        config.getConcurrency(), elapsedSeconds, config.getWarmupSeconds());
+                stats.printSummary(System.out, elapsedSeconds);
+                stats.writeReports(config.getOutputDirectory(), elapsedSeconds);
+                System.out.println("\nHistograms written to " + config.getOutputDirectory().toAbsolutePath());
+            } finally {
+                context.close();
+            }
+        }
+    }
+
+    private ConfigurableApplicationContext startService(String s3Endpoint) {
+        return SpringApplication.run(ImageServiceApplication.class,
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:loadtest;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--database.primary.maximum-pool-size=" + Math.max(10, config.getConcurrency()),
+                // The few seeded users would otherwise hit the per-user rate limit; the fair queue still applies
+                "--image.transform.throttle.rate-per-minute=1000000",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                "--aws.s3.endpoint=" + s3Endpoint,
+                "--aws.s3.bucket=" + BUCKET,
+                "--aws.accessKeyId=loadtest",
+                "--aws.secretKey=loadtest",
+                "--logging.level.root=WARN");
+    }
+
+    private void seed() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(config.getConcurrency());
+        try {
+            List<Future<UserSession>> futures = new ArrayList<>();
+            for (int i = 0; i < config.getUsers(); i++) {
+                String username = "loadtest-user-" + registeredUsers.incrementAndGet();
+                futures.add(executor.submit(() -> {
+                    UserSession session = new UserSession(username, client.register(username, PASSWORD));
+                    for (int j = 0; j < config.getImagesPerUser(); j++) {
+                        JsonNode image = client.upload(session.token, sampleImage, "seed-" + j + ".jpg", "image/jpeg");
+                        session.imageIds.add(image.get("id").asLong());
+                    }
+                    return session;
+                }));
+            }
+            for (Future<UserSession> future : futures) {
+                sessions.add(future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void drive(int seconds) throws InterruptedException {
+        if (seconds <= 0) {
+            return;
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService executor = Executors.newFixedThreadPool(config.getConcurrency());
+        for (int i = 0; i < config.getConcurrency(); i++) {
+            executor.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    try {
+                        execute(pickOperation());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (Exception e) {
+                        // Already counted as an error by the client; keep the load going
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(seconds + 300L, TimeUnit.SECONDS);
+    }
+
+    private String pickOperation() {
+        int total = config.getMix().values().stream().mapToInt(Integer::intValue).sum();
+        int roll = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<String, Integer> entry : config.getMix().entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty traffic mix");
+    }
+
+    private void execute(String operation) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        UserSession session = sessions.get(random.nextInt(sessions.size()));
+        long imageId = session.imageIds.get(random.nextInt(session.imageIds.size()));
+
+        switch (operation) {
+            case "list" -> client.listImages(session.token, 0, 10);
+            case "get" -> client.getImage(session.token, imageId);
+            case "download-url" -> client.getDownloadUrl(session.token, imageId);
+            case "presigned-upload" -> {
+                String name = "presigned-" + random.nextInt(1_000_000) + ".jpg";
+                JsonNode upload = client.getUploadUrl(session.token, name, "image/jpeg");
+                client.putPresigned(upload.get("uploadUrl").asText(), sampleImage, "image/jpeg");
+                JsonNode image = client.saveMetadata(session.token, upload.get("filename").asText(), name,
+                        "image/jpeg", sampleImage.length);
+                session.imageIds.add(image.get("id").asLong());
+            }
+            case "bulk-upload" -> {
+                // One session presigns the whole batch and one call commits all rows
+                List<Map<String, Object>> files = new ArrayList<>();
+                for (int i = 0; i < BULK_UPLOAD_FILES; i++) {
+                    files.add(Map.of("filename", "bulk-" + random.nextInt(1_000_000) + ".jpg", "contentType", "image/jpeg"));
+                }
+                JsonNode uploads = client.createUploadSession(session.token, files).get("uploads");
+                List<Map<String, Object>> metadata = new ArrayList<>();
+                for (int i = 0; i < uploads.size(); i++) {
+                    JsonNode upload = uploads.get(i);
+                    client.putPresigned(upload.get("uploadUrl").asText(), sampleImage, "image/jpeg");
+                    metadata.add(Map.of("filename", upload.get("filename").asText(), "originalName", files.get(i).get("filename"),
+                            "contentType", "image/jpeg", "fileSize", sampleImage.length));
+                }
+                for (JsonNode image : client.saveMetadataBatch(session.token, metadata)) {
+                    session.imageIds.add(image.get("id").asLong());
+                }
+            }
+            case "multipart-upload" -> {
+                String name = "multipart-" + random.nextInt(1_000_000) + ".jpg";
+                JsonNode upload = client.createMultipartUpload(session.token, name, "image/jpeg", sampleImage.length);
+                int partSize = upload.get("partSize").asInt();
+                List<Map<String, Object>> parts = new ArrayList<>();
+                for (JsonNode part : upload.get("parts")) {
+                    int partNumber = part.get("partNumber").asInt();
+                    int offset = (partNumber - 1) * partSize;
+                    String eTag = client.putPart(part.get("uploadUrl").asText(), sampleImage, offset,
+                            Math.min(partSize, sampleImage.length - offset));
+                    parts.add(Map.of("partNumber", partNumber, "etag", eTag));
+                }
+                JsonNode image = client.completeMultipartUpload(session.token, upload.get("uploadId").asText(), parts);
+                session.imageIds.add(image.get("id").asLong());
+            }
+            case "upload" -> {
+                JsonNode image = client.upload(session.token, sampleImage, "upload-" + random.nextInt(1_000_000) + ".jpg",
+                        "image/jpeg");
+                session.imageIds.add(image.get("id").asLong());
+            }
+            case "transform" -> client.transform(session.token, imageId, randomTransformation(random));
+            case "login" -> client.login(session.username, PASSWORD);
+            case "register" -> client.register("loadtest-user-" + registeredUsers.incrementAndGet(), PASSWORD);
+            default -> throw new IllegalArgumentException("Unknown operation in mix: " + operation);
+        }
+    }
+
+    private Map<String, Object> randomTransformation(ThreadLocalRandom random) {
+        return switch (random.nextInt(4)) {
+            case 0 -> Map.of("resize", Map.of("width", 320));
+            case 1 -> Map.of("resize", Map.of("width", 800), "filters", Map.of("grayscale", true));
+            case 2 -> Map.of("crop", Map.of("x", 0, "y", 0, "width", config.getImageWidth() / 2,
+                    "height", config.getImageHeight() / 2), "rotate", 90);
+            default -> Map.of("resize", Map.of("width", 640, "height", 480), "format", "png",
+                    "filters", Map.of("sepia", true));
+        };
+    }
+
+    static byte[] createSampleImage(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = (x * 255 / width + random.nextInt(16)) & 0xFF;
+                int green = (y * 255 / height + random.nextInt(16)) & 0xFF;
+                image.setRGB(x, y, (red << 16) | (green << 8) | 0x80);
+            }
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", output);
+        return output.toByteArray();
+    }
+
+    private static final class UserSession {
+        private final String username;
+        private final String token;
+        private final List<Long> imageIds = new CopyOnWriteArrayList<>();
+
+        private UserSession(String username, String token) {
+            this.username = username;
+            this.token = token;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.imageprocessing.loadtest;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Load-test settings, read from {@code --name=value} command-line arguments.
+ */
+public class LoadTestConfig {
+    private int concurrency = 16;
+    private int durationSeconds = 60;
+    private int warmupSeconds = 10;
+    private int users = 10;
+    private int imagesPerUser = 20;
+    private int imageWidth = 1280;
+    private int imageHeight = 960;
+    private Path outputDirectory = Path.of("target", "loadtest");
+    private final Map<String, Integer> mix = new LinkedHashMap<>();
+
+    public LoadTestConfig() {
+        // Read-heavy default mix; weights are relative
+        mix.put("list", 30);
+        mix.put("get", 15);
+        mix.put("download-url", 15);
+        mix.put("presigned-upload", 8);
+        mix.put("upload", 4);
+        mix.put("bulk-upload", 1);
+        mix.put("multipart-upload", 1);
+        mix.put("transform", 20);
+        mix.put("login", 6);
+        mix.put("register", 2);
+    }
+
+    public static LoadTestConfig fromArgs(String[] args) {
+        LoadTestConfig config = new LoadTestConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            switch (name) {
+                case "concurrency" -> config.concurrency = Integer.parseInt(value);
+                case "duration" -> config.durationSeconds = Integer.parseInt(value);
+                case "warmup" -> config.warmupSeconds = Integer.parseInt(value);
+                case "users" -> config.users = Integer.parseInt(value);
+                case "images-per-user" -> config.imagesPerUser = Integer.parseInt(value);
+                case "image-size" -> {
+                    String[] size = value.split("x");
+                    config.imageWidth = Integer.parseInt(size[0]);
+                    config.imageHeight = Integer.parseInt(size[1]);
+                }
+                case "output" -> config.outputDirectory = Path.of(value);
+                case "mix" -> {
+                    // e.g. --mix=list:50,transform:50
+                    config.mix.clear();
+                    for (String entry : value.split(",")) {
+                        String[] parts = entry.split(":");
+                        config.mix.put(parts[0], Integer.parseInt(parts[1]));
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unknown option: --" + name);
+            }
+        }
+        return config;
+    }
+
+    public int getConcurrency() { return concurrency; }
+    public int getDurationSeconds() { return durationSeconds; }
+    public int getWarmupSeconds() { return warmupSeconds; }
+    public int getUsers() { return users; }
+    public int getImagesPerUser() { return imagesPerUser; }
+    public int getImageWidth() { return imageWidth; }
+    public int getImageHeight() { return imageHeight; }
+    public Path getOutputDirectory() { return outputDirectory; }
+    public Map<String, Integer> getMix() { return mix; }
+}
@@ -0,0 +1,329 @@
+package com.example.imageprocessing.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal in-memory, path-style S3 stand-in covering the object operations the service uses:
+ * PUT (including presigned PUTs and CopyObject), GET with ranges, HEAD, DELETE, batched
+ * DeleteObjects and multipart uploads. Signatures are accepted without verification.
+ */
+public class LocalS3Server implements AutoCloseable {
+    private static final Pattern DELETE_KEY = Pattern.compile("<Key>(.*?)</Key>", Pattern.DOTALL);
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    private static final Pattern PART_NUMBER = Pattern.compile("<PartNumber>(\\d+)</PartNumber>");
+
+    private final Map<String, StoredObject> objects = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte[]>> multipartUploads = new ConcurrentHashMap<>();
+    private final HttpServer server;
+
+    public LocalS3Server() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public int getObjectCount() {
+        return objects.size();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getRawPath();
+            String query = exchange.getRequestURI().getRawQuery();
+            String key = URLDecoder.decode(path.substring(1), StandardCharsets.UTF_8);
+
+            switch (exchange.getRequestMethod()) {
+                case "PUT" -> {
+                    if (queryParameter(query, "uploadId") != null) {
+                        uploadPart(exchange, query);
+                    } else {
+                        put(exchange, key);
+                    }
+                }
+                case "GET" -> get(exchange, key, true);
+                case "HEAD" -> get(exchange, key, false);
+                case "DELETE" -> {
+                    String uploadId = queryParameter(query, "uploadId");
+                    if (uploadId != null) {
+                        multipartUploads.remove(uploadId);
+                    } else {
+                        objects.remove(key);
+                    }
+                    exchange.sendResponseHeaders(204, -1);
+                }
+                case "POST" -> {
+                    // POSTs are not retried on a stale pooled connection, so don't let the SDK reuse these
+                    exchange.getResponseHeaders().add("Connection", "close");
+                    if (query != null && query.startsWith("delete")) {
+                        deleteObjects(exchange, key);
+                    } else if (query != null && query.startsWith("uploads")) {
+                        createMultipartUpload(exchange, key);
+                    } else if (queryParameter(query, "uploadId") != null) {
+                        completeMultipartUpload(exchange, key, queryParameter(query, "uploadId"));
+                    } else {
+                        sendError(exchange, 501, "NotImplemented", "Unsupported POST " + path);
+                    }
+                }
+                default -> sendError(exchange, 405, "MethodNotAllowed", exchange.getRequestMethod());
+            }
+        } catch (Exception e) {
+            sendError(exchange, 500, "InternalError", e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void put(HttpExchange exchange, String key) throws IOException {
+        String copySource = exchange.getRequestHeaders().getFirst("x-amz-copy-source");
+        if (copySource != null) {
+            String sourceKey = URLDecoder.decode(copySource.startsWith("/") ? copySource.substring(1) : copySource,
+                    StandardCharsets.UTF_8);
+            StoredObject source = objects.get(sourceKey);
+            if (source == null) {
+                sendError(exchange, 404, "NoSuchKey", sourceKey);
+                return;
+            }
+            objects.put(key, source);
+            sendXml(exchange, 200, "<CopyObjectResult><ETag>" + source.eTag + "</ETag><LastModified>"
+                    + DateTimeFormatter.ISO_INSTANT.format(source.lastModified) + "</LastModified></CopyObjectResult>");
+            return;
+        }
+
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        String contentSha = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        if (contentSha != null && contentSha.startsWith("STREAMING-")) {
+            body = decodeAwsChunked(body);
+        }
+
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        StoredObject object = new StoredObject(body, contentType == null ? "application/octet-stream" : contentType);
+        objects.put(key, object);
+
+        exchange.getResponseHeaders().add("ETag", object.eTag);
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void get(HttpExchange exchange, String key, boolean includeBody) throws IOException {
+        StoredObject object = objects.get(key);
+        if (object == null) {
+            if (includeBody) {
+                sendError(exchange, 404, "NoSuchKey", key);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+            return;
+        }
+
+        int start = 0;
+        int end = object.data.length - 1;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null) {
+            Matcher matcher = RANGE.matcher(range);
+            if (matcher.matches()) {
+                if (matcher.group(1).isEmpty()) {
+                    start = Math.max(0, object.data.length - Integer.parseInt(matcher.group(2)));
+                } else {
+                    start = Integer.parseInt(matcher.group(1));
+                    if (!matcher.group(2).isEmpty()) {
+                        end = Math.min(end, Integer.parseInt(matcher.group(2)));
+                    }
+                }
+                status = 206;
+                exchange.getResponseHeaders().add("Content-Range",
+                        "bytes " + start + "-" + end + "/" + object.data.length);
+            }
+        }
+
+        int length = Math.max(0, end - start + 1);
+        exchange.getResponseHeaders().add("Content-Type", object.contentType);
+        exchange.getResponseHeaders().add("ETag", object.eTag);
+        exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+        exchange.getResponseHeaders().add("Last-Modified",
+                DateTimeFormatter.RFC_1123_DATE_TIME.format(object.lastModified));
+        if (!includeBody) {
+            exchange.getResponseHeaders().add("Content-Length", String.valueOf(length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+
+        exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(object.data, start, length);
+        }
+    }
+
+    private void deleteObjects(HttpExchange exchange, String bucket) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        StringBuilder result = new StringBuilder("<DeleteResult>");
+        Matcher matcher = DELETE_KEY.matcher(body);
+        while (matcher.find()) {
+            String key = matcher.group(1).replace("&lt;", "<").replace("&gt;", ">")
+                    .replace("&quot;", "\"").replace("&apos;", "'").replace("&amp;", "&");
+            objects.remove(bucket + "/" + key);
+            result.append("<Deleted><Key>").append(matcher.group(1)).append("</Key></Deleted>");
+        }
+        result.append("</DeleteResult>");
+        sendXml(exchange, 200, result.toString());
+    }
+
+    private void createMultipartUpload(HttpExchange exchange, String key) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        String uploadId = UUID.randomUUID().toString();
+        multipartUploads.put(uploadId, new ConcurrentHashMap<>());
+        int slash = key.indexOf('/');
+        sendXml(exchange, 200, "<InitiateMultipartUploadResult><Bucket>" + key.substring(0, slash) + "</Bucket><Key>"
+                + key.substring(slash + 1) + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+    }
+
+    private void uploadPart(HttpExchange exchange, String query) throws IOException {
+        Map<Integer, byte[]> parts = multipartUploads.get(queryParameter(query, "uploadId"));
+        if (parts == null) {
+            sendError(exchange, 404, "NoSuchUpload", query);
+            return;
+        }
+
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        String contentSha = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        if (contentSha != null && contentSha.startsWith("STREAMING-")) {
+            body = decodeAwsChunked(body);
+        }
+        parts.put(Integer.parseInt(queryParameter(query, "partNumber")), body);
+
+        exchange.getResponseHeaders().add("ETag", "\"" + StoredObject.md5(body) + "\"");
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    // Concatenates the parts listed in the manifest; ETags are not checked
+    private void completeMultipartUpload(HttpExchange exchange, String key, String uploadId) throws IOException {
+        String manifest = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        Map<Integer, byte[]> parts = multipartUploads.remove(uploadId);
+        if (parts == null) {
+            sendError(exchange, 404, "NoSuchUpload", uploadId);
+            return;
+        }
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        Matcher matcher = PART_NUMBER.matcher(manifest);
+        while (matcher.find()) {
+            byte[] part = parts.get(Integer.parseInt(matcher.group(1)));
+            if (part == null) {
+                sendError(exchange, 400, "InvalidPart", matcher.group(1));
+                return;
+            }
+            data.write(part);
+        }
+
+        StoredObject object = new StoredObject(data.toByteArray(), "application/octet-stream");
+        objects.put(key, object);
+        sendXml(exchange, 200, "<CompleteMultipartUploadResult><Key>" + key + "</Key><ETag>" + object.eTag
+                + "</ETag></CompleteMultipartUploadResult>");
+    }
+
+    private static String queryParameter(String query, String name) {
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            String parameterName = equals < 0 ? parameter : parameter.substring(0, equals);
+            if (parameterName.equals(name)) {
+                return equals < 0 ? "" : URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    // Strips the "size;chunk-signature=...\r\n<data>\r\n" framing the SDK uses for signed streaming uploads
+    private byte[] decodeAwsChunked(byte[] body) {
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream(body.length);
+        int position = 0;
+        while (position < body.length) {
+            int lineEnd = indexOfCrlf(body, position);
+            if (lineEnd < 0) {
+                break;
+            }
+            String header = new String(body, position, lineEnd - position, StandardCharsets.US_ASCII);
+            int size = Integer.parseInt(header.split(";")[0].trim(), 16);
+            if (size == 0) {
+                break;
+            }
+            decoded.write(body, lineEnd + 2, size);
+            position = lineEnd + 2 + size + 2;
+        }
+        return decoded.toByteArray();
+    }
+
+    private int indexOfCrlf(byte[] data, int from) {
+        for (int i = from; i < data.length - 1; i++) {
+            if (data[i] == '\r' && data[i + 1] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void sendError(HttpExchange exchange, int status, String code, String message) throws IOException {
+        sendXml(exchange, status, "<Error><Code>" + code + "</Code><Message>" + message + "</Message></Error>");
+    }
+
+    private void sendXml(HttpExchange exchange, int status, String xml) throws IOException {
+        byte[] body = xml.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    private static final class StoredObject {
+        private final byte[] data;
+        private final String contentType;
+        private final String eTag;
+        private final ZonedDateTime lastModified = ZonedDateTime.now(ZoneOffset.UTC);
+
+        private StoredObject(byte[] data, String contentType) {
+            this.data = data;
+            this.contentType = contentType;
+            this.eTag = "\"" + md5(data) + "\"";
+        }
+
+        private static String md5(byte[] data) {
+            try {
+                return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(data));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.imageprocessing.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Thin HTTP client for the service's REST API. Every call is timed into {@link EndpointStats}
+ * under the endpoint's route template.
+ */
+public class ServiceClient {
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String baseUrl;
+    private final EndpointStats stats;
+
+    public ServiceClient(String baseUrl, EndpointStats stats) {
+        this.baseUrl = baseUrl;
+        this.stats = stats;
+    }
+
+    public String register(String username, String password) throws IOException, InterruptedException {
+        return send("POST /register", json("/register", null, Map.of("username", username, "password", password))).body();
+    }
+
+    public String login(String username, String password) throws IOException, InterruptedException {
+        return send("POST /login", json("/login", null, Map.of("username", username, "password", password))).body();
+    }
+
+    public JsonNode listImages(String token, int page, int limit) throws IOException, InterruptedException {
+        HttpRequest request = authorized("/images?page=" + page + "&limit=" + limit, token).GET().build();
+        return objectMapper.readTree(send("GET /images", request).body());
+    }
+
+    public JsonNode getImage(String token, long id) throws IOException, InterruptedException {
+        HttpRequest request = authorized("/images/" + id, token).GET().build();
+        return objectMapper.readTree(send("GET /images/{id}", request).body());
+    }
+
+    public JsonNode getDownloadUrl(String token, long id) throws IOException, InterruptedException {
+        HttpRequest request = authorized("/images/" + id + "/download-url", token).GET().build();
+        return objectMapper.readTree(send("GET /images/{id}/download-url", request).body());
+    }
+
+    public JsonNode getUploadUrl(String token, String filename, String contentType) throws IOException, InterruptedException {
+        return objectMapper.readTree(send("POST /images/upload-url",
+                json("/images/upload-url", token, Map.of("filename", filename, "contentType", contentType))).body());
+    }
+
+    public void putPresigned(String url, byte[] data, String contentType) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", contentType)
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(data))
+                .build();
+        send("PUT <presigned S3 url>", request);
+    }
+
+    public JsonNode saveMetadata(String token, String filename, String originalName, String contentType, long size)
+            throws IOException, InterruptedException {
+        return objectMapper.readTree(send("POST /images/save-metadata", json("/images/save-metadata", token, Map.of(
+                "filename", filename,
+                "originalName", originalName,
+                "contentType", contentType,
+                "fileSize", size))).body());
+    }
+
+    public JsonNode createUploadSession(String token, List<Map<String, Object>> files) throws IOException, InterruptedException {
+        return objectMapper.readTree(send("POST /images/upload-session",
+                json("/images/upload-session", token, Map.of("files", files))).body());
+    }
+
+    public JsonNode saveMetadataBatch(String token, List<Map<String, Object>> images) throws IOException, InterruptedException {
+        return objectMapper.readTree(send("POST /images/save-metadata/batch",
+                json("/images/save-metadata/batch", token, Map.of("images", images))).body());
+    }
+
+    public JsonNode createMultipartUpload(String token, String filename, String contentType, long size)
+            throws IOException, InterruptedException {
+        return objectMapper.readTree(send("POST /images/multipart-uploads", json("/images/multipart-uploads", token, Map.of(
+                "filename", filename,
+                "contentType", contentType,
+                "fileSize", size))).body());
+    }
+
+    /**
+     * Uploads one part to its presigned URL and returns the part's ETag for the completion manifest.
+     */
+    public String putPart(String url, byte[] data, int offset, int length) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(data, offset, length))
+                .build();
+        return send("PUT <presigned S3 part url>", request).headers().firstValue("ETag").orElse(null);
+    }
+
+    public JsonNode completeMultipartUpload(String token, String uploadId, List<Map<String, Object>> parts)
+            throws IOException, InterruptedException {
+        return objectMapper.readTree(send("POST /images/multipart-uploads/{uploadId}/complete",
+                json("/images/multipart-uploads/" + uploadId + "/complete", token, Map.of("parts", parts))).body());
+    }
+
+    public JsonNode upload(String token, byte[] data, String filename, String contentType) throws IOException, InterruptedException {
+        String boundary = UUID.randomUUID().toString();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"\r\n"
+                + "Content-Type: " + contentType + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(data);
+        body.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        HttpRequest request = authorized("/images", token)
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+        return objectMapper.readTree(send("POST /images", request).body());
+    }
+
+    public JsonNode transform(String token, long id, Map<String, Object> transformations) throws IOException, InterruptedException {
+        return objectMapper.readTree(send("POST /images/{id}/transform",
+                json("/images/" + id + "/transform", token, Map.of("transformations", transformations))).body());
+    }
+
+    private HttpResponse<String> send(String endpoint, HttpRequest request) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<String> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            stats.record(endpoint, start, false);
+            throw e;
+        }
+
+        boolean success = response.statusCode() / 100 == 2;
+        stats.record(endpoint, start, success);
+        if (!success) {
+            throw new IOException(endpoint + " returned " + response.statusCode() + ": " + response.body());
+        }
+        return response;
+    }
+
+    private HttpRequest json(String path, String token, Object body) throws IOException {
+        return authorized(path, token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)))
+                .build();
+    }
+
+    private HttpRequest.Builder authorized(String path, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofMinutes(2));
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.imageprocessing.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Cold-start benchmark: launches the service in a fresh JVM per run, from the thin jar built with
+ * {@code mvn -Pstartup package}, against an in-memory S3 stand-in and an embedded H2 database, and
+ * measures the time from launching the process until it serves its first requests. Each run is
+ * repeated with and without Spring AOT and an AppCDS archive; the archives are produced first by a
+ * training run of the same jar.
+ *
+ * <pre>
+ * java -jar image-loadtest/target/image-loadtest.jar startup --runs=5
+ * </pre>
+ */
+public class StartupBenchmark {
+    private static final String PASSWORD = "startup-password";
+    private static final String BUCKET = "startup-bucket";
+    private static final Duration START_TIMEOUT = Duration.ofMinutes(5);
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+    private Path jar = Path.of("image-service", "target", "startup", "image-service-0.0.1-SNAPSHOT-startup.jar");
+    private Path outputDirectory = Path.of("target", "startup");
+    private int runs = 3;
+    private List<String> modes = List.of("default", "cds", "aot", "aot-cds");
+
+    public static void main(String[] args) throws Exception {
+        StartupBenchmark benchmark = new StartupBenchmark();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            switch (name) {
+                case "jar" -> benchmark.jar = Path.of(value);
+                case "output" -> benchmark.outputDirectory = Path.of(value);
+                case "runs" -> benchmark.runs = Integer.parseInt(value);
+                // e.g. --modes=default,aot-cds
+                case "modes" -> benchmark.modes = Arrays.asList(value.split(","));
+                default -> throw new IllegalArgumentException("Unknown option: --" + name);
+            }
+        }
+        benchmark.run();
+    }
+
+    public void run() throws Exception {
+        if (!Files.isRegularFile(jar)) {
+            throw new IllegalStateException("No startup jar at " + jar.toAbsolutePath()
+                    + "; build it with: mvn -pl image-service -Pstartup package -DskipTests");
+        }
+        Files.createDirectories(outputDirectory);
+        byte[] sampleImage = LoadTest.createSampleImage(640, 480);
+
+        Map<String, List<Timings>> results = new LinkedHashMap<>();
+        try (LocalS3Server s3 = new LocalS3Server()) {
+            for (String mode : modes) {
+                if (mode.endsWith("cds")) {
+                    train(mode, s3.getEndpoint());
+                }
+                List<Timings> timings = new ArrayList<>();
+                for (int run = 1; run <= runs; run++) {
+                    Timings result = measure(mode, run, s3.getEndpoint(), sampleImage);
+                    System.out.printf("%-8s run %d: %s%n", mode, run, result);
+                    timings.add(result);
+                }
+                results.put(mode, timings);
+            }
+        }
+
+        System.out.printf("%nMedian of %d runs in milliseconds; ready and first request are counted from process launch%n", runs);
+        System.out.printf("%-8s %10s %14s %14s %16s%n", "mode", "ready", "first request", "first upload", "first transform");
+        results.forEach((mode, timings) -> System.out.printf("%-8s %10d %14d %14d %16d%n", mode,
+                median(timings, Timings::ready), median(timings, Timings::firstRequest),
+                median(timings, Timings::firstUpload), median(timings, Timings::firstTransform)));
+    }
+
+    /**
+     * Boots the service once with {@code -Dspring.context.exit=onRefresh}, which stops it right after
+     * the context has started, and dumps the classes it loaded into the mode's archive.
+     */
+    private void train(String mode, String s3Endpoint) throws IOException, InterruptedException {
+        Path archive = archive(mode);
+        Files.deleteIfExists(archive);
+        List<String> command = javaCommand(mode, false);
+        command.add(command.size() - 2, "-XX:ArchiveClassesAtExit=" + archive.toAbsolutePath());
+        command.add(command.size() - 2, "-Dspring.context.exit=onRefresh");
+        command.addAll(serviceArguments(freePort(), s3Endpoint));
+
+        Process process = start(command, outputDirectory.resolve(mode + "-training.log"));
+        if (!process.waitFor(START_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS) || !Files.exists(archive)) {
+            process.destroyForcibly();
+            throw new IllegalStateException("Training run for " + mode + " did not produce " + archive);
+        }
+        System.out.printf("%-8s archive: %d MB%n", mode, Files.size(archive) >> 20);
+    }
+
+    private Timings measure(String mode, int run, String s3Endpoint, byte[] sampleImage) throws Exception {
+        int port = freePort();
+        String baseUrl = "http://127.0.0.1:" + port;
+        List<String> command = javaCommand(mode, mode.endsWith("cds"));
+        command.addAll(serviceArguments(port, s3Endpoint));
+
+        long launched = System.nanoTime();
+        Process process = start(command, outputDirectory.resolve(mode + "-" + run + ".log"));
+        try {
+            awaitHealthy(process, baseUrl, launched);
+            long ready = elapsedMillis(launched);
+
+            ServiceClient client = new ServiceClient(baseUrl, new EndpointStats());
+            String token = client.register("startup-user", PASSWORD);
+            long firstRequest = elapsedMillis(launched);
+
+            long start = System.nanoTime();
+            JsonNode image = client.upload(token, sampleImage, "startup.jpg", "image/jpeg");
+            long firstUpload = elapsedMillis(start);
+
+            start = System.nanoTime();
+            client.transform(token, image.get("id").asLong(), Map.of("resize", Map.of("width", 320, "height", 240)));
+            long firstTransform = elapsedMillis(start);
+            return new Timings(ready, firstRequest, firstUpload, firstTransform);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private List<String> javaCommand(String mode, boolean useArchive) {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("--add-modules");
+        command.add("jdk.incubator.vector");
+        if (mode.startsWith("aot")) {
+            command.add("-Dspring.aot.enabled=true");
+        }
+        if (useArchive) {
+            command.add("-XX:SharedArchiveFile=" + archive(mode).toAbsolutePath());
+        }
+        command.add("-jar");
+        command.add(jar.toAbsolutePath().toString());
+        return command;
+    }
+
+    private static List<String> serviceArguments(int port, String s3Endpoint) {
+        return new ArrayList<>(List.of(
+                "--server.port=" + port,
+                "--spring.datasource.url=jdbc:h2:mem:startup;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                "--aws.s3.endpoint=" + s3Endpoint,
+                "--aws.s3.bucket=" + BUCKET,
+                "--aws.accessKeyId=startup",
+                "--aws.secretKey=startup",
+                "--logging.level.root=WARN"));
+    }
+
+    private Path archive(String mode) {
+        return outputDirectory.resolve(mode + ".jsa");
+    }
+
+    private static Process start(List<String> command, Path log) throws IOException {
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+    }
+
+    private void awaitHealthy(Process process, String baseUrl, long launched) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/health")).GET().build();
+        while (elapsedMillis(launched) < START_TIMEOUT.toMillis()) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Service exited with status " + process.exitValue() + " before it was ready");
+            }
+            try {
+                if (httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("Service did not become healthy within " + START_TIMEOUT);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static long median(List<Timings> timings, ToLongFunction<Timings> metric) {
+        long[] values = timings.stream().mapToLong(metric).sorted().toArray();
+        return values[values.length / 2];
+    }
+
+    private record Timings(long ready, long firstRequest, long firstUpload, long firstTransform) {
+        @Override
+        public String toString() {
+            return String.format("ready %d ms, first request %d ms, first upload %d ms, first transform %d ms",
+                    ready, firstRequest, firstUpload, firstTransform);
+        }
+    }
+}
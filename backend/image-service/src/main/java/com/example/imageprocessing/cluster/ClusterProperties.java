@@ -0,0 +1,38 @@
+package com.example.imageprocessing.cluster;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cluster mode settings, bound from {@code cluster.*}. Members are the base URLs of all instances
+ * (including this one, named by {@code self}) and must be listed identically on every instance so
+ * they all build the same hash ring.
+ */
+@ConfigurationProperties(prefix = "cluster")
+public class ClusterProperties {
+    private boolean enabled = false;
+    private String self;
+    private List<String> members = new ArrayList<>();
+    private int virtualNodes = 128;
+    private long connectTimeoutMs = 1000;
+    private long forwardTimeoutMs = 60000;
+    // How long a member that could not be reached is skipped before it is tried again
+    private long failureCooldownMs = 10000;
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public String getSelf() { return self; }
+    public void setSelf(String self) { this.self = self; }
+    public List<String> getMembers() { return members; }
+    public void setMembers(List<String> members) { this.members = members; }
+    public int getVirtualNodes() { return virtualNodes; }
+    public void setVirtualNodes(int virtualNodes) { this.virtualNodes = virtualNodes; }
+    public long getConnectTimeoutMs() { return connectTimeoutMs; }
+    public void setConnectTimeoutMs(long connectTimeoutMs) { this.connectTimeoutMs = connectTimeoutMs; }
+    public long getForwardTimeoutMs() { return forwardTimeoutMs; }
+    public void setForwardTimeoutMs(long forwardTimeoutMs) { this.forwardTimeoutMs = forwardTimeoutMs; }
+    public long getFailureCooldownMs() { return failureCooldownMs; }
+    public void setFailureCooldownMs(long failureCooldownMs) { this.failureCooldownMs = failureCooldownMs; }
+}
@@ -0,0 +1,70 @@
+package com.example.imageprocessing.cluster;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring with virtual nodes. Each member is placed at {@code virtualNodes} points so
+ * keys spread evenly, and adding or removing a member only moves the keys of its own arcs.
+ */
+final class ConsistentHashRing {
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+    private final int memberCount;
+
+    ConsistentHashRing(Collection<String> members, int virtualNodes) {
+        Set<String> distinct = new LinkedHashSet<>(members);
+        for (String member : distinct) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(member + "#" + i), member);
+            }
+        }
+        this.memberCount = distinct.size();
+    }
+
+    /**
+     * Members in ring order starting at the owner of {@code key}; the ones after the owner are the fallbacks.
+     */
+    List<String> owners(long key) {
+        List<String> owners = new ArrayList<>(memberCount);
+        if (ring.isEmpty()) {
+            return owners;
+        }
+
+        long point = hash(Long.toString(key));
+        Set<String> seen = new LinkedHashSet<>();
+        for (Map.Entry<Long, String> entry : ring.tailMap(point, true).entrySet()) {
+            if (seen.add(entry.getValue()) && seen.size() == memberCount) {
+                break;
+            }
+        }
+        if (seen.size() < memberCount) {
+            for (String member : ring.headMap(point, false).values()) {
+                if (seen.add(member) && seen.size() == memberCount) {
+                    break;
+                }
+            }
+        }
+        owners.addAll(seen);
+        return owners;
+    }
+
+    // First 8 bytes of MD5: well mixed, and stable across JVMs unlike String.hashCode spreading
+    private static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.imageprocessing.cluster;
+
+import com.example.imageprocessing.timing.RequestTimings;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cluster mode for transformations: every image has an owner node picked from a consistent-hash
+ * ring on its id, so repeated transforms of an image hit the same node and its in-process state
+ * (in-flight coalescing, caches) instead of a random one. Requests arriving elsewhere are forwarded
+ * to the owner with the caller's credentials; if the owner cannot be reached the next node on the
+ * ring is tried, and finally the request is handled locally.
+ *
+ * A transform is not idempotent (each run stores a new transformed image), so a request is only
+ * passed on when the owner certainly did not run it: the connection could not be made, or the
+ * owner answered 502 or 503. Once the request has been sent, a timeout or a dropped connection
+ * is answered with 504 or 502 instead of running the transform a second time elsewhere.
+ *
+ * Forwarded requests carry an HMAC-SHA256 signature over the forwarding member, the image id and
+ * the caller's credentials, keyed with {@code cluster.secret} (or {@code jwt.secret}). Only a
+ * request with a valid signature is run where it arrives; a client sending the forwarding header
+ * itself is routed like any other request.
+ */
+@Component
+@EnableConfigurationProperties(ClusterProperties.class)
+public class TransformRouter {
+    private static final Logger logger = LoggerFactory.getLogger(TransformRouter.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    /** Marks a forwarded request so the receiving node handles it instead of routing it again. */
+    public static final String FORWARDED_HEADER = "X-Cluster-Forwarded-By";
+    /** Signs a forwarded request; see {@link #isForwarded}. */
+    public static final String SIGNATURE_HEADER = "X-Cluster-Signature";
+    /** Names the node that ran the transformation. */
+    public static final String NODE_HEADER = "X-Cluster-Node";
+
+    private final ClusterProperties properties;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry registry;
+    private final ConsistentHashRing ring;
+    private final HttpClient httpClient;
+    private final Map<String, Long> unavailableUntil = new ConcurrentHashMap<>();
+    private final ThreadLocal<Mac> macs;
+
+    public TransformRouter(ClusterProperties properties, ObjectMapper objectMapper, MeterRegistry registry,
+                           @Value("${cluster.secret:${jwt.secret:}}") String secret) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.registry = registry;
+        if (properties.isEnabled()) {
+            if (properties.getSelf() == null || !properties.getMembers().contains(properties.getSelf())) {
+                throw new IllegalStateException("cluster.self must be one of cluster.members");
+            }
+            if (secret == null || secret.isBlank()) {
+                throw new IllegalStateException("cluster.secret or jwt.secret must be set to sign forwarded requests");
+            }
+            SecretKeySpec key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+            this.macs = ThreadLocal.withInitial(() -> newMac(key));
+            this.ring = new ConsistentHashRing(properties.getMembers(), properties.getVirtualNodes());
+            this.httpClient = HttpClient.newBuilder()
+                    .connectTimeout(Duration.ofMillis(properties.getConnectTimeoutMs()))
+                    .build();
+            logger.info("Cluster mode: {} of {}", properties.getSelf(), properties.getMembers());
+        } else {
+            this.ring = null;
+            this.httpClient = null;
+            this.macs = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    public String getSelf() {
+        return properties.getSelf();
+    }
+
+    /**
+     * Whether the request was forwarded by a member of the cluster, and should be run here rather
+     * than routed again. A missing or invalid signature makes it an ordinary client request.
+     */
+    public boolean isForwarded(Long imageId, String forwardedBy, String signature, String authorization) {
+        if (!properties.isEnabled() || forwardedBy == null) {
+            return false;
+        }
+        if (signature != null && properties.getMembers().contains(forwardedBy)) {
+            byte[] expected = sign(forwardedBy, imageId, authorization).getBytes(StandardCharsets.US_ASCII);
+            // Constant time, so response timing does not reveal how much of a forged signature matched
+            if (MessageDigest.isEqual(expected, signature.getBytes(StandardCharsets.US_ASCII))) {
+                return true;
+            }
+        }
+        logger.warn("Ignoring unsigned or invalid {} header ({}) on transform of image {}", FORWARDED_HEADER,
+                forwardedBy, imageId);
+        count("forged_forward");
+        return false;
+    }
+
+    /**
+     * Forwards the transform of {@code imageId} to its owner when that is another node.
+     *
+     * @return the owner's response, or empty if this node should run the transformation itself
+     */
+    public Optional<ResponseEntity<byte[]>> route(Long imageId, Object body, String authorization) {
+        if (!properties.isEnabled()) {
+            return Optional.empty();
+        }
+
+        List<String> owners = ring.owners(imageId);
+        for (String member : owners) {
+            if (member.equals(properties.getSelf())) {
+                count(member.equals(owners.get(0)) ? "local" : "fallback");
+                return Optional.empty();
+            }
+            if (isUnavailable(member)) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+            try {
+                ResponseEntity<byte[]> response = forward(member, imageId, body, authorization);
+                RequestTimings.record(RequestTimings.FORWARD, System.nanoTime() - start);
+                if (response != null) {
+                    count(member.equals(owners.get(0)) ? "forwarded" : "forwarded_fallback");
+                    return Optional.of(response);
+                }
+            } catch (ConnectException | HttpConnectTimeoutException e) {
+                RequestTimings.record(RequestTimings.FORWARD, System.nanoTime() - start);
+                logger.warn("Cluster member {} unreachable for transform of image {}: {}", member, imageId, e.toString());
+            } catch (HttpTimeoutException e) {
+                // Sent, and possibly still running on the member: do not start it again elsewhere
+                RequestTimings.record(RequestTimings.FORWARD, System.nanoTime() - start);
+                logger.warn("Cluster member {} timed out on transform of image {}", member, imageId);
+                count("forward_timeout");
+                return Optional.of(gatewayError(HttpStatus.GATEWAY_TIMEOUT, "Transformation timed out on " + member));
+            } catch (IOException e) {
+                RequestTimings.record(RequestTimings.FORWARD, System.nanoTime() - start);
+                logger.warn("Cluster member {} failed during transform of image {}: {}", member, imageId, e.toString());
+                markUnavailable(member);
+                count("forward_failed");
+                return Optional.of(gatewayError(HttpStatus.BAD_GATEWAY, "Transformation failed on " + member));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            markUnavailable(member);
+        }
+
+        // Unreachable when self is a member, but keeps the request alive if every other node is down
+        count("fallback");
+        return Optional.empty();
+    }
+
+    // Returns null when the member is up but refused the request (502, 503), so the next node is tried
+    private ResponseEntity<byte[]> forward(String member, Long imageId, Object body, String authorization)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(member + "/images/" + imageId + "/transform"))
+                .timeout(Duration.ofMillis(properties.getForwardTimeoutMs()))
+                .header(HttpHeaders.CONTENT_TYPE, "application/json")
+                .header(FORWARDED_HEADER, properties.getSelf())
+                .header(SIGNATURE_HEADER, sign(properties.getSelf(), imageId, authorization))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)));
+        if (authorization != null) {
+            request.header(HttpHeaders.AUTHORIZATION, authorization);
+        }
+
+        HttpResponse<byte[]> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        int status = response.statusCode();
+        if (status == 502 || status == 503) {
+            logger.warn("Cluster member {} answered {} for transform of image {}", member, status, imageId);
+            return null;
+        }
+
+        ResponseEntity.BodyBuilder relayed = ResponseEntity.status(status);
+        for (String header : List.of(HttpHeaders.CONTENT_TYPE, HttpHeaders.RETRY_AFTER, NODE_HEADER)) {
+            response.headers().firstValue(header).ifPresent(value -> relayed.header(header, value));
+        }
+        return relayed.body(response.body());
+    }
+
+    private String sign(String member, Long imageId, String authorization) {
+        String signed = member + "\n" + imageId + "\n" + (authorization == null ? "" : authorization);
+        byte[] digest = macs.get().doFinal(signed.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    }
+
+    private static Mac newMac(SecretKeySpec key) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+
+    private static ResponseEntity<byte[]> gatewayError(HttpStatus status, String message) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean isUnavailable(String member) {
+        Long until = unavailableUntil.get(member);
+        if (until == null) {
+            return false;
+        }
+        if (System.nanoTime() - until >= 0) {
+            unavailableUntil.remove(member, until);
+            return false;
+        }
+        return true;
+    }
+
+    private void markUnavailable(String member) {
+        unavailableUntil.put(member, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getFailureCooldownMs()));
+        Counter.builder("image.cluster.forward.failures")
+                .description("Transformations that could not be forwarded to a cluster member")
+                .tag("member", member)
+                .register(registry)
+                .increment();
+    }
+
+    private void count(String outcome) {
+        Counter.builder("image.cluster.transform.routed")
+                .description("Transformations by where they were routed")
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+}
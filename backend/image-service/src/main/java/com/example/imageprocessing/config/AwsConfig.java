@@ -3,14 +3,24 @@ package com.example.imageprocessing.config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 
+import java.net.URI;
+
+/**
+ * S3 clients. Building them loads and initializes a large part of the AWS SDK, so they are lazy:
+ * consumers inject them with {@code @Lazy}, which hands out a proxy, and the real client is built
+ * on its first call rather than while the application starts.
+ */
 @Configuration
 public class AwsConfig {
 
@@ -23,7 +33,12 @@ public class AwsConfig {
     @Value("${aws.region:ap-south-1}")
     private String region;
 
+    // Optional S3-compatible endpoint (MinIO, a local stand-in, ...); requires path-style addressing
+    @Value("${aws.s3.endpoint:}")
+    private String endpoint;
+
     @Bean
+    @Lazy
     public AwsCredentialsProvider awsCredentialsProvider() {
         // If access key and secret key are provided, use them
         if (accessKey != null && !accessKey.isEmpty() && secretKey != null && !secretKey.isEmpty()) {
@@ -35,18 +50,28 @@ public class AwsConfig {
     }
 
     @Bean
+    @Lazy
     public S3Client s3Client(AwsCredentialsProvider credentialsProvider) {
-        return S3Client.builder()
+        S3ClientBuilder builder = S3Client.builder()
                 .region(Region.of(region))
-                .credentialsProvider(credentialsProvider)
-                .build();
+                .credentialsProvider(credentialsProvider);
+        if (endpoint != null && !endpoint.isEmpty()) {
+            builder.endpointOverride(URI.create(endpoint))
+                    .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build());
+        }
+        return builder.build();
     }
 
     @Bean
+    @Lazy
     public S3Presigner s3Presigner(AwsCredentialsProvider credentialsProvider) {
-        return S3Presigner.builder()
+        S3Presigner.Builder builder = S3Presigner.builder()
                 .region(Region.of(region))
-                .credentialsProvider(credentialsProvider)
-                .build();
+                .credentialsProvider(credentialsProvider);
+        if (endpoint != null && !endpoint.isEmpty()) {
+            builder.endpointOverride(URI.create(endpoint))
+                    .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build());
+        }
+        return builder.build();
     }
 }
\ No newline at end of file
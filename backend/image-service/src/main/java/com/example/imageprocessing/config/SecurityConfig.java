@@ -1,6 +1,7 @@
 package com.example.imageprocessing.config;
 
 import com.example.imageprocessing.jwt.JwtFilter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -14,6 +15,10 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 public class SecurityConfig {
     private final JwtFilter jwtFilter;
 
+    // Actuator endpoints get their own port when set; it should not be reachable from outside
+    @Value("${management.server.port:}")
+    private Integer managementPort;
+
     public SecurityConfig(JwtFilter jwtFilter) {
         this.jwtFilter = jwtFilter;
     }
@@ -25,6 +30,12 @@ public class SecurityConfig {
             .and()
             .authorizeHttpRequests(auth -> auth
                 .requestMatchers("/register", "/login", "/images/config").permitAll()
+                .requestMatchers("/actuator/health").permitAll()
+                // Metrics are scraped anonymously only on the internal management port, and need a
+                // login on the public one
+                .requestMatchers(request -> managementPort != null && request.getLocalPort() == managementPort).permitAll()
+                // Signed render URLs carry their own authorization
+                .requestMatchers("/r/**").permitAll()
                 .anyRequest().authenticated()
             );
         http.addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class);
@@ -0,0 +1,301 @@
+package com.example.imageprocessing.image;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Transforms animated GIFs frame by frame and writes them back as animated GIFs, keeping every
+ * frame's delay and the loop count.
+ *
+ * GIF frames are patches drawn over the previous ones according to their disposal method, so they
+ * are first composited, in order, onto a canvas of the logical screen size; each complete frame is
+ * then transformed on its own, which is where the time goes, on a shared pool of frame workers.
+ * Frames are written in order as they complete, and at most {@code window-frames} of them are
+ * decoded but not yet written, so memory is bounded by the window and not by the frame count.
+ */
+@Component
+public class AnimatedGifProcessor {
+    private static final Logger logger = LoggerFactory.getLogger(AnimatedGifProcessor.class);
+
+    private static final String IMAGE_METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+    private static final String STREAM_METADATA_FORMAT = "javax_imageio_gif_stream_1.0";
+
+    private final ExecutorService executor;
+    private final int windowFrames;
+
+    @FunctionalInterface
+    public interface FrameTransform {
+        BufferedImage apply(BufferedImage frame) throws IOException;
+    }
+
+    public AnimatedGifProcessor(@Value("${image.transform.animation.threads:0}") int threads,
+                                @Value("${image.transform.animation.window-frames:16}") int windowFrames) {
+        this.executor = Executors.newFixedThreadPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        this.windowFrames = Math.max(1, windowFrames);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * True for GIFs with more than one frame. Only block headers are read, no pixels are decoded.
+     */
+    public boolean isAnimated(Path source) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return false;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                if (!"gif".equalsIgnoreCase(reader.getFormatName())) {
+                    return false;
+                }
+                reader.setInput(input, false, true);
+                return reader.getNumImages(true) > 1;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Applies {@code transform} to every composited frame and writes the animated result as GIF.
+     *
+     * @return the number of frames written
+     */
+    public int process(Path source, OutputStream outputStream, FrameTransform transform) throws IOException {
+        Deque<PendingFrame> pending = new ArrayDeque<>();
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile());
+             ImageOutputStream output = ImageIO.createImageOutputStream(outputStream)) {
+            ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+            ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+            try {
+                reader.setInput(input, true, false);
+                writer.setOutput(output);
+                writer.prepareWriteSequence(null);
+
+                Canvas canvas = null;
+                int loopCount = -1;
+                int frames = 0;
+                for (int index = 0; ; index++) {
+                    IIOImage decoded;
+                    try {
+                        decoded = reader.readAll(index, null);
+                    } catch (IndexOutOfBoundsException e) {
+                        break;
+                    }
+                    IIOMetadataNode metadata = (IIOMetadataNode) decoded.getMetadata().getAsTree(IMAGE_METADATA_FORMAT);
+                    if (canvas == null) {
+                        canvas = new Canvas(logicalScreenSize(reader, decoded.getRenderedImage()));
+                        loopCount = loopCount(metadata);
+                    }
+
+                    BufferedImage frame = canvas.draw((BufferedImage) decoded.getRenderedImage(), metadata);
+                    pending.add(new PendingFrame(executor.submit(() -> transform.apply(frame)), delay(metadata)));
+                    if (pending.size() >= windowFrames) {
+                        writeFrame(writer, pending.remove(), frames++ == 0 ? loopCount : -1);
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    writeFrame(writer, pending.remove(), frames++ == 0 ? loopCount : -1);
+                }
+                writer.endWriteSequence();
+
+                if (canvas != null) {
+                    logger.info("Transformed {} animation frames of a {}x{} GIF", frames, canvas.width(), canvas.height());
+                }
+                return frames;
+            } finally {
+                reader.dispose();
+                writer.dispose();
+            }
+        } finally {
+            pending.forEach(frame -> frame.image().cancel(true));
+        }
+    }
+
+    private void writeFrame(ImageWriter writer, PendingFrame frame, int loopCount) throws IOException {
+        BufferedImage image = await(frame.image());
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), param);
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(IMAGE_METADATA_FORMAT);
+
+        // Every written frame covers the whole canvas, so it replaces the previous one entirely
+        IIOMetadataNode control = child(root, "GraphicControlExtension", true);
+        control.setAttribute("disposalMethod", "restoreToBackgroundColor");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("delayTime", Integer.toString(frame.delay()));
+        if (!control.hasAttribute("transparentColorFlag")) {
+            control.setAttribute("transparentColorFlag", "FALSE");
+            control.setAttribute("transparentColorIndex", "0");
+        }
+
+        if (loopCount >= 0) {
+            IIOMetadataNode extension = new IIOMetadataNode("ApplicationExtension");
+            extension.setAttribute("applicationID", "NETSCAPE");
+            extension.setAttribute("authenticationCode", "2.0");
+            extension.setUserObject(new byte[]{1, (byte) (loopCount & 0xFF), (byte) ((loopCount >> 8) & 0xFF)});
+            child(root, "ApplicationExtensions", true).appendChild(extension);
+        }
+
+        metadata.setFromTree(IMAGE_METADATA_FORMAT, root);
+        writer.writeToSequence(new IIOImage(image, null, metadata), param);
+    }
+
+    private static BufferedImage await(Future<BufferedImage> frame) throws IOException {
+        try {
+            return frame.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while transforming animation frames", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to transform animation frame: " + cause.getMessage(), cause);
+        }
+    }
+
+    private static Dimension logicalScreenSize(ImageReader reader, RenderedImage firstFrame) throws IOException {
+        IIOMetadata streamMetadata = reader.getStreamMetadata();
+        if (streamMetadata != null) {
+            IIOMetadataNode screen = child((IIOMetadataNode) streamMetadata.getAsTree(STREAM_METADATA_FORMAT),
+                    "LogicalScreenDescriptor", false);
+            if (screen != null) {
+                int width = Integer.parseInt(screen.getAttribute("logicalScreenWidth"));
+                int height = Integer.parseInt(screen.getAttribute("logicalScreenHeight"));
+                if (width > 0 && height > 0) {
+                    return new Dimension(width, height);
+                }
+            }
+        }
+        // Some encoders leave the logical screen empty; the first frame then defines the canvas
+        return new Dimension(firstFrame.getWidth(), firstFrame.getHeight());
+    }
+
+    // The NETSCAPE2.0 extension of the first frame; -1 when absent, which means the animation plays once
+    private static int loopCount(IIOMetadataNode metadata) {
+        IIOMetadataNode extensions = child(metadata, "ApplicationExtensions", false);
+        if (extensions == null) {
+            return -1;
+        }
+        for (int i = 0; i < extensions.getLength(); i++) {
+            IIOMetadataNode extension = (IIOMetadataNode) extensions.item(i);
+            if ("NETSCAPE".equals(extension.getAttribute("applicationID"))
+                    && extension.getUserObject() instanceof byte[] data && data.length >= 3 && data[0] == 1) {
+                return (data[1] & 0xFF) | (data[2] & 0xFF) << 8;
+            }
+        }
+        return -1;
+    }
+
+    private static int delay(IIOMetadataNode metadata) {
+        IIOMetadataNode control = child(metadata, "GraphicControlExtension", false);
+        return control == null ? 0 : Integer.parseInt(control.getAttribute("delayTime"));
+    }
+
+    private static IIOMetadataNode child(IIOMetadataNode parent, String name, boolean create) {
+        for (int i = 0; i < parent.getLength(); i++) {
+            if (name.equals(parent.item(i).getNodeName())) {
+                return (IIOMetadataNode) parent.item(i);
+            }
+        }
+        if (!create) {
+            return null;
+        }
+        IIOMetadataNode node = new IIOMetadataNode(name);
+        parent.appendChild(node);
+        return node;
+    }
+
+    private record PendingFrame(Future<BufferedImage> image, int delay) {
+    }
+
+    /**
+     * The logical screen the frames are drawn on, tracking what each frame's disposal method leaves
+     * behind for the next one.
+     */
+    private static final class Canvas {
+        private final BufferedImage image;
+        private Rectangle previousBounds;
+        private String previousDisposal = "none";
+        private Raster beforePrevious;
+
+        private Canvas(Dimension size) {
+            this.image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        int width() { return image.getWidth(); }
+        int height() { return image.getHeight(); }
+
+        /**
+         * Draws the next frame and returns a copy of the complete picture it shows.
+         */
+        BufferedImage draw(BufferedImage frame, IIOMetadataNode metadata) {
+            if ("restoreToBackgroundColor".equals(previousDisposal)) {
+                // Browsers clear to transparent rather than to the background color, and so do we
+                Graphics2D graphics = image.createGraphics();
+                graphics.setComposite(AlphaComposite.Clear);
+                graphics.fill(previousBounds);
+                graphics.dispose();
+            } else if ("restoreToPrevious".equals(previousDisposal) && beforePrevious != null) {
+                image.setData(beforePrevious);
+            }
+
+            IIOMetadataNode descriptor = child(metadata, "ImageDescriptor", false);
+            Rectangle bounds = new Rectangle(
+                    descriptor == null ? 0 : Integer.parseInt(descriptor.getAttribute("imageLeftPosition")),
+                    descriptor == null ? 0 : Integer.parseInt(descriptor.getAttribute("imageTopPosition")),
+                    frame.getWidth(), frame.getHeight());
+            IIOMetadataNode control = child(metadata, "GraphicControlExtension", false);
+            String disposal = control == null ? "none" : control.getAttribute("disposalMethod");
+            Rectangle clipped = bounds.intersection(new Rectangle(image.getWidth(), image.getHeight()));
+            beforePrevious = "restoreToPrevious".equals(disposal) && !clipped.isEmpty() ? image.getData(clipped) : null;
+
+            Graphics2D graphics = image.createGraphics();
+            graphics.drawImage(frame, bounds.x, bounds.y, null);
+            graphics.dispose();
+            previousBounds = bounds;
+            previousDisposal = disposal;
+
+            BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            copy.setData(image.getRaster());
+            return copy;
+        }
+    }
+}
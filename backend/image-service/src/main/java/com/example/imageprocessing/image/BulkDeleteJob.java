@@ -0,0 +1,82 @@
+package com.example.imageprocessing.image;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A background delete of many images. Jobs live in the database so their progress can be polled
+ * through any instance; the instance that accepted the job runs it and records progress after
+ * every chunk.
+ */
+@Entity
+@Table(name = "bulk_delete_jobs")
+public class BulkDeleteJob {
+    public enum Status { PENDING, RUNNING, COMPLETED, FAILED }
+
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @Column(name = "username", nullable = false)
+    private String username;
+
+    @Column(name = "total", nullable = false)
+    private int total;
+
+    @Column(name = "deleted", nullable = false)
+    private int deleted;
+
+    @Column(name = "failed", nullable = false)
+    private int failed;
+
+    @Column(name = "not_found", nullable = false)
+    private int notFound;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private Status status;
+
+    @Column(name = "error", length = 1000)
+    private String error;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Moved forward with every chunk, so a job whose instance stopped can be told apart from a slow one
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    public BulkDeleteJob() {
+    }
+
+    public BulkDeleteJob(String id, String username, int total) {
+        this.id = id;
+        this.username = username;
+        this.total = total;
+        this.status = Status.PENDING;
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = this.createdAt;
+    }
+
+    public String getId() { return id; }
+    public String getUsername() { return username; }
+    public int getTotal() { return total; }
+    public int getDeleted() { return deleted; }
+    public int getFailed() { return failed; }
+    public int getNotFound() { return notFound; }
+    public int getProcessed() { return deleted + failed + notFound; }
+    public Status getStatus() { return status; }
+    public String getError() { return error; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+
+    void markInterrupted(String error) {
+        this.status = Status.FAILED;
+        this.error = error;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.imageprocessing.image;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface BulkDeleteJobRepository extends JpaRepository<BulkDeleteJob, String> {
+
+    // Read on the primary: jobs are polled right after they were accepted, possibly by another instance
+    @Transactional
+    Optional<BulkDeleteJob> findByIdAndUsername(String id, String username);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE BulkDeleteJob j SET j.status = :status, j.updatedAt = :now WHERE j.id = :id")
+    int updateStatus(@Param("id") String id, @Param("status") BulkDeleteJob.Status status, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE BulkDeleteJob j SET j.deleted = j.deleted + :deleted, j.failed = j.failed + :failed, "
+            + "j.notFound = j.notFound + :notFound, j.updatedAt = :now WHERE j.id = :id")
+    int addProgress(@Param("id") String id, @Param("deleted") int deleted, @Param("failed") int failed,
+                    @Param("notFound") int notFound, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE BulkDeleteJob j SET j.status = :status, j.error = :error, j.updatedAt = :now, j.finishedAt = :now "
+            + "WHERE j.id = :id")
+    int finish(@Param("id") String id, @Param("status") BulkDeleteJob.Status status, @Param("error") String error,
+               @Param("now") LocalDateTime now);
+
+    // Finished jobs after the retention period, and unfinished ones nobody has worked on for much longer
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM BulkDeleteJob j WHERE j.finishedAt < :finishedBefore "
+            + "OR (j.finishedAt IS NULL AND j.updatedAt < :abandonedBefore)")
+    int deleteExpired(@Param("finishedBefore") LocalDateTime finishedBefore,
+                      @Param("abandonedBefore") LocalDateTime abandonedBefore);
+}
@@ -0,0 +1,116 @@
+package com.example.imageprocessing.image;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs deletes of many images in the background. A job is accepted immediately and works through the
+ * ids in chunks, so its progress can be polled while S3 and the database are being cleaned up.
+ *
+ * Jobs are stored in the database, so any instance behind the load balancer can report on them. The
+ * instance that accepted a job runs it; if that instance stops, the job stops moving forward and is
+ * reported as failed once its progress is older than {@code image.bulk-delete.stale-minutes}. Deleting
+ * the same ids again finishes the job, since images already gone only count as not found. Jobs are
+ * forgotten some time after they finish.
+ */
+@Service
+public class BulkDeleteService {
+    private static final Logger logger = LoggerFactory.getLogger(BulkDeleteService.class);
+
+    private final ImageService imageService;
+    private final BulkDeleteJobRepository jobRepository;
+    private final ExecutorService executor;
+
+    @Value("${image.bulk-delete.chunk-size:200}")
+    private int chunkSize;
+
+    @Value("${image.bulk-delete.max-images:10000}")
+    private int maxImages;
+
+    @Value("${image.bulk-delete.retention-minutes:60}")
+    private long retentionMinutes;
+
+    @Value("${image.bulk-delete.stale-minutes:10}")
+    private long staleMinutes;
+
+    public BulkDeleteService(ImageService imageService, BulkDeleteJobRepository jobRepository,
+                             @Value("${image.bulk-delete.threads:2}") int threads) {
+        this.imageService = imageService;
+        this.jobRepository = jobRepository;
+        this.executor = Executors.newFixedThreadPool(threads);
+    }
+
+    public BulkDeleteJob startJob(List<Long> imageIds, String username) {
+        if (imageIds == null || imageIds.isEmpty()) {
+            throw new IllegalArgumentException("No image IDs given");
+        }
+        List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(imageIds));
+        if (distinctIds.size() > maxImages) {
+            throw new IllegalArgumentException("At most " + maxImages + " images can be deleted at once");
+        }
+
+        removeExpiredJobs();
+        BulkDeleteJob job = jobRepository.save(new BulkDeleteJob(UUID.randomUUID().toString(), username, distinctIds.size()));
+        executor.submit(() -> run(job.getId(), username, distinctIds));
+        logger.info("Accepted bulk delete job {} for {} image(s) of user {}", job.getId(), distinctIds.size(), username);
+        return job;
+    }
+
+    public Optional<BulkDeleteJob> getJob(String jobId, String username) {
+        return jobRepository.findByIdAndUsername(jobId, username).map(job -> {
+            LocalDateTime staleBefore = LocalDateTime.now().minusMinutes(staleMinutes);
+            if (job.getStatus() == BulkDeleteJob.Status.RUNNING && job.getUpdatedAt().isBefore(staleBefore)) {
+                String error = "Interrupted: no progress for " + staleMinutes + " minutes; delete the remaining images again";
+                jobRepository.finish(job.getId(), BulkDeleteJob.Status.FAILED, error, LocalDateTime.now());
+                job.markInterrupted(error);
+            }
+            return job;
+        });
+    }
+
+    private void run(String jobId, String username, List<Long> imageIds) {
+        jobRepository.updateStatus(jobId, BulkDeleteJob.Status.RUNNING, LocalDateTime.now());
+        try {
+            int deleted = 0;
+            int failed = 0;
+            int notFound = 0;
+            for (int from = 0; from < imageIds.size(); from += chunkSize) {
+                List<Long> chunk = imageIds.subList(from, Math.min(from + chunkSize, imageIds.size()));
+                ImageService.DeleteResult result = imageService.deleteImages(chunk, username);
+                jobRepository.addProgress(jobId, result.getDeleted(), result.getFailed(), result.getNotFound(),
+                        LocalDateTime.now());
+                deleted += result.getDeleted();
+                failed += result.getFailed();
+                notFound += result.getNotFound();
+            }
+            jobRepository.finish(jobId, BulkDeleteJob.Status.COMPLETED, null, LocalDateTime.now());
+            logger.info("Bulk delete job {} finished: {} deleted, {} failed, {} not found",
+                    jobId, deleted, failed, notFound);
+        } catch (Exception e) {
+            logger.error("Bulk delete job {} failed: {}", jobId, e.getMessage(), e);
+            jobRepository.finish(jobId, BulkDeleteJob.Status.FAILED, e.getMessage(), LocalDateTime.now());
+        }
+    }
+
+    private void removeExpiredJobs() {
+        LocalDateTime now = LocalDateTime.now();
+        jobRepository.deleteExpired(now.minusMinutes(retentionMinutes), now.minusDays(1));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
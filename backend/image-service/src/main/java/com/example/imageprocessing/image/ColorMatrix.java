@@ -0,0 +1,282 @@
+package com.example.imageprocessing.image;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * A 4x5 color matrix over 0-255 channel values: each output channel (red, green, blue, alpha) is
+ * a weighted sum of the input channels plus an offset. Point filters compose by multiplying their
+ * matrices, so any stack of adjustments is applied in a single pass over the pixels and costs the
+ * same as one of them. Channels are clamped once, at the end of the pass. The pass works in 12-bit
+ * fixed point: integer multiplies are much cheaper than converting every channel to float and back.
+ *
+ * The pass runs on {@code jdk.incubator.vector} when the JVM is started with
+ * {@code --add-modules jdk.incubator.vector}, and on a scalar loop otherwise; both produce the
+ * same pixels.
+ */
+final class ColorMatrix {
+    private static final int ROWS = 4;
+    private static final int COLUMNS = 5;
+
+    // Rec. 709 luma weights, as used by the CSS filter effects this follows
+    private static final double LUMA_RED = 0.2126;
+    private static final double LUMA_GREEN = 0.7152;
+    private static final double LUMA_BLUE = 0.0722;
+
+    static final int FRACTION_BITS = 12;
+    static final int ONE = 1 << FRACTION_BITS;
+    static final int HALF = ONE >> 1;
+
+    static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    static final ColorMatrix IDENTITY = new ColorMatrix(new double[]{
+            1, 0, 0, 0, 0,
+            0, 1, 0, 0, 0,
+            0, 0, 1, 0, 0,
+            0, 0, 0, 1, 0});
+
+    // Row-major: red, green, blue and alpha rows of (r, g, b, a, offset)
+    private final double[] values;
+
+    private ColorMatrix(double[] values) {
+        this.values = values;
+    }
+
+    /**
+     * The matrix of the filters in {@code filters}, applied in the order brightness, contrast,
+     * saturation, hue rotation, grayscale, sepia, invert.
+     */
+    static ColorMatrix of(ImageTransformationService.FilterOptions filters) {
+        ColorMatrix matrix = IDENTITY;
+        if (filters == null) {
+            return matrix;
+        }
+        if (filters.getBrightness() != null) {
+            matrix = matrix.then(brightness(filters.getBrightness()));
+        }
+        if (filters.getContrast() != null) {
+            matrix = matrix.then(contrast(filters.getContrast()));
+        }
+        if (filters.getSaturation() != null) {
+            matrix = matrix.then(saturation(filters.getSaturation()));
+        }
+        if (filters.getHue() != null) {
+            matrix = matrix.then(hueRotation(filters.getHue()));
+        }
+        if (Boolean.TRUE.equals(filters.getGrayscale())) {
+            matrix = matrix.then(grayscale());
+        }
+        if (Boolean.TRUE.equals(filters.getSepia())) {
+            matrix = matrix.then(sepia());
+        }
+        if (Boolean.TRUE.equals(filters.getInvert())) {
+            matrix = matrix.then(invert());
+        }
+        return matrix;
+    }
+
+    // 1 keeps the image, 0 is black, above 1 brightens
+    static ColorMatrix brightness(double amount) {
+        return rgb(amount, 0, 0, 0, amount, 0, 0, 0, amount, 0);
+    }
+
+    // 1 keeps the image, 0 is flat gray, above 1 stretches around the mid-tone
+    static ColorMatrix contrast(double amount) {
+        double offset = 127.5 * (1 - amount);
+        return new ColorMatrix(new double[]{
+                amount, 0, 0, 0, offset,
+                0, amount, 0, 0, offset,
+                0, 0, amount, 0, offset,
+                0, 0, 0, 1, 0});
+    }
+
+    // 1 keeps the image, 0 is grayscale, above 1 oversaturates
+    static ColorMatrix saturation(double amount) {
+        double inverse = 1 - amount;
+        double red = LUMA_RED * inverse;
+        double green = LUMA_GREEN * inverse;
+        double blue = LUMA_BLUE * inverse;
+        return rgb(red + amount, green, blue,
+                red, green + amount, blue,
+                red, green, blue + amount, 0);
+    }
+
+    // Rotates hues by the given angle while keeping luminance
+    static ColorMatrix hueRotation(double degrees) {
+        double cos = Math.cos(Math.toRadians(degrees));
+        double sin = Math.sin(Math.toRadians(degrees));
+        return rgb(0.213 + cos * 0.787 - sin * 0.213, 0.715 - cos * 0.715 - sin * 0.715, 0.072 - cos * 0.072 + sin * 0.928,
+                0.213 - cos * 0.213 + sin * 0.143, 0.715 + cos * 0.285 + sin * 0.140, 0.072 - cos * 0.072 - sin * 0.283,
+                0.213 - cos * 0.213 - sin * 0.787, 0.715 - cos * 0.715 + sin * 0.715, 0.072 + cos * 0.928 + sin * 0.072, 0);
+    }
+
+    // Luminance with the sRGB (Rec. 709) weights, which is exact because every source is converted
+    // to sRGB when it is decoded
+    static ColorMatrix grayscale() {
+        return saturation(0);
+    }
+
+    static ColorMatrix sepia() {
+        return rgb(0.393, 0.769, 0.189,
+                0.349, 0.686, 0.168,
+                0.272, 0.534, 0.131, 0);
+    }
+
+    static ColorMatrix invert() {
+        return new ColorMatrix(new double[]{
+                -1, 0, 0, 0, 255,
+                0, -1, 0, 0, 255,
+                0, 0, -1, 0, 255,
+                0, 0, 0, 1, 0});
+    }
+
+    private static ColorMatrix rgb(double rr, double rg, double rb, double gr, double gg, double gb,
+                                   double br, double bg, double bb, double offset) {
+        return new ColorMatrix(new double[]{
+                rr, rg, rb, 0, offset,
+                gr, gg, gb, 0, offset,
+                br, bg, bb, 0, offset,
+                0, 0, 0, 1, 0});
+    }
+
+    /**
+     * The matrix applying this one and then {@code next}.
+     */
+    ColorMatrix then(ColorMatrix next) {
+        double[] result = new double[ROWS * COLUMNS];
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                double sum = column == COLUMNS - 1 ? next.values[row * COLUMNS + column] : 0;
+                for (int k = 0; k < ROWS; k++) {
+                    sum += next.values[row * COLUMNS + k] * values[k * COLUMNS + column];
+                }
+                result[row * COLUMNS + column] = sum;
+            }
+        }
+        return new ColorMatrix(result);
+    }
+
+    boolean isIdentity() {
+        for (int i = 0; i < values.length; i++) {
+            if (Math.abs(values[i] - IDENTITY.values[i]) > 1e-6) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The matrix in fixed point with {@link #FRACTION_BITS} fractional bits, the form both kernels use.
+     */
+    int[] toFixedPoint() {
+        int[] fixed = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            double scaled = Math.rint(values[i] * ONE);
+            fixed[i] = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, scaled));
+        }
+        return fixed;
+    }
+
+    /**
+     * Applies the matrix to every pixel. The result is ARGB for sources with alpha and RGB otherwise.
+     */
+    BufferedImage apply(BufferedImage source) {
+        boolean alpha = source.getColorModel().hasAlpha();
+        int[] pixels = toPackedPixels(source, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        BufferedImage output = new BufferedImage(source.getWidth(), source.getHeight(),
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        apply(pixels, ((DataBufferInt) output.getRaster().getDataBuffer()).getData(), alpha);
+        return output;
+    }
+
+    void apply(int[] pixels, int[] result, boolean alpha) {
+        int[] matrix = toFixedPoint();
+        int done = VECTORIZED ? VectorColorMatrix.apply(matrix, pixels, result, alpha) : 0;
+        applyScalar(matrix, pixels, result, done, pixels.length, alpha);
+    }
+
+    /**
+     * The reference implementation, also used for the tail the vector loop leaves over: rounds half
+     * up and clamps, exactly like the vector loop. Sums are kept in 32 bits when {@link #fitsInInts}
+     * says they cannot overflow, which is every realistic matrix, and in 64 bits otherwise.
+     */
+    static void applyScalar(int[] m, int[] pixels, int[] result, int from, int to, boolean alpha) {
+        if (!fitsInInts(m)) {
+            applyScalarWide(m, pixels, result, from, to, alpha);
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            int pixel = pixels[i];
+            int a = alpha ? pixel >>> 24 : 255;
+            int r = (pixel >> 16) & 0xFF;
+            int g = (pixel >> 8) & 0xFF;
+            int b = pixel & 0xFF;
+            int outR = channel(m[0] * r + m[1] * g + m[2] * b + m[3] * a + m[4]);
+            int outG = channel(m[5] * r + m[6] * g + m[7] * b + m[8] * a + m[9]);
+            int outB = channel(m[10] * r + m[11] * g + m[12] * b + m[13] * a + m[14]);
+            int outA = alpha ? channel(m[15] * r + m[16] * g + m[17] * b + m[18] * a + m[19]) : 0xFF;
+            result[i] = outA << 24 | outR << 16 | outG << 8 | outB;
+        }
+    }
+
+    private static void applyScalarWide(int[] m, int[] pixels, int[] result, int from, int to, boolean alpha) {
+        for (int i = from; i < to; i++) {
+            int pixel = pixels[i];
+            long a = alpha ? pixel >>> 24 : 255;
+            long r = (pixel >> 16) & 0xFF;
+            long g = (pixel >> 8) & 0xFF;
+            long b = pixel & 0xFF;
+            int outR = channel(m[0] * r + m[1] * g + m[2] * b + m[3] * a + m[4]);
+            int outG = channel(m[5] * r + m[6] * g + m[7] * b + m[8] * a + m[9]);
+            int outB = channel(m[10] * r + m[11] * g + m[12] * b + m[13] * a + m[14]);
+            int outA = alpha ? channel(m[15] * r + m[16] * g + m[17] * b + m[18] * a + m[19]) : 0xFF;
+            result[i] = outA << 24 | outR << 16 | outG << 8 | outB;
+        }
+    }
+
+    private static int channel(int fixed) {
+        // min/max compile to conditional moves; clamping is unpredictable on real images
+        return Math.min(Math.max((fixed + HALF) >> FRACTION_BITS, 0), 255);
+    }
+
+    private static int channel(long fixed) {
+        return (int) Math.min(Math.max((fixed + HALF) >> FRACTION_BITS, 0), 255);
+    }
+
+    /**
+     * True when no partial sum of a fixed-point matrix can overflow 32 bits: each is bounded by the
+     * sum of the magnitudes of the row's terms.
+     */
+    static boolean fitsInInts(int[] m) {
+        for (int row = 0; row < ROWS * COLUMNS; row += COLUMNS) {
+            long bound = Math.abs((long) m[row + 4]) + HALF;
+            for (int column = 0; column < 4; column++) {
+                bound += Math.abs((long) m[row + column]) * 255;
+            }
+            if (bound > Integer.MAX_VALUE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The pixels of {@code source} as packed ints of the given {@code TYPE_INT_*} type, sharing the
+     * source's buffer when it already has that layout. Callers must not modify the result.
+     */
+    static int[] toPackedPixels(BufferedImage source, int type) {
+        // Sub-images share a larger buffer, so they are copied like any other layout
+        if (source.getType() == type && source.getRaster().getParent() == null) {
+            int[] data = ((DataBufferInt) source.getRaster().getDataBuffer()).getData();
+            if (data.length == source.getWidth() * source.getHeight()) {
+                return data;
+            }
+        }
+        BufferedImage packed = new BufferedImage(source.getWidth(), source.getHeight(), type);
+        Graphics2D graphics = packed.createGraphics();
+        graphics.drawImage(source, 0, 0, null);
+        graphics.dispose();
+        return ((DataBufferInt) packed.getRaster().getDataBuffer()).getData();
+    }
+}
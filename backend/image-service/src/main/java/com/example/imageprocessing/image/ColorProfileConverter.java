@@ -0,0 +1,472 @@
+package com.example.imageprocessing.image;
+
+import com.example.imageprocessing.timing.RequestTimings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.w3c.dom.Node;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import java.awt.*;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorConvertOp;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Decodes images into sRGB, honouring embedded ICC profiles.
+ *
+ * The JDK readers ignore embedded profiles, so Adobe RGB and other wide-gamut images come out
+ * with washed-out or shifted colors, and the JPEG reader cannot decode CMYK and YCCK JPEGs at all.
+ * Here RGB images are decoded as-is and then converted from their profile to sRGB, and four-channel
+ * JPEGs are read as raw rasters and converted from CMYK. The conversion happens once, at decode, so
+ * everything downstream (resampling, filters, encoders) works on plain sRGB.
+ *
+ * Building a color transform from two profiles is the expensive part of a {@link ColorConvertOp}
+ * and is done when the op is first used. The ops are therefore kept per source and target
+ * profile in a cache bounded by {@code image.color.transform-cache-size}; each entry pools its
+ * ops so concurrent decodes never share one.
+ */
+@Component
+public class ColorProfileConverter {
+    private static final Logger logger = LoggerFactory.getLogger(ColorProfileConverter.class);
+
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+    private static final String PNG_METADATA_FORMAT = "javax_imageio_png_1.0";
+    private static final String SRGB = "sRGB";
+    // APP2 segments carrying an ICC profile start with this, then a sequence number and the chunk count
+    private static final byte[] ICC_MARKER = "ICC_PROFILE\0".getBytes(StandardCharsets.US_ASCII);
+
+    // YCbCr to RGB terms per chroma value; the green ones are scaled by 2^16
+    private static final int[] CR_TO_R = new int[256];
+    private static final int[] CB_TO_B = new int[256];
+    private static final int[] CR_TO_G = new int[256];
+    private static final int[] CB_TO_G = new int[256];
+
+    static {
+        for (int value = 0; value < 256; value++) {
+            int chroma = value - 128;
+            CR_TO_R[value] = (int) Math.round(1.402 * chroma);
+            CB_TO_B[value] = (int) Math.round(1.772 * chroma);
+            CR_TO_G[value] = (int) Math.round(-0.714136 * chroma * 65536);
+            CB_TO_G[value] = (int) Math.round(-0.344136 * chroma * 65536) + 32768;
+        }
+    }
+
+    private final BoundedCache<TransformKey, Transform> transforms;
+
+    public ColorProfileConverter(@Value("${image.color.transform-cache-size:32}") int transformCacheSize) {
+        this.transforms = new BoundedCache<>(transformCacheSize, transform -> 1);
+    }
+
+    /**
+     * Describes how the pixels of the reader's first image are encoded. Only metadata is read, so
+     * this is cheap enough to call once per image before decoding it region by region.
+     */
+    public SourceColor describe(ImageReader reader) throws IOException {
+        IIOMetadata metadata = reader.getImageMetadata(0);
+        if (metadata == null) {
+            return SourceColor.SRGB;
+        }
+        for (String format : metadata.getMetadataFormatNames()) {
+            if (JPEG_METADATA_FORMAT.equals(format)) {
+                return describeJpeg((IIOMetadataNode) metadata.getAsTree(format));
+            }
+            if (PNG_METADATA_FORMAT.equals(format)) {
+                Node iccp = child((IIOMetadataNode) metadata.getAsTree(format), "iCCP");
+                byte[] profile = iccp == null ? null : (byte[]) ((IIOMetadataNode) iccp).getUserObject();
+                return new SourceColor(profile, false, 3, false, false);
+            }
+        }
+        return SourceColor.SRGB;
+    }
+
+    /**
+     * Decodes the reader's first image, or the region and subsampling in {@code param}, into an
+     * sRGB image.
+     */
+    public BufferedImage read(ImageReader reader, ImageReadParam param, SourceColor source) throws IOException {
+        if (source.cmyk) {
+            return cmykToSrgb(readSamples(reader, param, source), source);
+        }
+        Transform transform = transform(source, ColorSpace.TYPE_RGB);
+        if (transform == null || (source.jpeg && source.channels != 3)) {
+            return reader.read(0, param);
+        }
+        if (source.jpeg) {
+            // The JPEG reader applies JFIF profiles itself, but compiles a new ColorConvertOp for every
+            // read (every tile, in tiled mode); the raw samples go through the cached op instead
+            return transform.convert(readSamples(reader, param, source));
+        }
+        return transform.convert(reader.read(0, param));
+    }
+
+    public BufferedImage read(ImageReader reader) throws IOException {
+        return read(reader, reader.getDefaultReadParam(), describe(reader));
+    }
+
+    private SourceColor describeJpeg(IIOMetadataNode root) throws IOException {
+        byte[] profile = null;
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        int components = 3;
+        boolean rgbComponentIds = false;
+        Integer adobeTransform = null;
+
+        // JFIF files carry the profile as app2ICC, already assembled by the reader
+        Node jfif = child(child(root, "JPEGvariety"), "app0JFIF");
+        Node app2Icc = child(jfif, "app2ICC");
+        if (app2Icc != null && ((IIOMetadataNode) app2Icc).getUserObject() instanceof ICC_Profile jfifProfile) {
+            profile = jfifProfile.getData();
+        }
+        for (Node node = firstChild(child(root, "markerSequence")); node != null; node = node.getNextSibling()) {
+            switch (node.getNodeName()) {
+                case "sof" -> {
+                    components = intAttribute(node, "numFrameComponents", 3);
+                    Node first = firstChild(node);
+                    rgbComponentIds = first != null && intAttribute(first, "componentId", 0) == 'R';
+                }
+                case "app14Adobe" -> adobeTransform = intAttribute(node, "transform", 0);
+                case "unknown" -> {
+                    // Without JFIF the profile stays in raw APP2 chunks, which are concatenated in order
+                    byte[] data = (byte[]) ((IIOMetadataNode) node).getUserObject();
+                    if (intAttribute(node, "MarkerTag", 0) == 0xE2 && startsWith(data, ICC_MARKER)) {
+                        chunks.write(data, ICC_MARKER.length + 2, data.length - ICC_MARKER.length - 2);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        if (profile == null && chunks.size() > 0) {
+            profile = chunks.toByteArray();
+        }
+        if (components == 4) {
+            // Adobe writes CMYK inverted, and with transform 2 its first three channels as YCC
+            return new SourceColor(profile, true, 4, adobeTransform != null && adobeTransform == 2, adobeTransform != null);
+        }
+        // Three channels are YCbCr unless an Adobe marker or the component ids say RGB, as libjpeg decides
+        boolean ycc = adobeTransform != null ? adobeTransform != 0 : jfif != null || !rgbComponentIds;
+        return new SourceColor(profile, true, components, ycc, false);
+    }
+
+    /**
+     * Reads the JPEG's samples without any color conversion and undoes its YCbCr or YCCK encoding
+     * and Adobe inversion, leaving RGB or CMYK values in the source profile.
+     */
+    private WritableRaster readSamples(ImageReader reader, ImageReadParam param, SourceColor color) throws IOException {
+        Raster raw = reader.readRaster(0, param);
+        int channels = color.channels;
+        if (raw.getNumBands() != channels) {
+            throw new IIOException("Expected " + channels + " channels in the JPEG but found " + raw.getNumBands());
+        }
+        // The reader returns a fresh byte raster; anything else is copied into one first
+        WritableRaster samples;
+        if (raw instanceof WritableRaster writable && isPackedBytes(raw)) {
+            samples = writable;
+        } else {
+            samples = Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, raw.getWidth(), raw.getHeight(), channels, null);
+            samples.setRect(-raw.getMinX(), -raw.getMinY(), raw);
+        }
+
+        byte[] data = ((DataBufferByte) samples.getDataBuffer()).getData();
+        boolean invertColors = color.inverted != (color.ycc && channels == 4);
+        for (int i = 0; i < data.length; i += channels) {
+            if (color.ycc) {
+                // Fixed-point YCbCr to RGB with the JFIF coefficients, as libjpeg does it
+                int luma = data[i] & 0xFF;
+                int cb = data[i + 1] & 0xFF;
+                int cr = data[i + 2] & 0xFF;
+                data[i] = (byte) clamp(luma + CR_TO_R[cr]);
+                data[i + 1] = (byte) clamp(luma + ((CB_TO_G[cb] + CR_TO_G[cr]) >> 16));
+                data[i + 2] = (byte) clamp(luma + CB_TO_B[cb]);
+            }
+            // YCCK stores 255 minus the CMY values, which Adobe's inversion then undoes again
+            if (invertColors) {
+                data[i] = (byte) ~data[i];
+                data[i + 1] = (byte) ~data[i + 1];
+                data[i + 2] = (byte) ~data[i + 2];
+            }
+            if (color.inverted && channels == 4) {
+                data[i + 3] = (byte) ~data[i + 3];
+            }
+        }
+        return samples;
+    }
+
+    private static boolean isPackedBytes(Raster raster) {
+        if (raster.getMinX() != 0 || raster.getMinY() != 0 || raster.getParent() != null
+                || !(raster.getDataBuffer() instanceof DataBufferByte buffer) || buffer.getNumBanks() != 1
+                || !(raster.getSampleModel() instanceof PixelInterleavedSampleModel sampleModel)) {
+            return false;
+        }
+        int channels = raster.getNumBands();
+        int[] offsets = sampleModel.getBandOffsets();
+        for (int band = 0; band < channels; band++) {
+            if (offsets[band] != band) {
+                return false;
+            }
+        }
+        return sampleModel.getPixelStride() == channels && sampleModel.getScanlineStride() == raster.getWidth() * channels
+                && buffer.getOffset() == 0 && buffer.getData().length == raster.getWidth() * raster.getHeight() * channels;
+    }
+
+    private BufferedImage cmykToSrgb(WritableRaster cmyk, SourceColor color) {
+        Transform transform = transform(color, ColorSpace.TYPE_CMYK);
+        if (transform != null) {
+            return transform.convert(cmyk);
+        }
+        // Without a profile, the naive conversion is better than failing
+        int width = cmyk.getWidth();
+        BufferedImage rgb = new BufferedImage(width, cmyk.getHeight(), BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[width * 4];
+        int[] pixels = new int[width];
+        for (int y = 0; y < cmyk.getHeight(); y++) {
+            cmyk.getPixels(0, y, width, 1, row);
+            for (int x = 0, i = 0; x < width; x++, i += 4) {
+                int white = 255 - row[i + 3];
+                pixels[x] = (255 - row[i]) * white / 255 << 16 | (255 - row[i + 1]) * white / 255 << 8
+                        | (255 - row[i + 2]) * white / 255;
+            }
+            rgb.setRGB(0, y, width, 1, pixels, 0, width);
+        }
+        return rgb;
+    }
+
+    /**
+     * The cached transform from the source's profile to sRGB, or null when no conversion is needed:
+     * there is no profile, it already is sRGB, or it does not describe {@code colorSpaceType}.
+     */
+    private Transform transform(SourceColor source, int colorSpaceType) {
+        if (source.profile == null) {
+            return null;
+        }
+        TransformKey key = new TransformKey(sha256(source.profile), SRGB);
+        Transform transform = transforms.get(key);
+        if (transform == null) {
+            transform = Transform.of(source.profile);
+            transforms.put(key, transform);
+            if (transform.colorSpace != null) {
+                logger.info("Compiled color transform {} -> {}", transform.description, SRGB);
+            }
+        }
+        if (transform.colorSpace == null || transform.colorSpace.getType() != colorSpaceType) {
+            return null;
+        }
+        RequestTimings.detail("color_profile", transform.description);
+        return transform;
+    }
+
+    private static int clamp(int value) {
+        return value <= 0 ? 0 : Math.min(value, 255);
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        if (data == null || data.length < prefix.length + 2) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static Node child(Node parent, String name) {
+        for (Node node = firstChild(parent); node != null; node = node.getNextSibling()) {
+            if (name.equals(node.getNodeName())) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private static Node firstChild(Node parent) {
+        return parent == null ? null : parent.getFirstChild();
+    }
+
+    private static int intAttribute(Node node, String name, int defaultValue) {
+        Node attribute = node.getAttributes().getNamedItem(name);
+        return attribute == null ? defaultValue : Integer.parseInt(attribute.getNodeValue());
+    }
+
+    /**
+     * How the pixels of a source image are encoded, as found in its metadata.
+     */
+    public static final class SourceColor {
+        static final SourceColor SRGB = new SourceColor(null, false, 3, false, false);
+
+        private final byte[] profile;
+        // JPEGs are read as raw samples whenever a conversion is needed
+        private final boolean jpeg;
+        private final int channels;
+        private final boolean ycc;
+        private final boolean inverted;
+        private final boolean cmyk;
+
+        private SourceColor(byte[] profile, boolean jpeg, int channels, boolean ycc, boolean inverted) {
+            this.profile = profile;
+            this.jpeg = jpeg;
+            this.channels = channels;
+            this.ycc = ycc;
+            this.inverted = inverted;
+            this.cmyk = jpeg && channels == 4;
+        }
+
+        public boolean isCmyk() { return cmyk; }
+    }
+
+    private record TransformKey(String sourceProfile, String targetProfile) {
+    }
+
+    /**
+     * A source profile and a pool of ops converting from it to sRGB. Each op compiles its transform
+     * on first use and keeps it, and is used by one thread at a time.
+     */
+    private static final class Transform {
+        // Null when the profile is sRGB already or cannot be used
+        private final ICC_ColorSpace colorSpace;
+        private final String description;
+        private final Queue<ColorConvertOp> ops = new ConcurrentLinkedQueue<>();
+
+        private Transform(ICC_ColorSpace colorSpace, String description) {
+            this.colorSpace = colorSpace;
+            this.description = description;
+        }
+
+        static Transform of(byte[] data) {
+            ICC_Profile profile;
+            try {
+                profile = ICC_Profile.getInstance(data);
+            } catch (IllegalArgumentException e) {
+                logger.warn("Ignoring unreadable ICC profile: {}", e.getMessage());
+                return new Transform(null, "invalid");
+            }
+            String description = description(profile);
+            if (profile.getColorSpaceType() != ColorSpace.TYPE_RGB && profile.getColorSpaceType() != ColorSpace.TYPE_CMYK) {
+                return new Transform(null, description);
+            }
+            ICC_ColorSpace colorSpace = new ICC_ColorSpace(profile);
+            // Images tagged with sRGB, under whatever name, are decoded correctly already
+            if (colorSpace.getType() == ColorSpace.TYPE_RGB && isSrgb(colorSpace)) {
+                return new Transform(null, description);
+            }
+            return new Transform(colorSpace, description);
+        }
+
+        private static boolean isSrgb(ICC_ColorSpace colorSpace) {
+            for (int r = 0; r <= 4; r++) {
+                for (int g = 0; g <= 4; g++) {
+                    for (int b = 0; b <= 4; b++) {
+                        float[] color = {r / 4f, g / 4f, b / 4f};
+                        float[] rgb = colorSpace.toRGB(color);
+                        for (int i = 0; i < 3; i++) {
+                            if (Math.abs(rgb[i] - color[i]) > 1f / 255) {
+                                return false;
+                            }
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+
+        BufferedImage convert(BufferedImage image) {
+            boolean alpha = image.getColorModel().hasAlpha();
+            int type = alpha ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR;
+            ComponentColorModel colorModel = new ComponentColorModel(colorSpace, alpha, false,
+                    alpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+            // The decoded samples are in the source profile whatever color space the reader labelled
+            // them with (the JPEG reader sometimes uses the profile, the PNG reader never does), so
+            // they are relabelled with the cached one and converted by the op from there
+            WritableRaster samples = image.getRaster();
+            if (!(image.getColorModel() instanceof ComponentColorModel) || image.isAlphaPremultiplied()
+                    || !colorModel.isCompatibleRaster(samples)) {
+                // Palette, packed and 16-bit images come from readers that ignore profiles, so drawing
+                // them into a byte image only changes the layout
+                BufferedImage unpacked = new BufferedImage(image.getWidth(), image.getHeight(), type);
+                Graphics2D graphics = unpacked.createGraphics();
+                graphics.drawImage(image, 0, 0, null);
+                graphics.dispose();
+                samples = unpacked.getRaster();
+            }
+            return filter(new BufferedImage(colorModel, samples, false, null),
+                    new BufferedImage(image.getWidth(), image.getHeight(), type));
+        }
+
+        // Raw samples start at (0, 0), as read by readSamples
+        BufferedImage convert(WritableRaster samples) {
+            ComponentColorModel colorModel = new ComponentColorModel(colorSpace, false, false,
+                    Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+            return filter(new BufferedImage(colorModel, samples, false, null),
+                    new BufferedImage(samples.getWidth(), samples.getHeight(), BufferedImage.TYPE_3BYTE_BGR));
+        }
+
+        private BufferedImage filter(BufferedImage source, BufferedImage target) {
+            ColorConvertOp op = ops.poll();
+            if (op == null) {
+                op = new ColorConvertOp(null);
+            }
+            try {
+                return op.filter(source, target);
+            } finally {
+                ops.offer(op);
+            }
+        }
+
+        // The profile's 'desc' tag: ASCII in ICC v2 profiles, the first UTF-16 record in v4 ones
+        private static String description(ICC_Profile profile) {
+            byte[] tag = profile.getData(ICC_Profile.icSigProfileDescriptionTag);
+            if (tag == null || tag.length < 12) {
+                return "unnamed";
+            }
+            String type = new String(tag, 0, 4, StandardCharsets.US_ASCII);
+            if ("desc".equals(type)) {
+                int length = readInt(tag, 8);
+                return new String(tag, 12, Math.max(0, Math.min(length, tag.length - 12)), StandardCharsets.US_ASCII).trim()
+                        .replace("\0", "");
+            }
+            if ("mluc".equals(type) && tag.length >= 28) {
+                int length = readInt(tag, 20);
+                int offset = readInt(tag, 24);
+                if (offset >= 0 && length >= 0 && offset + length <= tag.length) {
+                    return new String(tag, offset, length, StandardCharsets.UTF_16BE).trim();
+                }
+            }
+            return "unnamed";
+        }
+
+        private static int readInt(byte[] data, int offset) {
+            return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                    | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.imageprocessing.image;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Reference-counted, content-addressed originals. Images with the same bytes share one S3 object
+ * stored under {@code sha256/<hex digest>}; the object is deleted when the last image referencing
+ * it is deleted.
+ *
+ * A reference is taken before the object is written and released after the image row is gone, so
+ * a live count never points at a missing object. Deletion first claims the row (count -1) so that
+ * an upload of the same bytes arriving meanwhile waits for the delete to finish and stores the
+ * object again instead of referencing one that is about to disappear.
+ */
+@Service
+public class ContentStore {
+    private static final Logger logger = LoggerFactory.getLogger(ContentStore.class);
+
+    static final String KEY_PREFIX = "sha256/";
+    private static final int MAX_ACQUIRE_ATTEMPTS = 50;
+    private static final long ACQUIRE_RETRY_MILLIS = 100;
+    // IN lists are split so large bulk deletes stay within database parameter limits
+    private static final int MAX_HASHES_PER_QUERY = 1000;
+
+    private final StoredObjectRepository storedObjectRepository;
+    private final S3BatchDeleter s3BatchDeleter;
+
+    public ContentStore(StoredObjectRepository storedObjectRepository, S3BatchDeleter s3BatchDeleter) {
+        this.storedObjectRepository = storedObjectRepository;
+        this.s3BatchDeleter = s3BatchDeleter;
+    }
+
+    public static String contentKey(String sha256) {
+        return KEY_PREFIX + sha256;
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public static String toHex(byte[] digest) {
+        return HexFormat.of().formatHex(digest);
+    }
+
+    /**
+     * Takes a reference to the content with the given digest. If it is not stored yet, a record is
+     * created for {@code objectKey} and the caller must write the object there (and {@link #release}
+     * the reference if that fails).
+     */
+    public Acquired acquire(String sha256, String objectKey, long size) {
+        for (int attempt = 0; attempt < MAX_ACQUIRE_ATTEMPTS; attempt++) {
+            if (storedObjectRepository.incrementRefCount(sha256) > 0) {
+                StoredObject existing = storedObjectRepository.findById(sha256)
+                        .orElseThrow(() -> new IllegalStateException("Stored object disappeared: " + sha256));
+                return new Acquired(existing.getObjectKey(), false);
+            }
+            try {
+                storedObjectRepository.saveAndFlush(new StoredObject(sha256, objectKey, size));
+                return new Acquired(objectKey, true);
+            } catch (DataIntegrityViolationException e) {
+                // Inserted concurrently (the next increment succeeds) or being deleted (wait for it)
+                sleep(attempt == 0 ? 0 : ACQUIRE_RETRY_MILLIS);
+            }
+        }
+        throw new RuntimeException("Could not store content " + sha256 + ": the existing object is still being deleted");
+    }
+
+    /**
+     * Drops one reference per element (a digest may repeat) and deletes the objects that are no
+     * longer referenced. Objects S3 fails to delete keep an unreferenced record, so a later upload
+     * of the same bytes reuses them.
+     */
+    public void release(Collection<String> sha256s) {
+        if (sha256s.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> counts = new HashMap<>();
+        for (String sha256 : sha256s) {
+            counts.merge(sha256, 1, Integer::sum);
+        }
+
+        // One statement per distinct count, which is almost always just 1
+        Map<Integer, List<String>> byCount = new TreeMap<>();
+        counts.forEach((sha256, count) -> byCount.computeIfAbsent(count, c -> new ArrayList<>()).add(sha256));
+        byCount.forEach((count, hashes) -> forChunks(hashes,
+                chunk -> storedObjectRepository.decrementRefCounts(chunk, count)));
+
+        List<StoredObject> unreferenced = new ArrayList<>();
+        forChunks(new ArrayList<>(counts.keySet()), chunk -> {
+            for (StoredObject object : storedObjectRepository.findBySha256InAndRefCount(chunk, 0)) {
+                if (storedObjectRepository.claimForDeletion(object.getSha256()) > 0) {
+                    unreferenced.add(object);
+                }
+            }
+        });
+        if (unreferenced.isEmpty()) {
+            return;
+        }
+
+        Set<String> failedKeys = s3BatchDeleter.deleteObjects(unreferenced.stream().map(StoredObject::getObjectKey).toList());
+        List<String> deleted = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        for (StoredObject object : unreferenced) {
+            (failedKeys.contains(object.getObjectKey()) ? failed : deleted).add(object.getSha256());
+        }
+        forChunks(deleted, storedObjectRepository::deleteAllByIdInBatch);
+        if (!failed.isEmpty()) {
+            forChunks(failed, storedObjectRepository::releaseClaims);
+            logger.warn("Kept {} unreferenced stored objects that S3 could not delete", failed.size());
+        }
+        logger.info("Deleted {} stored objects that are no longer referenced", deleted.size());
+    }
+
+    private static void forChunks(List<String> hashes, Consumer<List<String>> action) {
+        for (int from = 0; from < hashes.size(); from += MAX_HASHES_PER_QUERY) {
+            action.accept(hashes.subList(from, Math.min(from + MAX_HASHES_PER_QUERY, hashes.size())));
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while storing content", e);
+        }
+    }
+
+    public static class Acquired {
+        private final String objectKey;
+        private final boolean created;
+
+        public Acquired(String objectKey, boolean created) {
+            this.objectKey = objectKey;
+            this.created = created;
+        }
+
+        public String getObjectKey() { return objectKey; }
+        public boolean isCreated() { return created; }
+    }
+}
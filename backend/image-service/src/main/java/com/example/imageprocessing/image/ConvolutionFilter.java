@@ -0,0 +1,425 @@
+package com.example.imageprocessing.image;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Gaussian blur and unsharp-mask sharpening.
+ *
+ * The Gaussian is separable, so it runs as a pass over the rows followed by the same pass over
+ * the columns. Each pass writes its output transposed, which makes the column pass another row
+ * pass over contiguous memory. Up to {@link #MAX_EXACT_SIGMA} the rows are convolved with the
+ * sampled kernel. Larger blurs are approximated by three successive box blurs computed with
+ * running sums, whose cost per pixel does not depend on the radius, so latency stays flat however
+ * strong the blur. Rows are split across a fork/join pool.
+ *
+ * Channels are processed in fixed point with four extra bits of precision between passes. Images
+ * with alpha are blurred premultiplied, so transparent pixels do not bleed their color into
+ * opaque ones.
+ */
+@Component
+public class ConvolutionFilter {
+    static final double MAX_EXACT_SIGMA = 2.0;
+    static final double MAX_SIGMA = 500;
+    static final double MAX_SHARPEN_AMOUNT = 10;
+    static final double DEFAULT_SHARPEN_RADIUS = 1.0;
+
+    // Channel values carry this many fractional bits between the two passes
+    private static final int EXTRA_BITS = 4;
+    private static final int KERNEL_BITS = 14;
+    private static final int BOX_BITS = 24;
+    // Images smaller than this are filtered on the calling thread; forking costs more than it saves
+    private static final int SEQUENTIAL_PIXELS = 1 << 16;
+    private static final int MIN_ROWS_PER_TASK = 16;
+    // Rows filtered together before being written out as columns: 16 ints are one cache line
+    private static final int BLOCK_ROWS = 16;
+
+    private final ForkJoinPool pool;
+
+    public ConvolutionFilter(@Value("${image.transform.convolution.threads:0}") int threads) {
+        this.pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * True when the filters include a blur or a sharpen, which need neighbouring pixels.
+     */
+    static boolean appliesTo(ImageTransformationService.FilterOptions filters) {
+        return filters != null && ((filters.getBlur() != null && filters.getBlur() > 0)
+                || (filters.getSharpen() != null && filters.getSharpen() > 0));
+    }
+
+    /**
+     * How many pixels on each side an output pixel of {@link #apply} depends on. Filtering a band
+     * of an image widened by this much on both sides gives the same result as filtering the whole
+     * image, everywhere but in the widening.
+     */
+    static int reach(ImageTransformationService.FilterOptions filters) {
+        int reach = 0;
+        if (filters != null && filters.getBlur() != null && filters.getBlur() > 0) {
+            reach += rowFilter(filters.getBlur()).reach();
+        }
+        if (filters != null && filters.getSharpen() != null && filters.getSharpen() > 0) {
+            reach += rowFilter(filters.getSharpenRadius() == null ? DEFAULT_SHARPEN_RADIUS : filters.getSharpenRadius()).reach();
+        }
+        return reach;
+    }
+
+    /**
+     * Blurs, then sharpens, as requested by the filters.
+     */
+    public BufferedImage apply(BufferedImage image, ImageTransformationService.FilterOptions filters) {
+        if (filters == null) {
+            return image;
+        }
+        if (filters.getBlur() != null && filters.getBlur() > 0) {
+            image = blur(image, filters.getBlur());
+        }
+        if (filters.getSharpen() != null && filters.getSharpen() > 0) {
+            double radius = filters.getSharpenRadius() == null ? DEFAULT_SHARPEN_RADIUS : filters.getSharpenRadius();
+            image = sharpen(image, filters.getSharpen(), radius);
+        }
+        return image;
+    }
+
+    /**
+     * Gaussian blur with the given standard deviation in pixels.
+     */
+    public BufferedImage blur(BufferedImage image, double sigma) {
+        boolean alpha = image.getColorModel().hasAlpha();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = ColorMatrix.toPackedPixels(image, packedType(alpha));
+        return toImage(gaussian(pixels, width, height, sigma, alpha), width, height, alpha);
+    }
+
+    /**
+     * Unsharp mask: adds {@code amount} times the difference between the image and its blur with
+     * the given radius (standard deviation in pixels).
+     */
+    public BufferedImage sharpen(BufferedImage image, double amount, double radius) {
+        boolean alpha = image.getColorModel().hasAlpha();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = ColorMatrix.toPackedPixels(image, packedType(alpha));
+        int[] blurred = gaussian(pixels, width, height, radius, alpha);
+
+        int weight = (int) Math.round(amount * 256);
+        int[] result = new int[pixels.length];
+        forRows(height, width, (from, to) -> {
+            for (int i = from * width; i < to * width; i++) {
+                int original = pixels[i];
+                int smooth = blurred[i];
+                int a = alpha ? original >>> 24 : 0xFF;
+                // Premultiplied colors must not exceed alpha
+                int r = sharpenChannel((original >> 16) & 0xFF, (smooth >> 16) & 0xFF, weight, a);
+                int g = sharpenChannel((original >> 8) & 0xFF, (smooth >> 8) & 0xFF, weight, a);
+                int b = sharpenChannel(original & 0xFF, smooth & 0xFF, weight, a);
+                result[i] = a << 24 | r << 16 | g << 8 | b;
+            }
+        });
+        return toImage(result, width, height, alpha);
+    }
+
+    private static int sharpenChannel(int original, int blurred, int weight, int max) {
+        int value = original + (((original - blurred) * weight + 128) >> 8);
+        return Math.min(Math.max(value, 0), max);
+    }
+
+    private int[] gaussian(int[] pixels, int width, int height, double sigma, boolean alpha) {
+        int channels = alpha ? 4 : 3;
+        RowFilter filter = rowFilter(sigma);
+
+        // Rows of the image become columns of the transposed copy, and back; in between, every
+        // channel has its own plane so the extra precision is kept
+        int[] transposed = new int[pixels.length * channels];
+        forRows(height, width, (from, to) -> filterRows(pixels, transposed, width, height, from, to, channels, filter,
+                false, true));
+        int[] result = new int[pixels.length];
+        forRows(width, height, (from, to) -> filterRows(transposed, result, height, width, from, to, channels, filter,
+                true, false));
+        return result;
+    }
+
+    static RowFilter rowFilter(double sigma) {
+        return sigma <= MAX_EXACT_SIGMA ? new KernelRowFilter(sigma) : new BoxRowFilter(sigma);
+    }
+
+    /**
+     * Filters rows {@code [from, to)} of a {@code rowLength}-wide image and writes each one as a
+     * column of {@code output}. The first pass unpacks 8-bit channels; the second reads the
+     * higher-precision values the first one left and packs them back to 8 bits. Rows are filtered
+     * {@link #BLOCK_ROWS} at a time so the transposed writes fill whole cache lines.
+     */
+    private static void filterRows(int[] input, int[] output, int rowLength, int rows, int from, int to,
+                                   int channels, RowFilter filter, boolean fromWide, boolean toWide) {
+        int[] line = new int[rowLength];
+        int[] scratch = new int[rowLength];
+        int[][][] block = new int[channels][BLOCK_ROWS][rowLength];
+        for (int first = from; first < to; first += BLOCK_ROWS) {
+            int count = Math.min(BLOCK_ROWS, to - first);
+            for (int r = 0; r < count; r++) {
+                int row = first + r;
+                int offset = row * rowLength;
+                for (int channel = 0; channel < channels; channel++) {
+                    if (fromWide) {
+                        System.arraycopy(input, (channel * rows + row) * rowLength, line, 0, rowLength);
+                    } else {
+                        int shift = channelShift(channel);
+                        for (int x = 0; x < rowLength; x++) {
+                            line[x] = ((input[offset + x] >> shift) & 0xFF) << EXTRA_BITS;
+                        }
+                    }
+                    filter.filter(line, scratch, block[channel][r]);
+                }
+            }
+
+            if (toWide) {
+                // Higher-precision channel planes, each stored transposed
+                for (int channel = 0; channel < channels; channel++) {
+                    int[][] planes = block[channel];
+                    int base = channel * rows * rowLength + first;
+                    for (int x = 0; x < rowLength; x++) {
+                        int column = base + x * rows;
+                        for (int r = 0; r < count; r++) {
+                            output[column + r] = planes[r][x];
+                        }
+                    }
+                }
+            } else {
+                for (int x = 0; x < rowLength; x++) {
+                    int column = x * rows + first;
+                    for (int r = 0; r < count; r++) {
+                        int packed = channels == 4 ? narrow(block[3][r][x]) << 24 : 0xFF000000;
+                        packed |= narrow(block[0][r][x]) << 16;
+                        packed |= narrow(block[1][r][x]) << 8;
+                        packed |= narrow(block[2][r][x]);
+                        output[column + r] = packed;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int channelShift(int channel) {
+        return channel == 3 ? 24 : 16 - 8 * channel;
+    }
+
+    private static int narrow(int wide) {
+        return Math.min(Math.max((wide + (1 << (EXTRA_BITS - 1))) >> EXTRA_BITS, 0), 255);
+    }
+
+    /**
+     * Runs {@code work} over {@code [0, rows)}, split into fork/join tasks when the image is large enough.
+     */
+    private void forRows(int rows, int rowLength, RowRange work) {
+        if ((long) rows * rowLength < SEQUENTIAL_PIXELS) {
+            work.run(0, rows);
+            return;
+        }
+        int rowsPerTask = Math.max(MIN_ROWS_PER_TASK, rows / (pool.getParallelism() * 4));
+        pool.invoke(new RowTask(work, 0, rows, rowsPerTask));
+    }
+
+    private static int packedType(boolean alpha) {
+        return alpha ? BufferedImage.TYPE_INT_ARGB_PRE : BufferedImage.TYPE_INT_RGB;
+    }
+
+    private static BufferedImage toImage(int[] pixels, int width, int height, boolean alpha) {
+        BufferedImage image = new BufferedImage(width, height, packedType(alpha));
+        System.arraycopy(pixels, 0, ((DataBufferInt) image.getRaster().getDataBuffer()).getData(), 0, pixels.length);
+        if (!alpha) {
+            return image;
+        }
+        // Encoders and the other filters expect straight alpha
+        BufferedImage straight = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = straight.createGraphics();
+        graphics.setComposite(AlphaComposite.Src);
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return straight;
+    }
+
+    @FunctionalInterface
+    private interface RowRange {
+        void run(int from, int to);
+    }
+
+    private static final class RowTask extends RecursiveAction {
+        private final RowRange work;
+        private final int from;
+        private final int to;
+        private final int rowsPerTask;
+
+        private RowTask(RowRange work, int from, int to, int rowsPerTask) {
+            this.work = work;
+            this.from = from;
+            this.to = to;
+            this.rowsPerTask = rowsPerTask;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= rowsPerTask) {
+                work.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RowTask(work, from, middle, rowsPerTask), new RowTask(work, middle, to, rowsPerTask));
+        }
+    }
+
+    /**
+     * Blurs one line of channel values, replicating the edge values beyond its ends.
+     */
+    interface RowFilter {
+        void filter(int[] line, int[] scratch, int[] output);
+
+        /**
+         * The number of neighbours on each side that an output value depends on.
+         */
+        int reach();
+    }
+
+    /**
+     * Direct convolution with the sampled Gaussian, truncated at three standard deviations.
+     */
+    private static final class KernelRowFilter implements RowFilter {
+        private final int radius;
+        private final int[] weights;
+
+        private KernelRowFilter(double sigma) {
+            radius = Math.max(1, (int) Math.ceil(3 * sigma));
+            double[] exact = new double[2 * radius + 1];
+            double sum = 0;
+            for (int k = -radius; k <= radius; k++) {
+                exact[k + radius] = Math.exp(-(k * k) / (2 * sigma * sigma));
+                sum += exact[k + radius];
+            }
+            weights = new int[exact.length];
+            int total = 0;
+            for (int k = 0; k < exact.length; k++) {
+                weights[k] = (int) Math.round(exact[k] / sum * (1 << KERNEL_BITS));
+                total += weights[k];
+            }
+            // Rounding leftovers go to the centre so flat areas stay exactly flat
+            weights[radius] += (1 << KERNEL_BITS) - total;
+        }
+
+        @Override
+        public void filter(int[] line, int[] scratch, int[] output) {
+            int length = line.length;
+            int from = Math.min(radius, length);
+            int to = Math.max(from, length - radius);
+
+            // Away from the ends, one tap at a time over the whole line: plain array loops the JIT
+            // vectorizes. The kernel is symmetric, so mirrored taps share one multiply.
+            int centre = weights[radius];
+            for (int x = from; x < to; x++) {
+                scratch[x] = centre * line[x];
+            }
+            for (int k = 1; k <= radius; k++) {
+                int weight = weights[radius + k];
+                for (int x = from; x < to; x++) {
+                    scratch[x] += weight * (line[x - k] + line[x + k]);
+                }
+            }
+            for (int x = from; x < to; x++) {
+                output[x] = (scratch[x] + (1 << (KERNEL_BITS - 1))) >> KERNEL_BITS;
+            }
+
+            // Near the ends, the edge values are replicated
+            filterEdge(line, output, 0, from);
+            filterEdge(line, output, to, length);
+        }
+
+        @Override
+        public int reach() {
+            return radius;
+        }
+
+        private void filterEdge(int[] line, int[] output, int from, int to) {
+            int last = line.length - 1;
+            for (int x = from; x < to; x++) {
+                int sum = weights[radius] * line[x];
+                for (int k = 1; k <= radius; k++) {
+                    sum += weights[radius + k] * (line[Math.max(x - k, 0)] + line[Math.min(x + k, last)]);
+                }
+                output[x] = (sum + (1 << (KERNEL_BITS - 1))) >> KERNEL_BITS;
+            }
+        }
+    }
+
+    /**
+     * Three box blurs whose combined variance matches the Gaussian's; each box is a running sum,
+     * so every pixel costs the same whatever the radius.
+     */
+    private static final class BoxRowFilter implements RowFilter {
+        private final int[] radii = new int[3];
+
+        private BoxRowFilter(double sigma) {
+            // Box widths for three passes: the odd widths just below and above the ideal one, mixed
+            double ideal = Math.sqrt(12 * sigma * sigma / 3 + 1);
+            int lower = (int) Math.floor(ideal);
+            if (lower % 2 == 0) {
+                lower--;
+            }
+            int upper = lower + 2;
+            int lowerCount = (int) Math.round((12 * sigma * sigma - 3.0 * lower * lower - 12.0 * lower - 9)
+                    / (-4.0 * lower - 4));
+            for (int pass = 0; pass < 3; pass++) {
+                radii[pass] = ((pass < lowerCount ? lower : upper) - 1) / 2;
+            }
+        }
+
+        @Override
+        public void filter(int[] line, int[] scratch, int[] output) {
+            box(line, output, radii[0]);
+            box(output, scratch, radii[1]);
+            box(scratch, output, radii[2]);
+        }
+
+        @Override
+        public int reach() {
+            return radii[0] + radii[1] + radii[2];
+        }
+
+        private static void box(int[] input, int[] output, int radius) {
+            int length = input.length;
+            int last = length - 1;
+            long scale = Math.round((double) (1L << BOX_BITS) / (2 * radius + 1));
+            long half = 1L << (BOX_BITS - 1);
+            long sum = (long) (radius + 1) * input[0];
+            for (int i = 1; i <= radius; i++) {
+                sum += input[Math.min(i, last)];
+            }
+            // Edge values are replicated only near the ends; the middle of the line needs no clamping
+            int head = Math.min(radius, length);
+            int tail = Math.max(head, length - radius - 1);
+            int x = 0;
+            for (; x < head; x++) {
+                output[x] = (int) ((sum * scale + half) >> BOX_BITS);
+                sum += input[Math.min(x + radius + 1, last)] - input[0];
+            }
+            for (; x < tail; x++) {
+                output[x] = (int) ((sum * scale + half) >> BOX_BITS);
+                sum += input[x + radius + 1] - input[x - radius];
+            }
+            for (; x < length; x++) {
+                output[x] = (int) ((sum * scale + half) >> BOX_BITS);
+                sum += input[last] - input[Math.max(x - radius, 0)];
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.imageprocessing.image;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the {@code images_seq} id generator past the ids that already exist. Images used to get
+ * IDENTITY ids, so on an existing database the newly created sequence would start at 1 and collide
+ * with them. Runs after Hibernate has updated the schema and before the web server takes requests.
+ */
+@Component
+public class IdSequenceInitializer {
+    private static final Logger logger = LoggerFactory.getLogger(IdSequenceInitializer.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // The EntityManagerFactory is only injected so that the schema update has run before this bean
+    public IdSequenceInitializer(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void alignImageSequence() {
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM images", Long.class);
+        if (maxId == null || maxId == 0) {
+            return;
+        }
+
+        String database = jdbcTemplate.execute(
+                (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        // The pooled optimizer hands out the allocationSize ids ending at the value it reads, so that value must reach maxId + allocationSize
+        if ("PostgreSQL".equals(database)) {
+            Long lastValue = jdbcTemplate.queryForObject("SELECT last_value FROM images_seq", Long.class);
+            if (lastValue != null && lastValue < maxId) {
+                jdbcTemplate.queryForObject("SELECT setval('images_seq', ?, true)", Long.class, maxId);
+                logger.info("Moved images_seq from {} to {} past existing image ids", lastValue, maxId);
+            }
+        } else if ("MySQL".equals(database) || "MariaDB".equals(database)) {
+            // MySQL has no sequences; Hibernate emulates images_seq with a single-row next_val table
+            int updated = jdbcTemplate.update("UPDATE images_seq SET next_val = ? WHERE next_val < ?",
+                    maxId + Image.ID_ALLOCATION_SIZE, maxId + Image.ID_ALLOCATION_SIZE);
+            if (updated > 0) {
+                logger.info("Moved images_seq to {} past existing image ids", maxId + Image.ID_ALLOCATION_SIZE);
+            }
+        }
+    }
+}
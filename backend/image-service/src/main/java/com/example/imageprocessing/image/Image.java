@@ -4,10 +4,19 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "images")
+@Table(name = "images", indexes = {
+        @Index(name = "idx_images_user_id_id", columnList = "userId, id"),
+        @Index(name = "idx_images_user_id_perceptual_hash", columnList = "userId, perceptualHash"),
+        @Index(name = "idx_images_sha256", columnList = "sha256"),
+        @Index(name = "idx_images_filename", columnList = "filename")
+})
 public class Image {
+    static final int ID_ALLOCATION_SIZE = 50;
+
+    // Pooled sequence instead of IDENTITY so Hibernate can batch inserts; see IdSequenceInitializer
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "images_seq")
+    @SequenceGenerator(name = "images_seq", sequenceName = "images_seq", allocationSize = Image.ID_ALLOCATION_SIZE)
     private Long id;
 
     private String filename;
@@ -16,6 +25,22 @@ public class Image {
     private String contentType;
     private Long fileSize;
     private Long userId;
+
+    // Probed from the file header when the upload is registered; null for images saved before probing
+    private Integer width;
+    private Integer height;
+    private String format;
+    // EXIF orientation, 1 to 8, for JPEGs
+    private Integer orientation;
+    private String colorModel;
+
+    // Hex SHA-256 of the content; the file is then the shared StoredObject. Null for images stored
+    // under their own key (saved before deduplication, or not yet hashed after a presigned upload)
+    @Column(length = 64)
+    private String sha256;
+
+    // 64-bit difference hash of a small proxy of the image, see PerceptualHash; null until computed
+    private Long perceptualHash;
     
     @Column(name = "created_at")
     private LocalDateTime createdAt;
@@ -91,6 +116,62 @@ public class Image {
         this.userId = userId;
     }
 
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    public Integer getOrientation() {
+        return orientation;
+    }
+
+    public void setOrientation(Integer orientation) {
+        this.orientation = orientation;
+    }
+
+    public String getColorModel() {
+        return colorModel;
+    }
+
+    public void setColorModel(String colorModel) {
+        this.colorModel = colorModel;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+
+    public Long getPerceptualHash() {
+        return perceptualHash;
+    }
+
+    public void setPerceptualHash(Long perceptualHash) {
+        this.perceptualHash = perceptualHash;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -0,0 +1,55 @@
+package com.example.imageprocessing.image;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+
+/**
+ * Registers the ImageIO plugins and loads the codecs and Java2D loops once the application is
+ * ready, on a background thread. ImageIO scans the class path for plugins the first time it is
+ * used; doing that here keeps it off both the startup path and the first upload or transform.
+ */
+@Component
+public class ImageCodecInitializer {
+    private static final Logger logger = LoggerFactory.getLogger(ImageCodecInitializer.class);
+
+    private static final String[] FORMATS = {"jpeg", "png", "gif"};
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initializeInBackground() {
+        Thread thread = new Thread(this::initialize, "image-codec-init");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    void initialize() {
+        long start = System.nanoTime();
+        for (String format : FORMATS) {
+            Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName(format);
+            if (readers.hasNext()) {
+                readers.next().dispose();
+            }
+            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+            if (writers.hasNext()) {
+                writers.next().dispose();
+            }
+        }
+        // Loads the blit and scaling loops the transformations draw with
+        BufferedImage image = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(new BufferedImage(4, 4, BufferedImage.TYPE_3BYTE_BGR), 0, 0, 2, 2, null);
+        graphics.dispose();
+        logger.info("Initialized image codecs in {} ms", (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -1,34 +1,75 @@
 package com.example.imageprocessing.image;
 
+import com.example.imageprocessing.cluster.TransformRouter;
+import com.example.imageprocessing.render.RenderOptions;
+import com.example.imageprocessing.render.RenderUrlSigner;
+import com.example.imageprocessing.similarity.SimilarImageService;
+import com.example.imageprocessing.throttle.ThrottledException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/images")
 public class ImageController {
+    private static final Logger logger = LoggerFactory.getLogger(ImageController.class);
+
+    // NDJSON rows are flushed in groups so the client sees progress without a flush per row
+    private static final int EXPORT_FLUSH_ROWS = 100;
+
     private final ImageService service;
     private final ImageTransformationService transformationService;
     private final TransformedImageService transformedImageService;
+    private final BulkDeleteService bulkDeleteService;
+    private final MultipartUploadService multipartUploadService;
+    private final TransformRouter transformRouter;
+    private final SimilarImageService similarImageService;
+    private final RenderUrlSigner renderUrlSigner;
+    private final ObjectWriter exportWriter;
 
     public ImageController(ImageService service, ImageTransformationService transformationService, 
-                          TransformedImageService transformedImageService) {
+                          TransformedImageService transformedImageService, BulkDeleteService bulkDeleteService,
+                          MultipartUploadService multipartUploadService, TransformRouter transformRouter,
+                          SimilarImageService similarImageService, RenderUrlSigner renderUrlSigner,
+                          ObjectMapper objectMapper) {
         this.service = service;
         this.transformationService = transformationService;
         this.transformedImageService = transformedImageService;
+        this.bulkDeleteService = bulkDeleteService;
+        this.multipartUploadService = multipartUploadService;
+        this.transformRouter = transformRouter;
+        this.similarImageService = similarImageService;
+        this.renderUrlSigner = renderUrlSigner;
+        this.exportWriter = objectMapper.writerFor(ImageResponse.class);
     }
 
     @PostMapping
-    public ResponseEntity<ImageResponse> upload(MultipartFile file, Authentication auth) throws Exception {
-        Image image = service.upload(file, auth.getName());
-        ImageResponse response = new ImageResponse(image);
-        return ResponseEntity.ok(response);
+    public ResponseEntity<?> upload(MultipartFile file, Authentication auth) throws Exception {
+        try {
+            Image image = service.upload(file, auth.getName());
+            ImageResponse response = new ImageResponse(image);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 
     @GetMapping
@@ -53,6 +94,32 @@ public class ImageController {
         }
     }
 
+    /**
+     * Exports the whole library as NDJSON, one image per line, straight from a database cursor.
+     * Unlike {@code GET /images?limit=0} nothing is collected in memory and the first rows are
+     * sent as soon as they are read.
+     */
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    public void exportImages(Authentication auth, HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        OutputStream output = response.getOutputStream();
+
+        long start = System.nanoTime();
+        long[] rows = {0};
+        service.exportUserImages(auth.getName(), image -> {
+            // Ownership is established by the query, so the URL is presigned directly without another lookup
+            ImageResponse row = new ImageResponse(image, service.generatePresignedDownloadUrl(image.getFilename()));
+            output.write(exportWriter.writeValueAsBytes(row));
+            output.write('\n');
+            if (++rows[0] % EXPORT_FLUSH_ROWS == 1) {
+                output.flush();
+            }
+        });
+        output.flush();
+        logger.info("Exported {} images for {} in {} ms", rows[0], auth.getName(), (System.nanoTime() - start) / 1_000_000);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<ImageResponse> getImage(@PathVariable Long id, Authentication auth) {
         return service.getImageById(id, auth.getName())
@@ -60,12 +127,50 @@ public class ImageController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Near-duplicates of an image in the user's library, closest first: images whose perceptual
+     * hash differs from this one's in at most {@code maxDistance} of 64 bits.
+     */
+    @GetMapping("/{id}/similar")
+    public ResponseEntity<?> getSimilarImages(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "8") int maxDistance,
+            @RequestParam(defaultValue = "50") int limit,
+            Authentication auth) {
+        try {
+            return similarImageService.findSimilar(id, maxDistance, limit, auth.getName())
+                    .<ResponseEntity<?>>map(similar -> ResponseEntity.ok(similar.stream()
+                            .map(match -> new SimilarImageResponse(match.getImage(),
+                                    service.generatePresignedDownloadUrl(match.getImage().getFilename()),
+                                    match.getDistance()))
+                            .toList()))
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @PostMapping("/{id}/transform")
     public ResponseEntity<?> transformImage(
             @PathVariable Long id,
             @RequestBody TransformationRequest request,
-            Authentication auth) {
-        
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            @RequestHeader(value = TransformRouter.FORWARDED_HEADER, required = false) String forwardedBy,
+            @RequestHeader(value = TransformRouter.SIGNATURE_HEADER, required = false) String forwardSignature,
+            Authentication auth,
+            HttpServletResponse servletResponse) {
+
+        // In cluster mode the image's owner node runs the transformation
+        if (!transformRouter.isForwarded(id, forwardedBy, forwardSignature, authorization)) {
+            Optional<ResponseEntity<byte[]>> forwarded = transformRouter.route(id, request, authorization);
+            if (forwarded.isPresent()) {
+                return forwarded.get();
+            }
+        }
+        if (transformRouter.isEnabled()) {
+            servletResponse.setHeader(TransformRouter.NODE_HEADER, transformRouter.getSelf());
+        }
+
         try {
             // Get the original image and verify user ownership
             Image originalImage = service.getImageById(id, auth.getName())
@@ -74,7 +179,7 @@ public class ImageController {
             // Convert request to transformation options
             ImageTransformationService.TransformationOptions options = convertToTransformationOptions(request.getTransformations());
 
-            // Apply transformations
+            // Apply transformations; throttled per user, identical concurrent requests share one result
             TransformedImage result = transformationService.transformImage(originalImage, options, auth.getName());
 
             // Create response
@@ -87,11 +192,36 @@ public class ImageController {
             response.setTransformations(request.getTransformations());
 
             return ResponseEntity.ok(response);
+        } catch (ThrottledException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("Transformation failed: " + e.getMessage());
         }
     }
 
+    /**
+     * Issues a public, signed URL that renders the transformation on request. The options are
+     * normalized first, so equivalent requests get the same URL and share one cache entry.
+     */
+    @PostMapping("/{id}/render-url")
+    public ResponseEntity<?> createRenderUrl(@PathVariable Long id, @RequestBody TransformationRequest request,
+                                             Authentication auth) {
+        try {
+            Image originalImage = service.getImageById(id, auth.getName())
+                    .orElseThrow(() -> new RuntimeException("Image not found or access denied"));
+            ImageTransformationService.TransformationOptions options = transformationService.normalizeOptions(
+                    originalImage, convertToTransformationOptions(request.getTransformations()), auth.getName());
+
+            RenderUrlResponse response = new RenderUrlResponse();
+            response.setRenderUrl(renderUrlSigner.url(originalImage.getId(), RenderOptions.format(options)));
+            return ResponseEntity.ok(response);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body("Failed to create render URL: " + e.getMessage());
+        }
+    }
+
     private ImageTransformationService.TransformationOptions convertToTransformationOptions(TransformationRequest.TransformationOptions source) {
         ImageTransformationService.TransformationOptions target = new ImageTransformationService.TransformationOptions();
         
@@ -118,8 +248,28 @@ public class ImageController {
             ImageTransformationService.FilterOptions filters = new ImageTransformationService.FilterOptions();
             filters.setGrayscale(source.getFilters().getGrayscale());
             filters.setSepia(source.getFilters().getSepia());
+            filters.setBrightness(source.getFilters().getBrightness());
+            filters.setContrast(source.getFilters().getContrast());
+            filters.setSaturation(source.getFilters().getSaturation());
+            filters.setHue(source.getFilters().getHue());
+            filters.setInvert(source.getFilters().getInvert());
+            filters.setBlur(source.getFilters().getBlur());
+            filters.setSharpen(source.getFilters().getSharpen());
+            filters.setSharpenRadius(source.getFilters().getSharpenRadius());
             target.setFilters(filters);
         }
+
+        if (source.getWatermark() != null) {
+            ImageTransformationService.WatermarkOptions watermark = new ImageTransformationService.WatermarkOptions();
+            watermark.setText(source.getWatermark().getText());
+            watermark.setImageId(source.getWatermark().getImageId());
+            watermark.setPosition(source.getWatermark().getPosition());
+            watermark.setOpacity(source.getWatermark().getOpacity());
+            watermark.setScale(source.getWatermark().getScale());
+            watermark.setTile(source.getWatermark().getTile());
+            watermark.setColor(source.getWatermark().getColor());
+            target.setWatermark(watermark);
+        }
         
         return target;
     }
@@ -141,6 +291,80 @@ public class ImageController {
         }
     }
 
+    @PostMapping("/upload-session")
+    public ResponseEntity<?> createUploadSession(
+            @RequestBody UploadSessionRequest request,
+            Authentication auth) {
+
+        try {
+            List<ImageService.UploadFile> files = request.getFiles() == null ? List.of() : request.getFiles().stream()
+                    .map(file -> new ImageService.UploadFile(file.getFilename(), file.getContentType()))
+                    .toList();
+            return ResponseEntity.ok(service.generateUploadSession(files, auth.getName()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Failed to create upload session: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/multipart-uploads")
+    public ResponseEntity<?> initiateMultipartUpload(
+            @RequestBody MultipartUploadRequest request,
+            Authentication auth) {
+
+        try {
+            long fileSize = request.getFileSize() == null ? 0 : request.getFileSize();
+            return ResponseEntity.ok(multipartUploadService.initiate(
+                    request.getFilename(), request.getContentType(), fileSize, auth.getName()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Failed to initiate multipart upload: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/multipart-uploads/{uploadId}/parts")
+    public ResponseEntity<?> presignMultipartUploadParts(
+            @PathVariable String uploadId,
+            @RequestBody PresignPartsRequest request,
+            Authentication auth) {
+
+        try {
+            return ResponseEntity.ok(multipartUploadService.presignParts(uploadId, request.getPartNumbers(), auth.getName()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Failed to presign parts: " + e.getMessage());
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @PostMapping("/multipart-uploads/{uploadId}/complete")
+    public ResponseEntity<?> completeMultipartUpload(
+            @PathVariable String uploadId,
+            @RequestBody CompleteMultipartUploadRequest request,
+            Authentication auth) {
+
+        try {
+            List<MultipartUploadService.CompletedPartInfo> parts = request.getParts() == null ? List.of() : request.getParts().stream()
+                    .map(part -> new MultipartUploadService.CompletedPartInfo(part.getPartNumber(), part.getEtag()))
+                    .toList();
+            Image image = multipartUploadService.complete(uploadId, parts, auth.getName());
+            return ResponseEntity.ok(new ImageResponse(image, service, auth.getName()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Failed to complete multipart upload: " + e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/multipart-uploads/{uploadId}")
+    public ResponseEntity<?> abortMultipartUpload(@PathVariable String uploadId, Authentication auth) {
+        try {
+            multipartUploadService.abort(uploadId, auth.getName());
+            return ResponseEntity.ok().build();
+        } catch (RuntimeException e) {
+            if (e.getMessage() != null && e.getMessage().contains("not found")) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.badRequest().body("Failed to abort multipart upload: " + e.getMessage());
+        }
+    }
+
     @GetMapping("/{id}/download-url")
     public ResponseEntity<DownloadUrlResponse> generateDownloadUrl(
             @PathVariable Long id,
@@ -158,18 +382,44 @@ public class ImageController {
     }
 
     @PostMapping("/save-metadata")
-    public ResponseEntity<ImageResponse> saveImageMetadata(
+    public ResponseEntity<?> saveImageMetadata(
             @RequestBody SaveMetadataRequest request,
             Authentication auth) {
         
-        Image image = service.saveImageMetadata(
-                request.getFilename(),
-                request.getOriginalName(),
-                request.getContentType(),
-                request.getFileSize(),
-                auth.getName()
-        );
-        return ResponseEntity.ok(new ImageResponse(image, service, auth.getName()));
+        try {
+            Image image = service.saveImageMetadata(
+                    request.getFilename(),
+                    request.getOriginalName(),
+                    request.getContentType(),
+                    request.getFileSize(),
+                    auth.getName()
+            );
+            return ResponseEntity.ok(new ImageResponse(image, service, auth.getName()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @PostMapping("/save-metadata/batch")
+    public ResponseEntity<?> saveImagesMetadata(
+            @RequestBody BatchSaveMetadataRequest request,
+            Authentication auth) {
+
+        try {
+            List<ImageService.ImageMetadata> metadata = request.getImages() == null ? List.of() : request.getImages().stream()
+                    .map(item -> new ImageService.ImageMetadata(item.getFilename(), item.getOriginalName(),
+                            item.getContentType(), item.getFileSize()))
+                    .toList();
+            List<Image> images = service.saveImagesMetadata(metadata, auth.getName());
+
+            // The images were just created for this user, so URLs are presigned without looking them up again
+            List<ImageResponse> responses = images.stream()
+                    .map(image -> new ImageResponse(image, service.generatePresignedDownloadUrl(image.getFilename())))
+                    .toList();
+            return ResponseEntity.ok(responses);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Failed to save image metadata: " + e.getMessage());
+        }
     }
 
     @DeleteMapping("/{id}")
@@ -185,6 +435,25 @@ public class ImageController {
         }
     }
 
+    @PostMapping("/bulk-delete")
+    public ResponseEntity<?> bulkDelete(@RequestBody BulkDeleteRequest request, Authentication auth) {
+        try {
+            BulkDeleteJob job = bulkDeleteService.startJob(request.getImageIds(), auth.getName());
+            return ResponseEntity.accepted()
+                    .location(URI.create("/images/bulk-delete/" + job.getId()))
+                    .body(new BulkDeleteResponse(job));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Failed to start bulk delete: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/bulk-delete/{jobId}")
+    public ResponseEntity<BulkDeleteResponse> getBulkDeleteProgress(@PathVariable String jobId, Authentication auth) {
+        return bulkDeleteService.getJob(jobId, auth.getName())
+                .map(job -> ResponseEntity.ok(new BulkDeleteResponse(job)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @GetMapping("/{id}/transformations")
     public ResponseEntity<List<TransformedImageResponse>> getImageTransformations(
             @PathVariable Long id,
@@ -266,6 +535,10 @@ public class ImageController {
         private String url;
         private String contentType;
         private Long fileSize;
+        private Integer width;
+        private Integer height;
+        private String format;
+        private String sha256;
         private String createdAt;
 
         public ImageResponse(Image image) {
@@ -274,14 +547,27 @@ public class ImageController {
             this.url = image.getS3Url();
             this.contentType = image.getContentType();
             this.fileSize = image.getFileSize();
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.format = image.getFormat();
+            this.sha256 = image.getSha256();
             this.createdAt = image.getCreatedAt().toString();
         }
 
+        public ImageResponse(Image image, String url) {
+            this(image);
+            this.url = url;
+        }
+
         public ImageResponse(Image image, ImageService imageService, String username) {
             this.id = image.getId();
             this.name = image.getOriginalName();
             this.contentType = image.getContentType();
             this.fileSize = image.getFileSize();
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.format = image.getFormat();
+            this.sha256 = image.getSha256();
             this.createdAt = image.getCreatedAt().toString();
             
             // Generate pre-signed URL for display
@@ -299,9 +585,24 @@ public class ImageController {
         public String getUrl() { return url; }
         public String getContentType() { return contentType; }
         public Long getFileSize() { return fileSize; }
+        public Integer getWidth() { return width; }
+        public Integer getHeight() { return height; }
+        public String getFormat() { return format; }
+        public String getSha256() { return sha256; }
         public String getCreatedAt() { return createdAt; }
     }
 
+    public static class SimilarImageResponse extends ImageResponse {
+        private int distance;
+
+        public SimilarImageResponse(Image image, String url, int distance) {
+            super(image, url);
+            this.distance = distance;
+        }
+
+        public int getDistance() { return distance; }
+    }
+
     public static class TransformationRequest {
         private TransformationRequest.TransformationOptions transformations;
 
@@ -314,6 +615,7 @@ public class ImageController {
             private Integer rotate;
             private String format;
             private FilterOptions filters;
+            private WatermarkOptions watermark;
 
             // getters and setters
             public ResizeOptions getResize() { return resize; }
@@ -326,6 +628,8 @@ public class ImageController {
             public void setFormat(String format) { this.format = format; }
             public FilterOptions getFilters() { return filters; }
             public void setFilters(FilterOptions filters) { this.filters = filters; }
+            public WatermarkOptions getWatermark() { return watermark; }
+            public void setWatermark(WatermarkOptions watermark) { this.watermark = watermark; }
         }
 
         public static class ResizeOptions {
@@ -357,11 +661,60 @@ public class ImageController {
         public static class FilterOptions {
             private Boolean grayscale;
             private Boolean sepia;
+            private Double brightness;
+            private Double contrast;
+            private Double saturation;
+            private Double hue;
+            private Boolean invert;
+            private Double blur;
+            private Double sharpen;
+            private Double sharpenRadius;
 
             public Boolean getGrayscale() { return grayscale; }
             public void setGrayscale(Boolean grayscale) { this.grayscale = grayscale; }
             public Boolean getSepia() { return sepia; }
             public void setSepia(Boolean sepia) { this.sepia = sepia; }
+            public Double getBrightness() { return brightness; }
+            public void setBrightness(Double brightness) { this.brightness = brightness; }
+            public Double getContrast() { return contrast; }
+            public void setContrast(Double contrast) { this.contrast = contrast; }
+            public Double getSaturation() { return saturation; }
+            public void setSaturation(Double saturation) { this.saturation = saturation; }
+            public Double getHue() { return hue; }
+            public void setHue(Double hue) { this.hue = hue; }
+            public Boolean getInvert() { return invert; }
+            public void setInvert(Boolean invert) { this.invert = invert; }
+            public Double getBlur() { return blur; }
+            public void setBlur(Double blur) { this.blur = blur; }
+            public Double getSharpen() { return sharpen; }
+            public void setSharpen(Double sharpen) { this.sharpen = sharpen; }
+            public Double getSharpenRadius() { return sharpenRadius; }
+            public void setSharpenRadius(Double sharpenRadius) { this.sharpenRadius = sharpenRadius; }
+        }
+
+        public static class WatermarkOptions {
+            private String text;
+            private Long imageId;
+            private String position;
+            private Double opacity;
+            private Double scale;
+            private Boolean tile;
+            private String color;
+
+            public String getText() { return text; }
+            public void setText(String text) { this.text = text; }
+            public Long getImageId() { return imageId; }
+            public void setImageId(Long imageId) { this.imageId = imageId; }
+            public String getPosition() { return position; }
+            public void setPosition(String position) { this.position = position; }
+            public Double getOpacity() { return opacity; }
+            public void setOpacity(Double opacity) { this.opacity = opacity; }
+            public Double getScale() { return scale; }
+            public void setScale(Double scale) { this.scale = scale; }
+            public Boolean getTile() { return tile; }
+            public void setTile(Boolean tile) { this.tile = tile; }
+            public String getColor() { return color; }
+            public void setColor(String color) { this.color = color; }
         }
     }
 
@@ -385,6 +738,103 @@ public class ImageController {
         public void setExpiresIn(int expiresIn) { this.expiresIn = expiresIn; }
     }
 
+    public static class RenderUrlResponse {
+        private String renderUrl;
+
+        public String getRenderUrl() { return renderUrl; }
+        public void setRenderUrl(String renderUrl) { this.renderUrl = renderUrl; }
+    }
+
+    public static class UploadSessionRequest {
+        private List<UploadUrlRequest> files;
+
+        public List<UploadUrlRequest> getFiles() { return files; }
+        public void setFiles(List<UploadUrlRequest> files) { this.files = files; }
+    }
+
+    public static class BatchSaveMetadataRequest {
+        private List<SaveMetadataRequest> images;
+
+        public List<SaveMetadataRequest> getImages() { return images; }
+        public void setImages(List<SaveMetadataRequest> images) { this.images = images; }
+    }
+
+    public static class MultipartUploadRequest {
+        private String filename;
+        private String contentType;
+        private Long fileSize;
+
+        public String getFilename() { return filename; }
+        public void setFilename(String filename) { this.filename = filename; }
+        public String getContentType() { return contentType; }
+        public void setContentType(String contentType) { this.contentType = contentType; }
+        public Long getFileSize() { return fileSize; }
+        public void setFileSize(Long fileSize) { this.fileSize = fileSize; }
+    }
+
+    public static class PresignPartsRequest {
+        private List<Integer> partNumbers;
+
+        public List<Integer> getPartNumbers() { return partNumbers; }
+        public void setPartNumbers(List<Integer> partNumbers) { this.partNumbers = partNumbers; }
+    }
+
+    public static class CompleteMultipartUploadRequest {
+        private List<CompletedPart> parts;
+
+        public List<CompletedPart> getParts() { return parts; }
+        public void setParts(List<CompletedPart> parts) { this.parts = parts; }
+
+        public static class CompletedPart {
+            private Integer partNumber;
+            // ETag header returned by S3 for the part's PUT
+            private String etag;
+
+            public Integer getPartNumber() { return partNumber; }
+            public void setPartNumber(Integer partNumber) { this.partNumber = partNumber; }
+            public String getEtag() { return etag; }
+            public void setEtag(String etag) { this.etag = etag; }
+        }
+    }
+
+    public static class BulkDeleteRequest {
+        private List<Long> imageIds;
+
+        public List<Long> getImageIds() { return imageIds; }
+        public void setImageIds(List<Long> imageIds) { this.imageIds = imageIds; }
+    }
+
+    public static class BulkDeleteResponse {
+        private String jobId;
+        private String status;
+        private int total;
+        private int processed;
+        private int deleted;
+        private int failed;
+        private int notFound;
+        private String error;
+
+        public BulkDeleteResponse(BulkDeleteJob job) {
+            this.jobId = job.getId();
+            this.status = job.getStatus().name();
+            this.total = job.getTotal();
+            this.processed = job.getProcessed();
+            this.deleted = job.getDeleted();
+            this.failed = job.getFailed();
+            this.notFound = job.getNotFound();
+            this.error = job.getError();
+        }
+
+        public String getJobId() { return jobId; }
+        public String getStatus() { return status; }
+        public int getTotal() { return total; }
+        public int getProcessed() { return processed; }
+        public int getDeleted() { return deleted; }
+        public int getFailed() { return failed; }
+        public int getNotFound() { return notFound; }
+        public String getError() { return error; }
+    }
+
     public static class SaveMetadataRequest {
         private String filename;
         private String originalName;
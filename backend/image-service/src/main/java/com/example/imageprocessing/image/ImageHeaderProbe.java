@@ -0,0 +1,256 @@
+package com.example.imageprocessing.image;
+
+import com.example.imageprocessing.timing.RequestTimings;
+import jakarta.annotation.PreDestroy;
+import net.coobird.thumbnailator.util.exif.ExifUtils;
+import net.coobird.thumbnailator.util.exif.Orientation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.color.ColorSpace;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads an image's dimensions, format, EXIF orientation and color model from the first bytes of
+ * the object with a ranged S3 GET, so uploads can be registered with trustworthy metadata without
+ * downloading or decoding the pixels. Headers that do not fit in the first range (JPEGs with a
+ * large EXIF block before the frame header) are retried once with a larger range. Dimensions are
+ * those of the upright image, after its EXIF orientation is applied.
+ *
+ * Objects no ImageIO reader recognizes (WebP, HEIC and AVIF without extra plugins) are still
+ * accepted: their header has only the file size, and the format and dimensions stay unknown.
+ */
+@Component
+public class ImageHeaderProbe {
+    private static final Logger logger = LoggerFactory.getLogger(ImageHeaderProbe.class);
+
+    // Files that are already local are parsed from this much of their start
+    static final int MAX_LOCAL_HEADER_BYTES = 256 * 1024;
+
+    private final S3Client s3Client;
+    private final ExecutorService executor;
+
+    @Value("${aws.s3.bucket:project-image-processing-service-bucket}")
+    private String bucket;
+
+    @Value("${image.probe.initial-bytes:16384}")
+    private int initialBytes;
+
+    @Value("${image.probe.max-bytes:262144}")
+    private int maxBytes;
+
+    public ImageHeaderProbe(@Lazy S3Client s3Client, @Value("${image.probe.threads:8}") int threads) {
+        this.s3Client = s3Client;
+        this.executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Probes many objects in parallel; the results are in the order of {@code keys}.
+     */
+    public List<ImageHeader> probeAll(List<String> keys) {
+        return RequestTimings.time(RequestTimings.S3_GET, () -> {
+            List<CompletableFuture<ImageHeader>> probes = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                probes.add(CompletableFuture.supplyAsync(() -> probe(key), executor));
+            }
+            List<ImageHeader> headers = new ArrayList<>(keys.size());
+            try {
+                for (CompletableFuture<ImageHeader> probe : probes) {
+                    headers.add(probe.join());
+                }
+            } catch (CompletionException e) {
+                probes.forEach(probe -> probe.cancel(false));
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+            return headers;
+        });
+    }
+
+    /**
+     * Probes an uploaded object.
+     *
+     * @throws IllegalArgumentException if the object does not exist
+     */
+    public ImageHeader probe(String key) {
+        int length = initialBytes;
+        while (true) {
+            ResponseBytes<GetObjectResponse> range = fetchRange(key, length);
+            byte[] header = range.asByteArray();
+            long objectSize = objectSize(range.response(), header.length);
+
+            ImageHeader parsed = parse(header, objectSize);
+            if (parsed != null) {
+                return parsed;
+            }
+            if (header.length >= objectSize || length >= maxBytes) {
+                logger.info("Format of upload {} is not recognized, storing it without dimensions", key);
+                return ImageHeader.unrecognized(objectSize);
+            }
+            length = maxBytes;
+        }
+    }
+
+    /**
+     * Parses the start of an image; returns null if it is not a readable image header.
+     */
+    public ImageHeader parse(byte[] header, long objectSize) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(header))) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, false);
+                ImageHeader result = new ImageHeader();
+                result.format = normalizeFormat(reader.getFormatName());
+                result.width = reader.getWidth(0);
+                result.height = reader.getHeight(0);
+                result.colorModel = describeColorModel(reader, result.format, header);
+                result.fileSize = objectSize;
+                if ("jpeg".equals(result.format)) {
+                    Orientation orientation = ExifUtils.getExifOrientation(reader, 0);
+                    // Enum constants are declared in EXIF order, 1 (top-left) to 8 (left-bottom)
+                    result.orientation = orientation == null ? 1 : orientation.ordinal() + 1;
+                    // Orientations 5 to 8 turn the image a quarter: store the size it is decoded
+                    // (and planned) at, not the size of the stored pixels
+                    if (result.orientation >= 5) {
+                        result.width = reader.getHeight(0);
+                        result.height = reader.getWidth(0);
+                    }
+                }
+                return result;
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Truncated headers surface as EOF or parse errors
+            logger.debug("Could not parse image header of {} bytes: {}", header.length, e.toString());
+            return null;
+        }
+    }
+
+    private ResponseBytes<GetObjectResponse> fetchRange(String key, int length) {
+        try {
+            return RequestTimings.time(RequestTimings.S3_GET, () -> s3Client.getObjectAsBytes(GetObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .range("bytes=0-" + (length - 1))
+                    .build()));
+        } catch (NoSuchKeyException e) {
+            throw new IllegalArgumentException("Uploaded file not found: " + key);
+        }
+    }
+
+    // The total size comes from Content-Range ("bytes 0-16383/123456"), not from the client
+    private static long objectSize(GetObjectResponse response, int fetched) {
+        String contentRange = response.contentRange();
+        if (contentRange != null) {
+            int slash = contentRange.lastIndexOf('/');
+            if (slash >= 0 && !contentRange.endsWith("*")) {
+                return Long.parseLong(contentRange.substring(slash + 1).trim());
+            }
+        }
+        return fetched;
+    }
+
+    private static String normalizeFormat(String formatName) {
+        String format = formatName.toLowerCase(Locale.ROOT);
+        return "jpg".equals(format) ? "jpeg" : format;
+    }
+
+    private static String describeColorModel(ImageReader reader, String format, byte[] header) throws IOException {
+        ImageTypeSpecifier type = reader.getRawImageType(0);
+        if (type == null) {
+            // The JDK reader has no raw type for CMYK and YCCK JPEGs
+            return "jpeg".equals(format) && jpegComponentCount(header) == 4 ? "CMYK" : null;
+        }
+
+        ColorModel colorModel = type.getColorModel();
+        if (colorModel instanceof IndexColorModel) {
+            return "INDEXED";
+        }
+        switch (colorModel.getColorSpace().getType()) {
+            case ColorSpace.TYPE_GRAY:
+                return colorModel.hasAlpha() ? "GRAY_ALPHA" : "GRAY";
+            case ColorSpace.TYPE_CMYK:
+                return "CMYK";
+            default:
+                return colorModel.hasAlpha() ? "RGBA" : "RGB";
+        }
+    }
+
+    // Component count from the first SOFn marker segment
+    private static int jpegComponentCount(byte[] data) {
+        int position = 2;
+        while (position + 4 < data.length) {
+            if ((data[position] & 0xFF) != 0xFF) {
+                return -1;
+            }
+            int marker = data[position + 1] & 0xFF;
+            int segmentLength = ((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
+            boolean startOfFrame = marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+            if (startOfFrame && position + 9 < data.length) {
+                return data[position + 9] & 0xFF;
+            }
+            position += 2 + segmentLength;
+        }
+        return -1;
+    }
+
+    public static class ImageHeader {
+        private String format;
+        private Integer width;
+        private Integer height;
+        private Integer orientation;
+        private String colorModel;
+        private long fileSize;
+
+        public String getFormat() { return format; }
+        public Integer getWidth() { return width; }
+        public Integer getHeight() { return height; }
+        public Integer getOrientation() { return orientation; }
+        public String getColorModel() { return colorModel; }
+        public long getFileSize() { return fileSize; }
+
+        /** Returns null when the format is not recognized. */
+        public String getContentType() {
+            return format == null ? null : "image/" + format;
+        }
+
+        static ImageHeader unrecognized(long fileSize) {
+            ImageHeader header = new ImageHeader();
+            header.fileSize = fileSize;
+            return header;
+        }
+    }
+}
@@ -2,15 +2,70 @@ package com.example.imageprocessing.image;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface ImageRepository extends JpaRepository<Image, Long> {
     List<Image> findByUserId(Long userId);
     Page<Image> findByUserId(Long userId, Pageable pageable);
     Optional<Image> findByIdAndUserId(Long id, Long userId);
-}
\ No newline at end of file
+    List<Image> findByIdInAndUserId(Collection<Long> ids, Long userId);
+
+    // Read on the primary: a retried registration must see the row the first attempt just saved
+    @Transactional
+    List<Image> findByUserIdAndFilenameIn(Long userId, Collection<String> filenames);
+
+    // Read on the primary: an uploaded object is only deleted once no image points at it any more
+    @Transactional
+    boolean existsByFilename(String filename);
+
+    // Read on the primary: keys of the given ones that images outside the given ids still point at
+    @Transactional
+    @Query("select distinct i.filename from Image i where i.filename in :filenames and i.id not in :ids")
+    List<String> findFilenamesReferencedOutside(@Param("filenames") Collection<String> filenames,
+                                                @Param("ids") Collection<Long> ids);
+
+    // Forward-only cursor for exports: rows are fetched from the driver in batches instead of all at once
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select i from Image i where i.userId = :userId order by i.id")
+    Stream<Image> streamByUserId(Long userId);
+
+    // Id and perceptual hash pairs of a library, to build the similarity index without loading entities
+    @Query("select i.id, i.perceptualHash from Image i where i.userId = :userId and i.perceptualHash is not null")
+    List<Object[]> findPerceptualHashesByUserId(@Param("userId") Long userId);
+
+    @Transactional
+    @Modifying
+    @Query("update Image i set i.perceptualHash = :perceptualHash where i.id = :id")
+    int updatePerceptualHash(@Param("id") Long id, @Param("perceptualHash") Long perceptualHash);
+
+    // Points an image at its content-addressed object once a presigned upload has been hashed
+    @Transactional
+    @Modifying
+    @Query("update Image i set i.filename = :filename, i.s3Url = :s3Url, i.sha256 = :sha256 where i.id = :id and i.sha256 is null")
+    int updateContent(@Param("id") Long id, @Param("filename") String filename, @Param("s3Url") String s3Url,
+                      @Param("sha256") String sha256);
+
+    // Locks the rows for a delete: a concurrent updateContent waits for it and then updates nothing
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select i from Image i where i.id in :ids")
+    List<Image> findAllByIdInForUpdate(@Param("ids") Collection<Long> ids);
+}
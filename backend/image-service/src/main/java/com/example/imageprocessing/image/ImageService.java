@@ -1,37 +1,86 @@
 package com.example.imageprocessing.image;
 
 import com.example.imageprocessing.jwt.JwtUtil;
+import com.example.imageprocessing.similarity.PerceptualHash;
+import com.example.imageprocessing.similarity.SimilarImageService;
+import com.example.imageprocessing.timing.RequestTimings;
 import com.example.imageprocessing.user.UserRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.beans.factory.annotation.Value;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ChecksumAlgorithm;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
 
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
 
 @Service
 public class ImageService {
     private static final Logger logger = LoggerFactory.getLogger(ImageService.class);
+
+    // S3 CopyObject limit; larger presigned uploads are not moved to a content-addressed key
+    static final long MAX_COPY_SIZE = 5L * 1024 * 1024 * 1024;
     
     private final ImageRepository imageRepository;
     private final UserRepository userRepository;
     private final JwtUtil jwtUtil;
     private final S3Client s3Client;
     private final S3Presigner s3Presigner;
+    private final TransformedImageRepository transformedImageRepository;
+    private final S3BatchDeleter s3BatchDeleter;
+    private final ImageHeaderProbe imageHeaderProbe;
+    private final SimilarImageService similarImageService;
+    private final ContentStore contentStore;
+    private final PresignedUploadRepository presignedUploadRepository;
+    private final StoredObjectRepository storedObjectRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService contentExecutor;
+
+    @PersistenceContext
+    private EntityManager entityManager;
     
     @Value("${aws.s3.bucket:project-image-processing-service-bucket}")
     private String bucket;
@@ -39,45 +88,114 @@ public class ImageService {
     @Value("${aws.region:ap-south-1}")
     private String region;
 
+    @Value("${image.upload.max-batch-size:1000}")
+    private int maxBatchSize;
+
+    @Value("${image.upload.presigned-key-expiry-hours:24}")
+    private long presignedKeyExpiryHours;
+
     public ImageService(ImageRepository imageRepository, UserRepository userRepository, JwtUtil jwtUtil, 
-                       S3Client s3Client, S3Presigner s3Presigner) {
+                       @Lazy S3Client s3Client, @Lazy S3Presigner s3Presigner,
+                       TransformedImageRepository transformedImageRepository, S3BatchDeleter s3BatchDeleter,
+                       ImageHeaderProbe imageHeaderProbe, SimilarImageService similarImageService,
+                       ContentStore contentStore, PresignedUploadRepository presignedUploadRepository,
+                       StoredObjectRepository storedObjectRepository, TransactionTemplate transactionTemplate,
+                       @Value("${image.content.threads:2}") int contentThreads) {
         this.imageRepository = imageRepository;
         this.userRepository = userRepository;
         this.jwtUtil = jwtUtil;
         this.s3Client = s3Client;
         this.s3Presigner = s3Presigner;
+        this.transformedImageRepository = transformedImageRepository;
+        this.s3BatchDeleter = s3BatchDeleter;
+        this.imageHeaderProbe = imageHeaderProbe;
+        this.similarImageService = similarImageService;
+        this.contentStore = contentStore;
+        this.presignedUploadRepository = presignedUploadRepository;
+        this.storedObjectRepository = storedObjectRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.contentExecutor = Executors.newFixedThreadPool(contentThreads);
     }
 
+    @PreDestroy
+    public void shutdown() {
+        contentExecutor.shutdownNow();
+    }
+
+    /**
+     * Stores an upload under the SHA-256 of its bytes, computed while the upload is copied to a temp
+     * file. Content that is already stored, by this user or anyone else, is referenced instead of
+     * being uploaded again.
+     */
     public Image upload(MultipartFile file, String username) throws IOException {
         // Get user ID
         Long userId = userRepository.findFirstByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"))
                 .getId();
 
-        // Generate unique filename
         String originalName = file.getOriginalFilename();
-        String filename = UUID.randomUUID().toString() + "_" + originalName;
         
-        // Upload to S3
         java.nio.file.Path temp = Files.createTempFile("upload", originalName);
-        file.transferTo(temp);
-        s3Client.putObject(PutObjectRequest.builder().bucket(bucket).key(filename).build(), temp);
-        Files.deleteIfExists(temp);
+        ImageHeaderProbe.ImageHeader header;
+        Long perceptualHash;
+        String sha256;
+        ContentStore.Acquired stored;
+        try {
+            MessageDigest digest = ContentStore.newDigest();
+            try (InputStream input = new DigestInputStream(file.getInputStream(), digest)) {
+                Files.copy(input, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            byte[] digestBytes = digest.digest();
+            sha256 = ContentStore.toHex(digestBytes);
+            header = readHeader(originalName, temp, file.getSize());
+            perceptualHash = similarImageService.hash(temp);
+
+            // Upload to S3 unless the content is already there
+            stored = contentStore.acquire(sha256, ContentStore.contentKey(sha256), header.getFileSize());
+            if (stored.isCreated()) {
+                // S3 rejects the body if it does not match the checksum
+                PutObjectRequest request = PutObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(stored.getObjectKey())
+                        .checksumSHA256(Base64.getEncoder().encodeToString(digestBytes))
+                        .build();
+                try {
+                    RequestTimings.time(RequestTimings.S3_PUT, () -> s3Client.putObject(request, temp));
+                } catch (RuntimeException e) {
+                    contentStore.release(List.of(sha256));
+                    throw e;
+                }
+            } else {
+                logger.info("Upload {} has the same content as {}, not storing it again", originalName, stored.getObjectKey());
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
         
-        String s3Url = generateS3Url(filename);
+        String s3Url = generateS3Url(stored.getObjectKey());
         
         // Save to database
         Image image = new Image();
-        image.setFilename(filename);
+        image.setFilename(stored.getObjectKey());
         image.setOriginalName(originalName);
         image.setS3Url(s3Url);
-        image.setContentType(file.getContentType());
-        image.setFileSize(file.getSize());
         image.setUserId(userId);
+        applyHeader(image, header, file.getContentType());
+        image.setSha256(sha256);
+        image.setPerceptualHash(perceptualHash);
         
-        return imageRepository.save(image);
+        Image saved;
+        try {
+            saved = imageRepository.save(image);
+        } catch (RuntimeException e) {
+            contentStore.release(List.of(sha256));
+            throw e;
+        }
+        similarImageService.indexed(saved);
+        return saved;
     }
 
+    @Transactional(readOnly = true)
     public List<Image> getUserImages(String username) {
         Long userId = userRepository.findFirstByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"))
@@ -85,6 +203,35 @@ public class ImageService {
         return imageRepository.findByUserId(userId);
     }
 
+    /**
+     * Streams all images of the user, oldest first, to {@code writer} one row at a time. Rows are
+     * detached once written so memory stays flat however large the library is.
+     */
+    @Transactional(readOnly = true)
+    public long exportUserImages(String username, ImageRowWriter writer) throws IOException {
+        Long userId = userRepository.findFirstByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found"))
+                .getId();
+
+        long count = 0;
+        try (Stream<Image> images = imageRepository.streamByUserId(userId)) {
+            Iterator<Image> iterator = images.iterator();
+            while (iterator.hasNext()) {
+                Image image = iterator.next();
+                writer.write(image);
+                entityManager.detach(image);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @FunctionalInterface
+    public interface ImageRowWriter {
+        void write(Image image) throws IOException;
+    }
+
+    @Transactional(readOnly = true)
     public Page<Image> getUserImages(String username, Pageable pageable) {
         Long userId = userRepository.findFirstByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"))
@@ -92,6 +239,7 @@ public class ImageService {
         return imageRepository.findByUserId(userId, pageable);
     }
 
+    @Transactional(readOnly = true)
     public Optional<Image> getImageById(Long imageId, String username) {
         Long userId = userRepository.findFirstByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"))
@@ -106,6 +254,7 @@ public class ImageService {
 
         // Generate unique filename
         String uniqueFilename = UUID.randomUUID().toString() + "_" + filename;
+        recordPresignedUploads(List.of(uniqueFilename), username);
         
         PutObjectRequest putObjectRequest = PutObjectRequest.builder()
                 .bucket(bucket)
@@ -119,7 +268,8 @@ public class ImageService {
                 .putObjectRequest(putObjectRequest)
                 .build();
 
-        return s3Presigner.presignPutObject(presignRequest).url().toString();
+        return RequestTimings.time(RequestTimings.PRESIGN,
+                () -> s3Presigner.presignPutObject(presignRequest).url().toString());
     }
 
     public String generatePresignedDownloadUrl(String filename) {
@@ -133,9 +283,11 @@ public class ImageService {
                 .getObjectRequest(getObjectRequest)
                 .build();
 
-        return s3Presigner.presignGetObject(presignRequest).url().toString();
+        return RequestTimings.time(RequestTimings.PRESIGN,
+                () -> s3Presigner.presignGetObject(presignRequest).url().toString());
     }
 
+    @Transactional(readOnly = true)
     public String generatePresignedDownloadUrlForImage(Long imageId, String username) {
         Optional<Image> imageOpt = getImageById(imageId, username);
         if (imageOpt.isEmpty()) {
@@ -152,6 +304,7 @@ public class ImageService {
         
         // Generate presigned URL with the unique filename
         String presignedUrl = generatePresignedUploadUrlWithFilename(uniqueFilename, contentType, username);
+        recordPresignedUploads(List.of(uniqueFilename), username);
         
         PresignedUploadResponse response = new PresignedUploadResponse();
         response.setUploadUrl(presignedUrl);
@@ -166,6 +319,70 @@ public class ImageService {
         userRepository.findFirstByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
         
+        return presignUpload(uniqueFilename, contentType);
+    }
+
+    /**
+     * Presigns uploads for many files with a single user lookup. Uploads are returned in request order.
+     */
+    public UploadSessionResponse generateUploadSession(List<UploadFile> files, String username) {
+        if (files == null || files.isEmpty()) {
+            throw new IllegalArgumentException("No files given");
+        }
+        if (files.size() > maxBatchSize) {
+            throw new IllegalArgumentException("At most " + maxBatchSize + " files can be uploaded in one session");
+        }
+
+        userRepository.findFirstByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        List<PresignedUploadResponse> uploads = new ArrayList<>(files.size());
+        for (UploadFile file : files) {
+            String uniqueFilename = UUID.randomUUID().toString() + "_" + file.getFilename();
+
+            PresignedUploadResponse upload = new PresignedUploadResponse();
+            upload.setUploadUrl(presignUpload(uniqueFilename, file.getContentType()));
+            upload.setFilename(uniqueFilename);
+            upload.setExpiresIn(900); // 15 minutes in seconds
+            uploads.add(upload);
+        }
+        recordPresignedUploads(uploads.stream().map(PresignedUploadResponse::getFilename).toList(), username);
+        logger.info("Generated upload session with {} pre-signed URLs for user: {}", uploads.size(), username);
+
+        UploadSessionResponse response = new UploadSessionResponse();
+        response.setUploads(uploads);
+        response.setExpiresIn(900);
+        return response;
+    }
+
+    // Remembers which user each key was issued to; only these keys can be registered, by that user
+    private void recordPresignedUploads(List<String> keys, String username) {
+        presignedUploadRepository.deleteCreatedBefore(LocalDateTime.now().minusHours(presignedKeyExpiryHours));
+        presignedUploadRepository.saveAll(keys.stream().map(key -> new PresignedUpload(key, username)).toList());
+    }
+
+    /**
+     * Rejects keys that were not presigned for this user. Content-addressed keys are predictable from
+     * a file's digest, so they are never accepted from a client.
+     */
+    private void requirePresignedUploads(Collection<String> keys, String username) {
+        Set<String> issued = new HashSet<>(presignedUploadRepository.findObjectKeys(keys, username));
+        for (String key : keys) {
+            if (!issued.contains(key)) {
+                throw new IllegalArgumentException("Upload not found or access denied: " + key);
+            }
+        }
+    }
+
+    private static void rejectContentKeys(Collection<String> keys) {
+        for (String key : keys) {
+            if (key == null || key.startsWith(ContentStore.KEY_PREFIX)) {
+                throw new IllegalArgumentException("Not an upload key: " + key);
+            }
+        }
+    }
+
+    private String presignUpload(String uniqueFilename, String contentType) {
         logger.info("Generating pre-signed upload URL for file: {} with content-type: {} in bucket: {} region: {}", 
                    uniqueFilename, contentType, bucket, region);
         
@@ -180,29 +397,224 @@ public class ImageService {
                 .putObjectRequest(putObjectRequest)
                 .build();
 
-        String presignedUrl = s3Presigner.presignPutObject(presignRequest).url().toString();
+        String presignedUrl = RequestTimings.time(RequestTimings.PRESIGN,
+                () -> s3Presigner.presignPutObject(presignRequest).url().toString());
         logger.debug("Generated pre-signed URL: {}", presignedUrl);
         
         return presignedUrl;
     }
 
 
+    /**
+     * Saves the metadata of many uploaded files in one transaction; with the pooled id sequence
+     * Hibernate sends the inserts as JDBC batches. The headers are probed in parallel beforehand,
+     * outside the transaction, so no connection is held while S3 is read.
+     */
+    public List<Image> saveImagesMetadata(List<ImageMetadata> metadata, String username) {
+        if (metadata == null || metadata.isEmpty()) {
+            throw new IllegalArgumentException("No images given");
+        }
+        if (metadata.size() > maxBatchSize) {
+            throw new IllegalArgumentException("At most " + maxBatchSize + " images can be saved at once");
+        }
+
+        List<String> filenames = metadata.stream().map(ImageMetadata::getFilename).toList();
+        rejectContentKeys(filenames);
+        Long userId = userRepository.findFirstByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found"))
+                .getId();
+
+        // Keys registered before (by a retried request, or twice in this one) return the image saved
+        // for them the first time rather than a second row pointing at the same uploaded object
+        Map<String, Image> registered = new HashMap<>();
+        for (Image existing : imageRepository.findByUserIdAndFilenameIn(userId, filenames)) {
+            registered.putIfAbsent(existing.getFilename(), existing);
+        }
+        Set<String> newFilenames = new HashSet<>();
+        List<ImageMetadata> newItems = metadata.stream()
+                .filter(item -> !registered.containsKey(item.getFilename()) && newFilenames.add(item.getFilename()))
+                .toList();
+        if (!newFilenames.isEmpty()) {
+            requirePresignedUploads(newFilenames, username);
+        }
+
+        List<ImageHeaderProbe.ImageHeader> headers = imageHeaderProbe.probeAll(
+                newItems.stream().map(ImageMetadata::getFilename).toList());
+
+        List<Image> images = new ArrayList<>(newItems.size());
+        for (int i = 0; i < newItems.size(); i++) {
+            ImageMetadata item = newItems.get(i);
+            Image image = new Image();
+            image.setFilename(item.getFilename());
+            image.setOriginalName(item.getOriginalName());
+            image.setS3Url(generateS3Url(item.getFilename()));
+            image.setUserId(userId);
+            applyHeader(image, headers.get(i), item.getContentType());
+            images.add(image);
+        }
+
+        List<Image> saved = imageRepository.saveAll(images);
+        if (!newFilenames.isEmpty()) {
+            presignedUploadRepository.deleteByObjectKeys(newFilenames);
+        }
+        logger.info("Saved metadata for {} images for user: {} ({} already registered)",
+                saved.size(), username, metadata.size() - saved.size());
+        adoptInBackground(saved);
+        saved.forEach(image -> registered.put(image.getFilename(), image));
+        return metadata.stream().map(item -> registered.get(item.getFilename())).toList();
+    }
+
+    /**
+     * Registers an uploaded object. The content type and size the client reports are only used for
+     * logging: the stored values, dimensions and format come from a ranged read of the object's header.
+     * Only for formats the header cannot be read from is the reported content type kept.
+     * The key must have been presigned for this user.
+     */
     public Image saveImageMetadata(String filename, String originalName, String contentType, Long fileSize, String username) {
+        return registerUpload(filename, originalName, contentType, fileSize, username, true);
+    }
+
+    /**
+     * Registers the object assembled by a completed multipart upload, whose session already ties the
+     * key to the user.
+     */
+    Image saveMultipartUploadMetadata(String filename, String originalName, String contentType, Long fileSize,
+                                      String username) {
+        return registerUpload(filename, originalName, contentType, fileSize, username, false);
+    }
+
+    private Image registerUpload(String filename, String originalName, String contentType, Long fileSize,
+                                 String username, boolean presigned) {
+        rejectContentKeys(List.of(filename));
         Long userId = userRepository.findFirstByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"))
                 .getId();
 
+        // Registering the same key again (a retried request) returns the image saved the first time
+        Optional<Image> registered = imageRepository.findByUserIdAndFilenameIn(userId, List.of(filename)).stream()
+                .findFirst();
+        if (registered.isPresent()) {
+            logger.info("Upload {} is already registered as image {}", filename, registered.get().getId());
+            return registered.get();
+        }
+        if (presigned) {
+            requirePresignedUploads(List.of(filename), username);
+        }
+
         String s3Url = generateS3Url(filename);
         
         Image image = new Image();
         image.setFilename(filename);
         image.setOriginalName(originalName);
         image.setS3Url(s3Url);
-        image.setContentType(contentType);
-        image.setFileSize(fileSize);
         image.setUserId(userId);
+        ImageHeaderProbe.ImageHeader header = imageHeaderProbe.probe(filename);
+        applyHeader(image, header, contentType);
+        if (fileSize != null && fileSize != header.getFileSize()) {
+            logger.warn("Upload {} was announced as {} bytes but is {} bytes", filename, fileSize, header.getFileSize());
+        }
+        if (contentType != null && header.getContentType() != null && !contentType.equalsIgnoreCase(header.getContentType())) {
+            logger.info("Upload {} was announced as {} but is {}", filename, contentType, header.getContentType());
+        }
         
-        return imageRepository.save(image);
+        Image saved = imageRepository.save(image);
+        if (presigned) {
+            presignedUploadRepository.deleteByObjectKeys(List.of(filename));
+        }
+        adoptInBackground(List.of(saved));
+        return saved;
+    }
+
+    private void adoptInBackground(List<Image> images) {
+        for (Image image : images) {
+            contentExecutor.execute(() -> {
+                try {
+                    adopt(image);
+                } catch (Exception e) {
+                    logger.warn("Could not hash uploaded image {}: {}", image.getId(), e.toString());
+                }
+            });
+        }
+    }
+
+    /**
+     * Moves a presigned upload to content-addressed storage. One pass over the object computes both
+     * its SHA-256 and its perceptual hash. New content is copied server-side to its digest key, content
+     * that is already stored is only referenced, and the uploaded object is deleted in both cases once
+     * no other image still points at it; that image's own move deletes it instead.
+     */
+    private void adopt(Image image) throws IOException {
+        String uploadKey = image.getFilename();
+        MessageDigest digest = ContentStore.newDigest();
+        Long perceptualHash;
+        long size;
+        GetObjectRequest request = GetObjectRequest.builder().bucket(bucket).key(uploadKey).build();
+        try (ResponseInputStream<GetObjectResponse> object = s3Client.getObject(request);
+             DigestInputStream input = new DigestInputStream(object, digest)) {
+            try (ImageInputStream imageInput = ImageIO.createImageInputStream(input)) {
+                perceptualHash = PerceptualHash.hash(imageInput);
+            }
+            // The decoder stops at the end of the image data; trailing bytes still count for the digest
+            input.transferTo(OutputStream.nullOutputStream());
+            size = object.response().contentLength();
+        }
+        if (perceptualHash != null) {
+            similarImageService.record(image, perceptualHash);
+        }
+
+        String sha256 = ContentStore.toHex(digest.digest());
+        String contentKey = size > MAX_COPY_SIZE ? uploadKey : ContentStore.contentKey(sha256);
+        ContentStore.Acquired stored = contentStore.acquire(sha256, contentKey, size);
+        try {
+            if (stored.isCreated() && !contentKey.equals(uploadKey)) {
+                s3Client.copyObject(CopyObjectRequest.builder()
+                        .sourceBucket(bucket)
+                        .sourceKey(uploadKey)
+                        .destinationBucket(bucket)
+                        .destinationKey(contentKey)
+                        .checksumAlgorithm(ChecksumAlgorithm.SHA256)
+                        .build());
+            }
+            String key = stored.getObjectKey();
+            if (imageRepository.updateContent(image.getId(), key, generateS3Url(key), sha256) == 0) {
+                // Deleted (together with its uploaded object) while it was being hashed
+                contentStore.release(List.of(sha256));
+                return;
+            }
+        } catch (RuntimeException e) {
+            contentStore.release(List.of(sha256));
+            throw e;
+        }
+
+        if (!stored.getObjectKey().equals(uploadKey) && !imageRepository.existsByFilename(uploadKey)) {
+            s3Client.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(uploadKey).build());
+        }
+        logger.info("Stored image {} as {} ({})", image.getId(), stored.getObjectKey(),
+                stored.isCreated() ? "new content" : "duplicate content");
+    }
+
+    private ImageHeaderProbe.ImageHeader readHeader(String name, java.nio.file.Path file, long size) throws IOException {
+        byte[] start;
+        try (java.io.InputStream input = Files.newInputStream(file)) {
+            start = input.readNBytes(ImageHeaderProbe.MAX_LOCAL_HEADER_BYTES);
+        }
+        ImageHeaderProbe.ImageHeader header = imageHeaderProbe.parse(start, size);
+        if (header == null) {
+            logger.info("Format of upload {} is not recognized, storing it without dimensions", name);
+            return ImageHeaderProbe.ImageHeader.unrecognized(size);
+        }
+        return header;
+    }
+
+    // Formats the probe does not recognize keep the content type the client announced
+    private static void applyHeader(Image image, ImageHeaderProbe.ImageHeader header, String announcedContentType) {
+        image.setContentType(header.getContentType() != null ? header.getContentType() : announcedContentType);
+        image.setFileSize(header.getFileSize());
+        image.setWidth(header.getWidth());
+        image.setHeight(header.getHeight());
+        image.setFormat(header.getFormat());
+        image.setOrientation(header.getOrientation());
+        image.setColorModel(header.getColorModel());
     }
     
     // Getter methods for configuration
@@ -233,25 +645,182 @@ public class ImageService {
         Image image = imageRepository.findByIdAndUserId(imageId, userId)
                 .orElseThrow(() -> new RuntimeException("Image not found or access denied"));
         
-        try {
-            // Delete from S3
-            software.amazon.awssdk.services.s3.model.DeleteObjectRequest deleteRequest = 
-                software.amazon.awssdk.services.s3.model.DeleteObjectRequest.builder()
-                    .bucket(bucket)
-                    .key(image.getFilename())
-                    .build();
-            
-            s3Client.deleteObject(deleteRequest);
-            logger.info("Deleted image from S3: {}", image.getFilename());
-            
-            // Delete from database
-            imageRepository.delete(image);
-            logger.info("Deleted image from database: {} (ID: {})", image.getOriginalName(), imageId);
-            
-        } catch (Exception e) {
-            logger.error("Failed to delete image: {} (ID: {})", image.getFilename(), imageId, e);
-            throw new RuntimeException("Failed to delete image: " + e.getMessage());
+        // Deleting an original also deletes every transformation derived from it
+        if (deleteWithDerivatives(List.of(image), userId).isEmpty()) {
+            logger.error("Failed to delete image: {} (ID: {})", image.getFilename(), imageId);
+            throw new RuntimeException("Failed to delete image: S3 objects could not be removed");
+        }
+        logger.info("Deleted image: {} (ID: {})", image.getOriginalName(), imageId);
+    }
+
+    /**
+     * Deletes many images of one user together with their derivatives.
+     */
+    public DeleteResult deleteImages(Collection<Long> imageIds, String username) {
+        Long userId = userRepository.findFirstByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found"))
+                .getId();
+
+        List<Image> images = imageRepository.findByIdInAndUserId(imageIds, userId);
+        Set<Long> deletedIds = deleteWithDerivatives(images, userId);
+
+        DeleteResult result = new DeleteResult();
+        result.setDeleted(deletedIds.size());
+        result.setFailed(images.size() - deletedIds.size());
+        result.setNotFound(new HashSet<>(imageIds).size() - images.size());
+        return result;
+    }
+
+    /**
+     * Removes the S3 objects of the images and all their derivatives with batched DeleteObjects calls,
+     * then deletes the rows in bulk and releases the images' shared content. Images with any object S3 could not delete keep their rows (and
+     * their derivatives' rows) so the delete can be retried.
+     *
+     * @return the ids of the images that were deleted
+     */
+    private Set<Long> deleteWithDerivatives(List<Image> images, Long userId) {
+        if (images.isEmpty()) {
+            return Set.of();
+        }
+
+        List<Long> imageIds = images.stream().map(Image::getId).toList();
+        Set<String> sharedKeys = sharedObjectKeys(images, imageIds);
+        Map<Long, List<String>> keysByImage = new HashMap<>();
+        for (Image image : images) {
+            List<String> keys = keysByImage.computeIfAbsent(image.getId(), id -> new ArrayList<>());
+            // Shared content is released after the rows are gone; only images with their own object delete it here
+            if (image.getSha256() == null && !sharedKeys.contains(image.getFilename())) {
+                keys.add(image.getFilename());
+            }
+        }
+        for (TransformedImage derivative : transformedImageRepository.findByOriginalImageIdInAndUserId(imageIds, userId)) {
+            keysByImage.computeIfAbsent(derivative.getOriginalImageId(), id -> new ArrayList<>())
+                    .add(derivative.getTransformedFilename());
+        }
+
+        Set<String> failedKeys = s3BatchDeleter.deleteObjects(keysByImage.values().stream()
+                .flatMap(List::stream)
+                .toList());
+
+        Set<Long> deletedIds = new HashSet<>();
+        for (Map.Entry<Long, List<String>> entry : keysByImage.entrySet()) {
+            if (entry.getValue().stream().noneMatch(failedKeys::contains)) {
+                deletedIds.add(entry.getKey());
+            }
         }
+
+        if (!deletedIds.isEmpty()) {
+            transformedImageRepository.deleteByOriginalImageIdInAndUserId(deletedIds, userId);
+            contentStore.release(deleteImageRows(deletedIds));
+        }
+        logger.info("Deleted {} of {} image(s) with their derivatives", deletedIds.size(), images.size());
+        return deletedIds;
+    }
+
+    /**
+     * Deletes the image rows and returns the digests of the content they pointed at. The digests come
+     * from the rows as they are deleted, not from the copies loaded before: an image adopted in between
+     * holds a reference that must be released, and one whose adoption waits on the lock finds no row to
+     * update and releases its own.
+     */
+    private List<String> deleteImageRows(Collection<Long> imageIds) {
+        return transactionTemplate.execute(status -> {
+            List<String> digests = imageRepository.findAllByIdInForUpdate(imageIds).stream()
+                    .map(Image::getSha256)
+                    .filter(Objects::nonNull)
+                    .toList();
+            imageRepository.deleteAllByIdInBatch(imageIds);
+            return digests;
+        });
+    }
+
+    /**
+     * The keys of not yet hashed images that must not be deleted with them: content-addressed objects,
+     * which are only deleted once {@link ContentStore#release released}, and objects other images
+     * still point at.
+     */
+    private Set<String> sharedObjectKeys(List<Image> images, List<Long> imageIds) {
+        List<String> ownKeys = images.stream()
+                .filter(image -> image.getSha256() == null)
+                .map(Image::getFilename)
+                .distinct()
+                .toList();
+        if (ownKeys.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> shared = new HashSet<>(storedObjectRepository.findObjectKeys(ownKeys));
+        shared.addAll(imageRepository.findFilenamesReferencedOutside(ownKeys, imageIds));
+        if (!shared.isEmpty()) {
+            logger.warn("Keeping {} shared object(s) while deleting their images: {}", shared.size(), shared);
+        }
+        return shared;
+    }
+
+    // DTO class for the outcome of a multi-image delete
+    public static class DeleteResult {
+        private int deleted;
+        private int failed;
+        private int notFound;
+
+        public int getDeleted() { return deleted; }
+        public void setDeleted(int deleted) { this.deleted = deleted; }
+        public int getFailed() { return failed; }
+        public void setFailed(int failed) { this.failed = failed; }
+        public int getNotFound() { return notFound; }
+        public void setNotFound(int notFound) { this.notFound = notFound; }
+    }
+
+    // DTO classes for bulk uploads
+    public static class UploadFile {
+        private String filename;
+        private String contentType;
+
+        public UploadFile() {}
+
+        public UploadFile(String filename, String contentType) {
+            this.filename = filename;
+            this.contentType = contentType;
+        }
+
+        public String getFilename() { return filename; }
+        public void setFilename(String filename) { this.filename = filename; }
+        public String getContentType() { return contentType; }
+        public void setContentType(String contentType) { this.contentType = contentType; }
+    }
+
+    public static class ImageMetadata {
+        private String filename;
+        private String originalName;
+        private String contentType;
+        private Long fileSize;
+
+        public ImageMetadata() {}
+
+        public ImageMetadata(String filename, String originalName, String contentType, Long fileSize) {
+            this.filename = filename;
+            this.originalName = originalName;
+            this.contentType = contentType;
+            this.fileSize = fileSize;
+        }
+
+        public String getFilename() { return filename; }
+        public void setFilename(String filename) { this.filename = filename; }
+        public String getOriginalName() { return originalName; }
+        public void setOriginalName(String originalName) { this.originalName = originalName; }
+        public String getContentType() { return contentType; }
+        public void setContentType(String contentType) { this.contentType = contentType; }
+        public Long getFileSize() { return fileSize; }
+        public void setFileSize(Long fileSize) { this.fileSize = fileSize; }
+    }
+
+    public static class UploadSessionResponse {
+        private List<PresignedUploadResponse> uploads;
+        private int expiresIn;
+
+        public List<PresignedUploadResponse> getUploads() { return uploads; }
+        public void setUploads(List<PresignedUploadResponse> uploads) { this.uploads = uploads; }
+        public int getExpiresIn() { return expiresIn; }
+        public void setExpiresIn(int expiresIn) { this.expiresIn = expiresIn; }
     }
 
     // DTO class for presigned upload response
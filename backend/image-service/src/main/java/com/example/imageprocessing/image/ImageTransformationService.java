@@ -1,26 +1,45 @@
 package com.example.imageprocessing.image;
 
 import net.coobird.thumbnailator.Thumbnails;
+import net.coobird.thumbnailator.util.exif.ExifFilterUtils;
+import net.coobird.thumbnailator.util.exif.ExifUtils;
+import net.coobird.thumbnailator.util.exif.Orientation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 
 import java.awt.*;
-import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
-import java.awt.image.ColorConvertOp;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import com.example.imageprocessing.throttle.ThrottledException;
+import com.example.imageprocessing.throttle.TransformThrottle;
+import com.example.imageprocessing.timing.RequestTimings;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 @Service
@@ -32,6 +51,17 @@ public class ImageTransformationService {
     private final TransformedImageRepository transformedImageRepository;
     private final com.example.imageprocessing.user.UserRepository userRepository;
     private final ObjectMapper objectMapper;
+    private final TiledImageProcessor tiledImageProcessor;
+    private final LosslessJpegTransformer losslessJpegTransformer;
+    private final TransformationPlanner transformationPlanner;
+    private final TransformMetrics transformMetrics;
+    private final TransformThrottle transformThrottle;
+    private final AnimatedGifProcessor animatedGifProcessor;
+    private final ConvolutionFilter convolutionFilter;
+    private final WatermarkRenderer watermarkRenderer;
+    private final ColorProfileConverter colorProfileConverter;
+    // Transformations currently being computed, keyed by image id and normalized options
+    private final Map<String, CompletableFuture<TransformedImage>> inFlight = new ConcurrentHashMap<>();
 
     @Value("${aws.s3.bucket:project-image-processing-service-bucket}")
     private String bucket;
@@ -39,38 +69,138 @@ public class ImageTransformationService {
     @Value("${aws.region:ap-south-1}")
     private String region;
 
-    public ImageTransformationService(S3Client s3Client, ImageRepository imageRepository, 
+    public ImageTransformationService(@Lazy S3Client s3Client, ImageRepository imageRepository, 
                                      TransformedImageRepository transformedImageRepository,
                                      com.example.imageprocessing.user.UserRepository userRepository,
-                                     ObjectMapper objectMapper) {
+                                     ObjectMapper objectMapper,
+                                     TiledImageProcessor tiledImageProcessor,
+                                     LosslessJpegTransformer losslessJpegTransformer,
+                                     TransformationPlanner transformationPlanner,
+                                     TransformMetrics transformMetrics,
+                                     TransformThrottle transformThrottle,
+                                     AnimatedGifProcessor animatedGifProcessor,
+                                     ConvolutionFilter convolutionFilter,
+                                     WatermarkRenderer watermarkRenderer,
+                                     ColorProfileConverter colorProfileConverter) {
         this.s3Client = s3Client;
         this.imageRepository = imageRepository;
         this.transformedImageRepository = transformedImageRepository;
         this.userRepository = userRepository;
         this.objectMapper = objectMapper;
+        this.tiledImageProcessor = tiledImageProcessor;
+        this.losslessJpegTransformer = losslessJpegTransformer;
+        this.transformationPlanner = transformationPlanner;
+        this.transformMetrics = transformMetrics;
+        this.transformThrottle = transformThrottle;
+        this.animatedGifProcessor = animatedGifProcessor;
+        this.convolutionFilter = convolutionFilter;
+        this.watermarkRenderer = watermarkRenderer;
+        this.colorProfileConverter = colorProfileConverter;
     }
 
+    /**
+     * Transforms the image once it has been admitted by the {@link TransformThrottle}. Concurrent
+     * requests for the same image and options are coalesced: the first one computes the result and
+     * the others wait for it and return the same {@link TransformedImage} without being throttled.
+     * A failure is passed to every waiter, and since the entry is removed when the computation ends
+     * the next request starts afresh. The exception is the first request being throttled: that is
+     * about its user's quota, not the transformation, so the waiters then make their own attempt.
+     */
     public TransformedImage transformImage(Image originalImage, TransformationOptions options, String username) throws IOException {
+        // Planned once here; the plan is the coalescing key and is handed to the transformation
+        TransformationPlan plan = transformationPlanner.plan(originalImage, options, storedSize(originalImage));
+        String key = originalImage.getId() + ":" + transformationOptionsToJson(plan.toOptions());
+        while (true) {
+            CompletableFuture<TransformedImage> flight = new CompletableFuture<>();
+            CompletableFuture<TransformedImage> existing = inFlight.putIfAbsent(key, flight);
+            if (existing == null) {
+                return transformAsLeader(originalImage, options, plan, username, key, flight);
+            }
+
+            logger.info("Coalescing transformation of image {} with an identical one in progress", originalImage.getId());
+            try {
+                TransformedImage result = awaitTransformation(existing);
+                transformMetrics.recordCoalesced();
+                RequestTimings.detail("coalesced", true);
+                return result;
+            } catch (ThrottledException e) {
+                logger.debug("Identical transformation of image {} was throttled, trying on its own", originalImage.getId());
+            }
+        }
+    }
+
+    private TransformedImage transformAsLeader(Image originalImage, TransformationOptions options, TransformationPlan plan,
+                                               String username, String key, CompletableFuture<TransformedImage> flight)
+            throws IOException {
+        try {
+            TransformedImage result = transformThrottle.run(username,
+                    () -> transformImageNow(originalImage, options, plan, username));
+            flight.complete(result);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private TransformedImage awaitTransformation(CompletableFuture<TransformedImage> flight) throws IOException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an identical transformation", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw new IOException(cause.getMessage(), cause);
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    private TransformedImage transformImageNow(Image originalImage, TransformationOptions options, TransformationPlan plan,
+                                               String username) throws IOException {
         logger.info("Starting transformation for image: {} with options: {}", originalImage.getFilename(), options);
 
-        // Download original image from S3
-        InputStream originalImageStream = downloadImageFromS3(originalImage.getFilename());
+        Long userId = userId(username);
+        requireWatermarkAccess(options, userId);
 
-        // Apply transformations
-        ByteArrayOutputStream transformedImageStream = new ByteArrayOutputStream();
-        applyTransformations(originalImageStream, transformedImageStream, options);
+        // A plan that reproduces the source never touches pixels. With the size probed at upload,
+        // identity crops and resizes are recognized without a download.
+        RequestTimings.detail("image_id", originalImage.getId());
+        if (plan.getSourceSize() != null) {
+            RequestTimings.detail("source_size", plan.getSourceSize().width + "x" + plan.getSourceSize().height);
+        }
+        RequestTimings.detail("options", transformationOptionsToJson(options));
 
         // Generate new filename for transformed image
         String transformedFilename = generateTransformedFilename(originalImage.getOriginalName(), options);
 
-        // Upload transformed image to S3
-        String outputContentType = getOutputContentType(options.getFormat(), originalImage.getContentType());
-        String transformedS3Url = uploadTransformedImageToS3(transformedFilename, transformedImageStream.toByteArray(), outputContentType);
-
-        // Get user ID
-        Long userId = userRepository.findFirstByUsername(username)
-                .orElseThrow(() -> new RuntimeException("User not found"))
-                .getId();
+        String outputContentType;
+        long fileSize;
+        if (plan.isIdentity()) {
+            outputContentType = originalImage.getContentType();
+            fileSize = transformMetrics.time(TransformMetrics.STAGE_S3_COPY, plan,
+                    () -> copyImageInS3(originalImage, transformedFilename));
+            transformMetrics.recordBytesIn(plan, fileSize);
+        } else {
+            RenderedImage rendered = renderTransformedImage(originalImage, options, plan);
+            plan = rendered.plan;
+            outputContentType = plan.getOutputContentType();
+            fileSize = rendered.data.length;
+            transformMetrics.time(TransformMetrics.STAGE_S3_UPLOAD, plan, () -> {
+                uploadTransformedImageToS3(transformedFilename, rendered.data, rendered.plan.getOutputContentType());
+                return null;
+            });
+        }
+        transformMetrics.recordBytesOut(plan, fileSize);
+        RequestTimings.detail("output_format", plan.getOutputFormat());
+        RequestTimings.detail("output_bytes", fileSize);
+        String transformedS3Url = generateS3Url(transformedFilename);
 
         // Convert transformation options to JSON string
         String transformationsJson = transformationOptionsToJson(options);
@@ -82,155 +212,335 @@ public class ImageTransformationService {
             transformedFilename,
             transformedS3Url,
             outputContentType,
-            (long) transformedImageStream.size(),
+            fileSize,
             transformationsJson
         );
 
-        TransformedImage savedImage = transformedImageRepository.save(transformedImage);
+        TransformedImage savedImage = transformMetrics.time(TransformMetrics.STAGE_DB_SAVE, plan,
+                () -> transformedImageRepository.save(transformedImage));
 
         logger.info("Transformation completed for image: {} -> {}", originalImage.getFilename(), transformedFilename);
         
         return savedImage;
     }
 
-    private InputStream downloadImageFromS3(String filename) throws IOException {
+    /**
+     * Validates and normalizes the options as a transformation would, including the watermark access
+     * check, so equivalent requests are issued the same render URL.
+     */
+    public TransformationOptions normalizeOptions(Image originalImage, TransformationOptions options, String username) {
+        requireWatermarkAccess(options, userId(username));
+        return transformationPlanner.plan(originalImage, options, storedSize(originalImage)).toOptions();
+    }
+
+    /**
+     * Renders the transformation for a signed render URL without storing it: the response is cached
+     * in front of the service instead, so nothing is uploaded to S3 or saved. Renders are throttled
+     * as the image's owner, whose transformations they stand in for.
+     */
+    public RenderResult render(Image originalImage, TransformationOptions options) throws IOException {
+        String owner = userRepository.findById(originalImage.getUserId())
+                .orElseThrow(() -> new RuntimeException("User not found"))
+                .getUsername();
+        return transformThrottle.run(owner, () -> {
+            TransformationPlan plan = transformationPlanner.plan(originalImage, options, storedSize(originalImage));
+            RequestTimings.detail("image_id", originalImage.getId());
+            RequestTimings.detail("options", transformationOptionsToJson(options));
+            RenderedImage rendered = renderTransformedImage(originalImage, options, plan);
+            String contentType = rendered.plan.isIdentity()
+                    ? originalImage.getContentType()
+                    : rendered.plan.getOutputContentType();
+            transformMetrics.recordBytesOut(rendered.plan, rendered.data.length);
+            RequestTimings.detail("output_bytes", rendered.data.length);
+            return new RenderResult(rendered.data, contentType);
+        });
+    }
+
+    private Long userId(String username) {
+        return userRepository.findFirstByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found"))
+                .getId();
+    }
+
+    private void requireWatermarkAccess(TransformationOptions options, Long userId) {
+        // A logo watermark may only use one of the user's own images
+        if (options.getWatermark() != null && options.getWatermark().getImageId() != null
+                && imageRepository.findByIdAndUserId(options.getWatermark().getImageId(), userId).isEmpty()) {
+            throw new RuntimeException("Watermark image not found or access denied");
+        }
+    }
+
+    private RenderedImage renderTransformedImage(Image originalImage, TransformationOptions options,
+                                                 TransformationPlan plan) throws IOException {
+        // Download original image from S3 into a temp file so large sources never sit on the heap
+        long downloadStart = System.nanoTime();
+        Path originalImageFile = downloadImageFromS3(originalImage.getFilename(), originalImage.getSha256());
+        long downloadNanos = System.nanoTime() - downloadStart;
+        try {
+            // Images saved before header probing: now that the size is known, identity crops and
+            // resizes can be dropped as well
+            Dimension sourceSize = plan.getSourceSize() == null ? readImageSize(originalImageFile) : null;
+            if (sourceSize != null) {
+                plan = transformationPlanner.plan(originalImage, options, sourceSize);
+                RequestTimings.detail("source_size", sourceSize.width + "x" + sourceSize.height);
+            }
+            // Recorded after re-planning so the download is tagged with the real source size
+            transformMetrics.record(TransformMetrics.STAGE_S3_DOWNLOAD, plan, downloadNanos);
+            transformMetrics.recordBytesIn(plan, Files.size(originalImageFile));
+            if (plan.isIdentity()) {
+                return new RenderedImage(Files.readAllBytes(originalImageFile), plan);
+            }
+
+            TransformationPlan finalPlan = plan;
+            ByteArrayOutputStream transformedImageStream = new ByteArrayOutputStream();
+            if (losslessJpegTransformer.supports(originalImageFile, plan.toOptions())
+                    && transformMetrics.time(TransformMetrics.STAGE_LOSSLESS_JPEG, plan, () -> losslessJpegTransformer
+                            .transform(originalImageFile, transformedImageStream, finalPlan.toOptions()))) {
+                logger.info("Applied lossless JPEG transformation to image: {}", originalImage.getFilename());
+            } else if ("gif".equals(plan.getOutputFormat()) && animatedGifProcessor.isAnimated(originalImageFile)) {
+                transformMetrics.time(TransformMetrics.STAGE_ANIMATED, plan, () -> {
+                    applyAnimatedTransformations(originalImageFile, transformedImageStream, finalPlan);
+                    return null;
+                });
+            } else if (tiledImageProcessor.shouldUseTiledMode(originalImageFile)) {
+                transformMetrics.time(TransformMetrics.STAGE_TILED, plan, () -> {
+                    applyTiledTransformations(originalImageFile, transformedImageStream, finalPlan);
+                    return null;
+                });
+            } else {
+                try (InputStream originalImageStream = Files.newInputStream(originalImageFile)) {
+                    applyTransformations(originalImageStream, transformedImageStream, plan);
+                }
+            }
+            return new RenderedImage(transformedImageStream.toByteArray(), plan);
+        } finally {
+            Files.deleteIfExists(originalImageFile);
+        }
+    }
+
+    private long copyImageInS3(Image originalImage, String transformedFilename) throws IOException {
+        try {
+            s3Client.copyObject(CopyObjectRequest.builder()
+                    .sourceBucket(bucket)
+                    .sourceKey(originalImage.getFilename())
+                    .destinationBucket(bucket)
+                    .destinationKey(transformedFilename)
+                    .build());
+            logger.info("Copied untransformed image server-side: {} -> {}", originalImage.getFilename(), transformedFilename);
+
+            if (originalImage.getFileSize() != null) {
+                return originalImage.getFileSize();
+            }
+            return s3Client.headObject(HeadObjectRequest.builder().bucket(bucket).key(transformedFilename).build())
+                    .contentLength();
+        } catch (Exception e) {
+            throw new IOException("Failed to copy image in S3: " + originalImage.getFilename(), e);
+        }
+    }
+
+    /**
+     * Downloads an original to a temp file. Content-addressed originals are checked against their
+     * SHA-256 while they are streamed, so a corrupted object fails the transformation instead of
+     * producing a damaged result.
+     */
+    private Path downloadImageFromS3(String filename, String expectedSha256) throws IOException {
+        Path temp = Files.createTempFile("transform", null);
         try {
             GetObjectRequest getRequest = GetObjectRequest.builder()
                     .bucket(bucket)
                     .key(filename)
                     .build();
 
-            ResponseInputStream<GetObjectResponse> s3Object = s3Client.getObject(getRequest);
-            
-            // Read the entire stream into memory
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            byte[] data = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = s3Object.read(data, 0, data.length)) != -1) {
-                buffer.write(data, 0, bytesRead);
+            // Stream straight to disk; the tiled path reads source regions back from this file
+            MessageDigest digest = ContentStore.newDigest();
+            try (ResponseInputStream<GetObjectResponse> s3Object = s3Client.getObject(getRequest);
+                 InputStream input = expectedSha256 == null ? s3Object : new DigestInputStream(s3Object, digest)) {
+                Files.copy(input, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (expectedSha256 != null && !expectedSha256.equals(ContentStore.toHex(digest.digest()))) {
+                throw new IOException("Content does not match its SHA-256 " + expectedSha256);
             }
-            s3Object.close();
-            
-            return new ByteArrayInputStream(buffer.toByteArray());
+
+            return temp;
         } catch (Exception e) {
+            Files.deleteIfExists(temp);
             throw new IOException("Failed to download image from S3: " + filename, e);
         }
     }
 
-    private void applyTransformations(InputStream inputStream, ByteArrayOutputStream outputStream, 
-                                    TransformationOptions options) throws IOException {
-        try {
-            // First, apply basic transformations using Thumbnailator
-            ByteArrayOutputStream tempStream = new ByteArrayOutputStream();
-            var thumbnailBuilder = Thumbnails.of(inputStream);
-            
-            // If no resize is specified, keep original size
-            boolean hasResize = false;
-
-            // Apply resize transformation
-            if (options.getResize() != null) {
-                ResizeOptions resize = options.getResize();
-                if (resize.getWidth() != null && resize.getHeight() != null) {
-                    thumbnailBuilder = thumbnailBuilder.size(resize.getWidth(), resize.getHeight());
-                    hasResize = true;
-                } else if (resize.getWidth() != null) {
-                    thumbnailBuilder = thumbnailBuilder.width(resize.getWidth());
-                    hasResize = true;
-                } else if (resize.getHeight() != null) {
-                    thumbnailBuilder = thumbnailBuilder.height(resize.getHeight());
-                    hasResize = true;
-                }
-            }
+    private static Dimension storedSize(Image image) {
+        return image.getWidth() != null && image.getHeight() != null
+                ? new Dimension(image.getWidth(), image.getHeight())
+                : null;
+    }
 
-            // Apply crop transformation
-            if (options.getCrop() != null) {
-                CropOptions crop = options.getCrop();
-                thumbnailBuilder = thumbnailBuilder.sourceRegion(
-                    crop.getX(), crop.getY(), crop.getWidth(), crop.getHeight()
-                );
+    private Dimension readImageSize(Path source) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = input == null ? Collections.emptyIterator() : ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
             }
 
-            // Apply rotation
-            if (options.getRotate() != null && options.getRotate() != 0) {
-                thumbnailBuilder = thumbnailBuilder.rotate(options.getRotate());
-            }
-            
-            // If no size transformation was applied, scale to keep original size
-            if (!hasResize && options.getCrop() == null) {
-                thumbnailBuilder = thumbnailBuilder.scale(1.0);
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
             }
+        }
+    }
 
-            // Set output format
-            String outputFormat = getOutputFormat(options.getFormat());
-            
-            // Apply basic transformations to temp stream
-            thumbnailBuilder.outputFormat(outputFormat).toOutputStream(tempStream);
-
-            // Apply filters if needed using Java 2D
-            if (options.getFilters() != null && (
-                Boolean.TRUE.equals(options.getFilters().getGrayscale()) || 
-                Boolean.TRUE.equals(options.getFilters().getSepia()))) {
-                
-                // Read the transformed image
-                BufferedImage image = ImageIO.read(new ByteArrayInputStream(tempStream.toByteArray()));
-                
-                // Apply filters
-                if (Boolean.TRUE.equals(options.getFilters().getGrayscale())) {
-                    image = applyGrayscaleFilter(image);
-                }
-                if (Boolean.TRUE.equals(options.getFilters().getSepia())) {
-                    image = applySepiaFilter(image);
-                }
-                
-                // Write the filtered image to output stream
-                ImageIO.write(image, outputFormat, outputStream);
-            } else {
-                // No filters, just copy the temp stream to output
-                outputStream.write(tempStream.toByteArray());
-            }
+    private void applyTiledTransformations(Path source, ByteArrayOutputStream outputStream,
+                                           TransformationPlan plan) throws IOException {
+        try {
+            // Filters and the watermark run on each output strip; blur and sharpen get the rows they reach beyond it
+            tiledImageProcessor.process(source, outputStream, plan.toOptions(), plan.getOutputFormat(),
+                    (band, y, height) -> watermarkRenderer.applyToBand(applyFilters(band, plan.getFilters()), y, height,
+                            plan.getWatermark()),
+                    ConvolutionFilter.reach(plan.getFilters()));
+        } catch (Exception e) {
+            logger.error("Failed to apply tiled transformations: {}", e.getMessage(), e);
+            throw new IOException("Failed to apply transformations: " + e.getMessage(), e);
+        }
+    }
 
+    private void applyAnimatedTransformations(Path source, ByteArrayOutputStream outputStream,
+                                              TransformationPlan plan) throws IOException {
+        try {
+            int frames = animatedGifProcessor.process(source, outputStream, frame -> applyPixelOperations(frame, plan));
+            RequestTimings.detail("frames", frames);
         } catch (Exception e) {
-            logger.error("Failed to apply transformations: {}", e.getMessage(), e);
+            logger.error("Failed to apply animated transformations: {}", e.getMessage(), e);
             throw new IOException("Failed to apply transformations: " + e.getMessage(), e);
         }
     }
 
-    private BufferedImage applyGrayscaleFilter(BufferedImage original) {
-        ColorConvertOp colorConvert = new ColorConvertOp(ColorSpace.getInstance(ColorSpace.CS_GRAY), null);
-        BufferedImage grayscaleImage = new BufferedImage(original.getWidth(), original.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
-        colorConvert.filter(original, grayscaleImage);
-        return grayscaleImage;
+    void applyTransformations(InputStream inputStream, ByteArrayOutputStream outputStream, 
+                            TransformationPlan plan) throws IOException {
+        try {
+            // Decode, transform and encode run as separate stages so each one is timed on its own
+            BufferedImage decoded = transformMetrics.time(TransformMetrics.STAGE_DECODE, plan, () -> decodeImage(inputStream));
+            BufferedImage image = transformMetrics.time(TransformMetrics.STAGE_TRANSFORM, plan,
+                    () -> applyPixelOperations(decoded, plan));
+            transformMetrics.time(TransformMetrics.STAGE_ENCODE, plan, () -> {
+                writeImage(image, plan.getOutputFormat(), outputStream);
+                return null;
+            });
+
+        } catch (Exception e) {
+            logger.error("Failed to apply transformations: {}", e.getMessage(), e);
+            throw new IOException("Failed to apply transformations: " + e.getMessage(), e);
+        }
     }
 
-    private BufferedImage applySepiaFilter(BufferedImage original) {
-        int width = original.getWidth();
-        int height = original.getHeight();
-        
-        BufferedImage sepiaImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int rgb = original.getRGB(x, y);
-                Color color = new Color(rgb);
-                
-                int red = color.getRed();
-                int green = color.getGreen();
-                int blue = color.getBlue();
-                
-                // Apply sepia formula
-                int sepiaRed = Math.min(255, (int) (0.393 * red + 0.769 * green + 0.189 * blue));
-                int sepiaGreen = Math.min(255, (int) (0.349 * red + 0.686 * green + 0.168 * blue));
-                int sepiaBlue = Math.min(255, (int) (0.272 * red + 0.534 * green + 0.131 * blue));
-                
-                Color sepiaColor = new Color(sepiaRed, sepiaGreen, sepiaBlue);
-                sepiaImage.setRGB(x, y, sepiaColor.getRGB());
+    /**
+     * Decodes the first image of the stream into sRGB, honouring its ICC profile and the EXIF
+     * orientation like Thumbnailator does.
+     */
+    BufferedImage decodeImage(InputStream inputStream) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(inputStream)) {
+            Iterator<ImageReader> readers = input == null ? Collections.emptyIterator() : ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, false);
+                BufferedImage image = colorProfileConverter.read(reader);
+                Orientation orientation = exifOrientation(reader);
+                if (orientation != Orientation.TOP_LEFT) {
+                    image = ExifFilterUtils.getFilterForOrientation(orientation).apply(image);
+                }
+                return image;
+            } finally {
+                reader.dispose();
             }
         }
-        
-        return sepiaImage;
     }
 
-    private String uploadTransformedImageToS3(String filename, byte[] imageData, String contentType) throws IOException {
+    /**
+     * The EXIF orientation of the first image. Only JPEGs carry one, and other readers' metadata
+     * cannot be read in the JPEG metadata format ExifUtils asks for.
+     */
+    static Orientation exifOrientation(ImageReader reader) throws IOException {
+        if (!"jpeg".equalsIgnoreCase(reader.getFormatName())) {
+            return Orientation.TOP_LEFT;
+        }
+        Orientation orientation = ExifUtils.getExifOrientation(reader, 0);
+        return orientation == null ? Orientation.TOP_LEFT : orientation;
+    }
+
+    BufferedImage applyPixelOperations(BufferedImage source, TransformationPlan plan) throws IOException {
+        // Run crop, resize and rotation in a single Thumbnailator pass over the decoded pixels
+        var thumbnailBuilder = Thumbnails.of(source);
+
+        // Crop is applied to the source region before any resampling
+        if (plan.getCrop() != null) {
+            CropOptions crop = plan.getCrop();
+            thumbnailBuilder = thumbnailBuilder.sourceRegion(
+                crop.getX(), crop.getY(), crop.getWidth(), crop.getHeight()
+            );
+        }
+
+        // Apply resize transformation, or keep the (cropped) size
+        ResizeOptions resize = plan.getResize();
+        if (resize == null) {
+            thumbnailBuilder = thumbnailBuilder.scale(1.0);
+        } else if (resize.getWidth() != null && resize.getHeight() != null) {
+            thumbnailBuilder = thumbnailBuilder.size(resize.getWidth(), resize.getHeight());
+        } else if (resize.getWidth() != null) {
+            thumbnailBuilder = thumbnailBuilder.width(resize.getWidth());
+        } else {
+            thumbnailBuilder = thumbnailBuilder.height(resize.getHeight());
+        }
+
+        // Apply rotation
+        if (plan.getRotation() != 0) {
+            thumbnailBuilder = thumbnailBuilder.rotate(plan.getRotation());
+        }
+
+        BufferedImage image = thumbnailBuilder.asBufferedImage();
+
+        // Apply filters on the transformed pixels, then the watermark over them; encoding happens exactly once afterwards
+        return watermarkRenderer.apply(applyFilters(image, plan.getFilters()), plan.getWatermark());
+    }
+
+    void writeImage(BufferedImage image, String outputFormat, ByteArrayOutputStream outputStream) throws IOException {
+        // JPEG has no alpha channel; flatten onto white the way Thumbnailator's JPEG output does
+        if ("jpg".equals(outputFormat) && image.getColorModel().hasAlpha()) {
+            BufferedImage opaque = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = opaque.createGraphics();
+            graphics.drawImage(image, 0, 0, Color.WHITE, null);
+            graphics.dispose();
+            image = opaque;
+        }
+
+        if (!ImageIO.write(image, outputFormat, outputStream)) {
+            throw new IOException("No image writer available for format: " + outputFormat);
+        }
+    }
+
+    private BufferedImage applyFilters(BufferedImage image, FilterOptions filters) {
+        if (filters == null) {
+            return image;
+        }
+        // Neighbourhood filters first, then all point filters composed into one color matrix and applied in a single pass
+        image = convolutionFilter.apply(image, filters);
+        ColorMatrix matrix = ColorMatrix.of(filters);
+        return matrix.isIdentity() ? image : matrix.apply(image);
+    }
+
+    BufferedImage applyGrayscaleFilter(BufferedImage original) {
+        return ColorMatrix.grayscale().apply(original);
+    }
+
+    BufferedImage applySepiaFilter(BufferedImage original) {
+        return ColorMatrix.sepia().apply(original);
+    }
+
+    private void uploadTransformedImageToS3(String filename, byte[] imageData, String contentType) throws IOException {
         try {
             PutObjectRequest putRequest = PutObjectRequest.builder()
                     .bucket(bucket)
@@ -240,18 +550,19 @@ public class ImageTransformationService {
                     .build();
 
             s3Client.putObject(putRequest, software.amazon.awssdk.core.sync.RequestBody.fromBytes(imageData));
-
-            // Generate S3 URL
-            if ("us-east-1".equals(region)) {
-                return String.format("https://%s.s3.amazonaws.com/%s", bucket, filename);
-            } else {
-                return String.format("https://%s.s3.%s.amazonaws.com/%s", bucket, region, filename);
-            }
         } catch (Exception e) {
             throw new IOException("Failed to upload transformed image to S3: " + filename, e);
         }
     }
 
+    private String generateS3Url(String filename) {
+        if ("us-east-1".equals(region)) {
+            return String.format("https://%s.s3.amazonaws.com/%s", bucket, filename);
+        } else {
+            return String.format("https://%s.s3.%s.amazonaws.com/%s", bucket, region, filename);
+        }
+    }
+
     private String generateTransformedFilename(String originalName, TransformationOptions options) {
         String baseName = originalName.substring(0, originalName.lastIndexOf('.'));
         String extension = originalName.substring(originalName.lastIndexOf('.'));
@@ -281,6 +592,31 @@ public class ImageTransformationService {
             if (Boolean.TRUE.equals(options.getFilters().getSepia())) {
                 suffix.append("_sepia");
             }
+            if (options.getFilters().getBrightness() != null) {
+                suffix.append("_bright").append(options.getFilters().getBrightness());
+            }
+            if (options.getFilters().getContrast() != null) {
+                suffix.append("_contrast").append(options.getFilters().getContrast());
+            }
+            if (options.getFilters().getSaturation() != null) {
+                suffix.append("_sat").append(options.getFilters().getSaturation());
+            }
+            if (options.getFilters().getHue() != null) {
+                suffix.append("_hue").append(options.getFilters().getHue());
+            }
+            if (Boolean.TRUE.equals(options.getFilters().getInvert())) {
+                suffix.append("_invert");
+            }
+            if (options.getFilters().getBlur() != null) {
+                suffix.append("_blur").append(options.getFilters().getBlur());
+            }
+            if (options.getFilters().getSharpen() != null) {
+                suffix.append("_sharpen").append(options.getFilters().getSharpen());
+            }
+        }
+
+        if (options.getWatermark() != null) {
+            suffix.append("_watermark");
         }
 
         // Change extension if format conversion is requested
@@ -291,49 +627,36 @@ public class ImageTransformationService {
         return UUID.randomUUID().toString() + "_" + baseName + suffix.toString() + extension;
     }
 
-    private String getOutputFormat(String requestedFormat) {
-        if (requestedFormat == null || requestedFormat.isEmpty()) {
-            return "jpg"; // Default format
-        }
-        
-        switch (requestedFormat.toLowerCase()) {
-            case "jpeg":
-            case "jpg":
-                return "jpg";
-            case "png":
-                return "png";
-            case "webp":
-                return "webp";
-            default:
-                return "jpg";
+    String transformationOptionsToJson(TransformationOptions options) {
+        try {
+            return objectMapper.writeValueAsString(options);
+        } catch (Exception e) {
+            logger.warn("Failed to serialize transformation options to JSON: {}", e.getMessage());
+            return "{}";
         }
     }
 
-    private String getOutputContentType(String requestedFormat, String originalContentType) {
-        if (requestedFormat == null || requestedFormat.isEmpty()) {
-            return originalContentType;
-        }
-        
-        switch (requestedFormat.toLowerCase()) {
-            case "jpeg":
-            case "jpg":
-                return "image/jpeg";
-            case "png":
-                return "image/png";
-            case "webp":
-                return "image/webp";
-            default:
-                return originalContentType;
+    private static final class RenderedImage {
+        private final byte[] data;
+        private final TransformationPlan plan;
+
+        private RenderedImage(byte[] data, TransformationPlan plan) {
+            this.data = data;
+            this.plan = plan;
         }
     }
 
-    private String transformationOptionsToJson(TransformationOptions options) {
-        try {
-            return objectMapper.writeValueAsString(options);
-        } catch (Exception e) {
-            logger.warn("Failed to serialize transformation options to JSON: {}", e.getMessage());
-            return "{}";
+    public static class RenderResult {
+        private final byte[] data;
+        private final String contentType;
+
+        public RenderResult(byte[] data, String contentType) {
+            this.data = data;
+            this.contentType = contentType;
         }
+
+        public byte[] getData() { return data; }
+        public String getContentType() { return contentType; }
     }
 
     // DTO classes for transformation
@@ -364,6 +687,7 @@ public class ImageTransformationService {
         private Integer rotate;
         private String format;
         private FilterOptions filters;
+        private WatermarkOptions watermark;
 
         // Getters and setters
         public ResizeOptions getResize() { return resize; }
@@ -376,6 +700,8 @@ public class ImageTransformationService {
         public void setFormat(String format) { this.format = format; }
         public FilterOptions getFilters() { return filters; }
         public void setFilters(FilterOptions filters) { this.filters = filters; }
+        public WatermarkOptions getWatermark() { return watermark; }
+        public void setWatermark(WatermarkOptions watermark) { this.watermark = watermark; }
     }
 
     public static class ResizeOptions {
@@ -407,10 +733,60 @@ public class ImageTransformationService {
     public static class FilterOptions {
         private Boolean grayscale;
         private Boolean sepia;
+        private Double brightness;
+        private Double contrast;
+        private Double saturation;
+        private Double hue;
+        private Boolean invert;
+        private Double blur;
+        private Double sharpen;
+        private Double sharpenRadius;
 
         public Boolean getGrayscale() { return grayscale; }
         public void setGrayscale(Boolean grayscale) { this.grayscale = grayscale; }
         public Boolean getSepia() { return sepia; }
         public void setSepia(Boolean sepia) { this.sepia = sepia; }
+        public Double getBrightness() { return brightness; }
+        public void setBrightness(Double brightness) { this.brightness = brightness; }
+        public Double getContrast() { return contrast; }
+        public void setContrast(Double contrast) { this.contrast = contrast; }
+        public Double getSaturation() { return saturation; }
+        public void setSaturation(Double saturation) { this.saturation = saturation; }
+        public Double getHue() { return hue; }
+        public void setHue(Double hue) { this.hue = hue; }
+        public Boolean getInvert() { return invert; }
+        public void setInvert(Boolean invert) { this.invert = invert; }
+        public Double getBlur() { return blur; }
+        public void setBlur(Double blur) { this.blur = blur; }
+        public Double getSharpen() { return sharpen; }
+        public void setSharpen(Double sharpen) { this.sharpen = sharpen; }
+        public Double getSharpenRadius() { return sharpenRadius; }
+        public void setSharpenRadius(Double sharpenRadius) { this.sharpenRadius = sharpenRadius; }
+    }
+
+    public static class WatermarkOptions {
+        // Either text or the id of one of the user's own images to use as a logo
+        private String text;
+        private Long imageId;
+        private String position;
+        private Double opacity;
+        private Double scale;
+        private Boolean tile;
+        private String color;
+
+        public String getText() { return text; }
+        public void setText(String text) { this.text = text; }
+        public Long getImageId() { return imageId; }
+        public void setImageId(Long imageId) { this.imageId = imageId; }
+        public String getPosition() { return position; }
+        public void setPosition(String position) { this.position = position; }
+        public Double getOpacity() { return opacity; }
+        public void setOpacity(Double opacity) { this.opacity = opacity; }
+        public Double getScale() { return scale; }
+        public void setScale(Double scale) { this.scale = scale; }
+        public Boolean getTile() { return tile; }
+        public void setTile(Boolean tile) { this.tile = tile; }
+        public String getColor() { return color; }
+        public void setColor(String color) { this.color = color; }
     }
-}
\ No newline at end of file
+}
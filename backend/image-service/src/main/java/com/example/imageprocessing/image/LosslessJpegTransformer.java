@@ -0,0 +1,267 @@
+package com.example.imageprocessing.image;
+
+import net.coobird.thumbnailator.util.exif.Orientation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rotates JPEGs by multiples of 90 degrees and crops them on MCU boundaries without decoding
+ * to pixels. The work is delegated to {@code jpegtran}, which rearranges the DCT coefficient
+ * blocks directly, so the output is bit-exact in quality and much cheaper than a
+ * decode / rotate / re-encode round trip.
+ *
+ * Anything this path cannot do perfectly (resize, filters, format changes, unaligned crops,
+ * rotations that would have to trim partial edge blocks) is left to the pixel pipeline, and so
+ * are JPEGs with an EXIF orientation other than 1: the pixel pipeline crops and rotates them
+ * upright, while jpegtran works on the stored pixels and keeps the orientation tag.
+ */
+@Component
+public class LosslessJpegTransformer {
+    private static final Logger logger = LoggerFactory.getLogger(LosslessJpegTransformer.class);
+
+    @Value("${image.transform.jpegtran.path:jpegtran}")
+    private String jpegtranPath;
+
+    @Value("${image.transform.jpegtran.timeout-seconds:30}")
+    private long timeoutSeconds;
+
+    private volatile Boolean available;
+
+    /**
+     * Returns true when the requested transformation consists only of right-angle rotations
+     * and MCU-aligned crops of an upright JPEG source that stays a JPEG.
+     */
+    public boolean supports(Path source, ImageTransformationService.TransformationOptions options) throws IOException {
+        if (options.getResize() != null || hasFilters(options.getFilters()) || options.getWatermark() != null
+                || !isJpegFormat(options.getFormat())) {
+            return false;
+        }
+        if (options.getRotate() != null && options.getRotate() % 90 != 0) {
+            return false;
+        }
+
+        JpegFrame frame = readFrame(source);
+        if (frame == null) {
+            return false;
+        }
+
+        ImageTransformationService.CropOptions crop = options.getCrop();
+        if (crop != null) {
+            boolean aligned = crop.getX() % frame.mcuWidth == 0 && crop.getY() % frame.mcuHeight == 0;
+            boolean inside = crop.getX() >= 0 && crop.getY() >= 0 && crop.getWidth() > 0 && crop.getHeight() > 0
+                    && crop.getX() + crop.getWidth() <= frame.width && crop.getY() + crop.getHeight() <= frame.height;
+            if (!aligned || !inside) {
+                return false;
+            }
+        }
+
+        return isUpright(source) && isAvailable();
+    }
+
+    /**
+     * Applies the crop and then the rotation in the coefficient domain.
+     *
+     * @return false if jpegtran could not perform the transformation perfectly, in which case
+     *         nothing has been written and the caller should fall back to the pixel pipeline
+     */
+    public boolean transform(Path source, OutputStream outputStream,
+                             ImageTransformationService.TransformationOptions options) throws IOException {
+        List<Path> temporaryFiles = new ArrayList<>();
+        try {
+            Path current = source;
+
+            // Crop first so the offsets stay in source coordinates, matching the pixel pipeline
+            ImageTransformationService.CropOptions crop = options.getCrop();
+            if (crop != null) {
+                Path cropped = Files.createTempFile("jpegtran", ".jpg");
+                temporaryFiles.add(cropped);
+                String geometry = String.format("%dx%d+%d+%d", crop.getWidth(), crop.getHeight(), crop.getX(), crop.getY());
+                if (!run(List.of("-crop", geometry), current, cropped)) {
+                    return false;
+                }
+                current = cropped;
+            }
+
+            int rotation = options.getRotate() == null ? 0 : Math.floorMod(options.getRotate(), 360);
+            if (rotation != 0) {
+                Path rotated = Files.createTempFile("jpegtran", ".jpg");
+                temporaryFiles.add(rotated);
+                // -perfect refuses instead of silently trimming partial MCUs off the edges
+                if (!run(List.of("-perfect", "-rotate", String.valueOf(rotation)), current, rotated)) {
+                    return false;
+                }
+                current = rotated;
+            }
+
+            Files.copy(current, outputStream);
+            return true;
+        } finally {
+            for (Path temporaryFile : temporaryFiles) {
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+    }
+
+    private boolean run(List<String> arguments, Path input, Path output) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(jpegtranPath);
+        command.add("-copy");
+        command.add("all");
+        command.addAll(arguments);
+        command.add("-outfile");
+        command.add(output.toString());
+        command.add(input.toString());
+
+        // Messages go to a file rather than a pipe, which jpegtran could block on and which would
+        // have to be read to the end before the timeout could start
+        Path messages = Files.createTempFile("jpegtran", ".log");
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(messages.toFile()).start();
+            try {
+                if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                    logger.warn("jpegtran timed out after {}s: {}", timeoutSeconds, arguments);
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while running jpegtran", e);
+            }
+            if (process.exitValue() != 0) {
+                logger.info("jpegtran could not apply {} losslessly, falling back: {}", arguments,
+                        new String(Files.readAllBytes(messages)).trim());
+                return false;
+            }
+            return true;
+        } finally {
+            Files.deleteIfExists(messages);
+        }
+    }
+
+    private boolean isAvailable() {
+        if (available == null) {
+            synchronized (this) {
+                if (available == null) {
+                    available = probe();
+                }
+            }
+        }
+        return available;
+    }
+
+    private boolean probe() {
+        try {
+            Process process = new ProcessBuilder(jpegtranPath, "-version").redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            boolean finished = process.waitFor(timeoutSeconds, TimeUnit.SECONDS);
+            if (finished && process.exitValue() == 0) {
+                logger.info("Lossless JPEG transforms enabled using {}", jpegtranPath);
+                return true;
+            }
+            process.destroyForcibly();
+        } catch (IOException e) {
+            logger.debug("jpegtran probe failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        logger.warn("{} is not available, JPEG rotations and crops will be re-encoded", jpegtranPath);
+        return false;
+    }
+
+    private boolean hasFilters(ImageTransformationService.FilterOptions filters) {
+        return filters != null && (!ColorMatrix.of(filters).isIdentity() || ConvolutionFilter.appliesTo(filters));
+    }
+
+    private boolean isJpegFormat(String format) {
+        return format == null || format.isEmpty() || "jpg".equalsIgnoreCase(format) || "jpeg".equalsIgnoreCase(format);
+    }
+
+    private boolean isUpright(Path source) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return false;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, false);
+                return ImageTransformationService.exifOrientation(reader) == Orientation.TOP_LEFT;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Walks the JPEG marker segments up to the first start-of-frame and returns the image size
+     * and MCU dimensions, or null if the file is not a JPEG this path can handle.
+     */
+    private JpegFrame readFrame(Path source) throws IOException {
+        try (DataInputStream input = new DataInputStream(Files.newInputStream(source))) {
+            if (input.readUnsignedShort() != 0xFFD8) {
+                return null;
+            }
+
+            while (true) {
+                int marker = input.readUnsignedShort();
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFD9 || marker == 0xFFDA) {
+                    return null;
+                }
+
+                int length = input.readUnsignedShort();
+                boolean startOfFrame = marker >= 0xFFC0 && marker <= 0xFFCF
+                        && marker != 0xFFC4 && marker != 0xFFC8 && marker != 0xFFCC;
+                if (!startOfFrame) {
+                    input.skipNBytes(length - 2);
+                    continue;
+                }
+
+                // Lossless (SOF3/7/11/15) frames have no DCT coefficients to rearrange
+                if ((marker & 0x03) == 0x03) {
+                    return null;
+                }
+
+                input.readUnsignedByte(); // sample precision
+                int height = input.readUnsignedShort();
+                int width = input.readUnsignedShort();
+                int components = input.readUnsignedByte();
+
+                int maxHorizontal = 1;
+                int maxVertical = 1;
+                for (int i = 0; i < components; i++) {
+                    input.readUnsignedByte(); // component id
+                    int sampling = input.readUnsignedByte();
+                    input.readUnsignedByte(); // quantization table
+                    maxHorizontal = Math.max(maxHorizontal, sampling >> 4);
+                    maxVertical = Math.max(maxVertical, sampling & 0x0F);
+                }
+
+                return new JpegFrame(width, height, 8 * maxHorizontal, 8 * maxVertical);
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private record JpegFrame(int width, int height, int mcuWidth, int mcuHeight) {
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.imageprocessing.image;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * An open presigned multipart upload. Uploads live in the database so the parts can be signed and
+ * the upload completed or aborted through any instance, and only by the user who started it.
+ */
+@Entity
+@Table(name = "multipart_uploads", indexes = @Index(name = "idx_multipart_uploads_created_at", columnList = "created_at"))
+public class MultipartUpload {
+    @Id
+    @Column(name = "upload_id", length = 255)
+    private String uploadId;
+
+    @Column(name = "object_key", nullable = false, length = 1024)
+    private String key;
+
+    @Column(name = "original_name", nullable = false, length = 512)
+    private String originalName;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    @Column(name = "file_size", nullable = false)
+    private long fileSize;
+
+    @Column(name = "username", nullable = false)
+    private String username;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public MultipartUpload() {
+    }
+
+    public MultipartUpload(String uploadId, String key, String originalName, String contentType, long fileSize,
+                           String username) {
+        this.uploadId = uploadId;
+        this.key = key;
+        this.originalName = originalName;
+        this.contentType = contentType;
+        this.fileSize = fileSize;
+        this.username = username;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public String getUploadId() { return uploadId; }
+    public String getKey() { return key; }
+    public String getOriginalName() { return originalName; }
+    public String getContentType() { return contentType; }
+    public long getFileSize() { return fileSize; }
+    public String getUsername() { return username; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+}
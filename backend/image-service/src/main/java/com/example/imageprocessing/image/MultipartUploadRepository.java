@@ -0,0 +1,24 @@
+package com.example.imageprocessing.image;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface MultipartUploadRepository extends JpaRepository<MultipartUpload, String> {
+
+    // Read on the primary: parts are signed right after the upload was initiated, possibly by another instance
+    @Transactional
+    Optional<MultipartUpload> findByUploadIdAndUsername(String uploadId, String username);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM MultipartUpload u WHERE u.createdAt < :createdBefore")
+    int deleteCreatedBefore(@Param("createdBefore") LocalDateTime createdBefore);
+}
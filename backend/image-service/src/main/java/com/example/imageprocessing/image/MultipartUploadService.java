@@ -0,0 +1,282 @@
+package com.example.imageprocessing.image;
+
+import com.example.imageprocessing.timing.RequestTimings;
+import com.example.imageprocessing.user.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.UploadPartPresignRequest;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Presigned S3 multipart uploads: the service initiates the upload and presigns the part URLs in
+ * bulk, the browser PUTs the parts in parallel (retrying only failed parts) and then posts the
+ * part ETags back, at which point the upload is completed and the image metadata saved.
+ *
+ * Open uploads are stored in the database, so the parts can be signed and the upload completed
+ * through any instance, but only by the user who started it. A session is only removed once its
+ * image is saved, so a completion that failed half way can be retried. Uploads that are never
+ * completed should be cleaned up by an S3 lifecycle rule for incomplete multipart uploads.
+ */
+@Service
+public class MultipartUploadService {
+    private static final Logger logger = LoggerFactory.getLogger(MultipartUploadService.class);
+
+    // S3 limits: parts of at least 5 MiB (except the last one) and at most 10000 parts
+    static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    static final int MAX_PARTS = 10_000;
+
+    private final S3Client s3Client;
+    private final S3Presigner s3Presigner;
+    private final UserRepository userRepository;
+    private final ImageService imageService;
+    private final MultipartUploadRepository uploadRepository;
+
+    @Value("${aws.s3.bucket:project-image-processing-service-bucket}")
+    private String bucket;
+
+    @Value("${image.upload.multipart.part-size:8388608}")
+    private long partSize;
+
+    @Value("${image.upload.multipart.url-expiry-minutes:60}")
+    private long urlExpiryMinutes;
+
+    @Value("${image.upload.multipart.session-expiry-hours:24}")
+    private long sessionExpiryHours;
+
+    @Value("${image.upload.multipart.max-size:10737418240}")
+    private long maxSize;
+
+    public MultipartUploadService(@Lazy S3Client s3Client, @Lazy S3Presigner s3Presigner, UserRepository userRepository,
+                                  ImageService imageService, MultipartUploadRepository uploadRepository) {
+        this.s3Client = s3Client;
+        this.s3Presigner = s3Presigner;
+        this.userRepository = userRepository;
+        this.imageService = imageService;
+        this.uploadRepository = uploadRepository;
+    }
+
+    public MultipartUploadResponse initiate(String filename, String contentType, long fileSize, String username) {
+        if (fileSize <= 0) {
+            throw new IllegalArgumentException("File size must be positive");
+        }
+        if (fileSize > maxSize) {
+            throw new IllegalArgumentException("Files larger than " + maxSize + " bytes cannot be uploaded");
+        }
+        userRepository.findFirstByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        removeExpiredSessions();
+
+        // Grow the parts for very large files so the upload stays within the part limit
+        long effectivePartSize = Math.max(Math.max(partSize, MIN_PART_SIZE), (fileSize + MAX_PARTS - 1) / MAX_PARTS);
+        int partCount = (int) ((fileSize + effectivePartSize - 1) / effectivePartSize);
+
+        String key = UUID.randomUUID().toString() + "_" + filename;
+        String uploadId = RequestTimings.time(RequestTimings.S3_PUT, () -> s3Client.createMultipartUpload(
+                CreateMultipartUploadRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .contentType(contentType)
+                        .build())
+                .uploadId());
+
+        MultipartUpload session = uploadRepository.save(
+                new MultipartUpload(uploadId, key, filename, contentType, fileSize, username));
+        logger.info("Initiated multipart upload {} for {} ({} bytes in {} parts of {} bytes)",
+                uploadId, key, fileSize, partCount, effectivePartSize);
+
+        List<Integer> partNumbers = new ArrayList<>(partCount);
+        for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+            partNumbers.add(partNumber);
+        }
+
+        MultipartUploadResponse response = new MultipartUploadResponse();
+        response.setUploadId(uploadId);
+        response.setFilename(key);
+        response.setPartSize(effectivePartSize);
+        response.setPartCount(partCount);
+        response.setParts(presign(session, partNumbers));
+        response.setExpiresIn((int) Duration.ofMinutes(urlExpiryMinutes).toSeconds());
+        return response;
+    }
+
+    /**
+     * Presigns (again) the given parts, e.g. to retry parts whose URLs expired.
+     */
+    public List<PresignedPart> presignParts(String uploadId, List<Integer> partNumbers, String username) {
+        MultipartUpload session = getSession(uploadId, username);
+        if (partNumbers == null || partNumbers.isEmpty()) {
+            throw new IllegalArgumentException("No part numbers given");
+        }
+        for (Integer partNumber : partNumbers) {
+            if (partNumber == null || partNumber < 1 || partNumber > MAX_PARTS) {
+                throw new IllegalArgumentException("Invalid part number: " + partNumber);
+            }
+        }
+        return presign(session, partNumbers);
+    }
+
+    /**
+     * Completes the upload from the part manifest and saves the image metadata. An assembled object
+     * whose size differs from the one declared when the upload was initiated is deleted and rejected.
+     */
+    public Image complete(String uploadId, List<CompletedPartInfo> parts, String username) {
+        MultipartUpload session = getSession(uploadId, username);
+        if (parts == null || parts.isEmpty()) {
+            throw new IllegalArgumentException("No parts given");
+        }
+
+        // S3 requires the parts in ascending order
+        List<CompletedPart> completedParts = parts.stream()
+                .sorted(Comparator.comparing(CompletedPartInfo::getPartNumber))
+                .map(part -> CompletedPart.builder().partNumber(part.getPartNumber()).eTag(part.getETag()).build())
+                .toList();
+
+        try {
+            RequestTimings.time(RequestTimings.S3_PUT, () -> s3Client.completeMultipartUpload(
+                    CompleteMultipartUploadRequest.builder()
+                            .bucket(bucket)
+                            .key(session.getKey())
+                            .uploadId(uploadId)
+                            .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                            .build()));
+        } catch (NoSuchUploadException e) {
+            // Completed by an earlier attempt that failed before the image was saved; the object is checked below
+            logger.info("Multipart upload {} for {} was already completed", uploadId, session.getKey());
+        }
+
+        long size = RequestTimings.time(RequestTimings.S3_GET, () -> s3Client.headObject(
+                HeadObjectRequest.builder().bucket(bucket).key(session.getKey()).build()).contentLength());
+        if (size != session.getFileSize()) {
+            RequestTimings.time(RequestTimings.S3_DELETE, () -> s3Client.deleteObject(
+                    DeleteObjectRequest.builder().bucket(bucket).key(session.getKey()).build()));
+            uploadRepository.deleteById(uploadId);
+            logger.warn("Rejected multipart upload {} for {}: {} bytes assembled, {} declared",
+                    uploadId, session.getKey(), size, session.getFileSize());
+            throw new IllegalArgumentException("Uploaded " + size + " bytes, but " + session.getFileSize()
+                    + " were declared");
+        }
+        logger.info("Completed multipart upload {} for {} ({} parts)", uploadId, session.getKey(), parts.size());
+
+        // Size, type and dimensions are read from the assembled object
+        Image image = imageService.saveMultipartUploadMetadata(session.getKey(), session.getOriginalName(),
+                session.getContentType(), session.getFileSize(), username);
+        uploadRepository.deleteById(uploadId);
+        return image;
+    }
+
+    public void abort(String uploadId, String username) {
+        MultipartUpload session = getSession(uploadId, username);
+        RequestTimings.time(RequestTimings.S3_DELETE, () -> s3Client.abortMultipartUpload(
+                AbortMultipartUploadRequest.builder()
+                        .bucket(bucket)
+                        .key(session.getKey())
+                        .uploadId(uploadId)
+                        .build()));
+        uploadRepository.deleteById(uploadId);
+        logger.info("Aborted multipart upload {} for {}", uploadId, session.getKey());
+    }
+
+    private List<PresignedPart> presign(MultipartUpload session, List<Integer> partNumbers) {
+        Duration expiry = Duration.ofMinutes(urlExpiryMinutes);
+        return RequestTimings.time(RequestTimings.PRESIGN, () -> {
+            List<PresignedPart> presigned = new ArrayList<>(partNumbers.size());
+            for (Integer partNumber : partNumbers) {
+                UploadPartRequest uploadPartRequest = UploadPartRequest.builder()
+                        .bucket(bucket)
+                        .key(session.getKey())
+                        .uploadId(session.getUploadId())
+                        .partNumber(partNumber)
+                        .build();
+                String url = s3Presigner.presignUploadPart(UploadPartPresignRequest.builder()
+                        .signatureDuration(expiry)
+                        .uploadPartRequest(uploadPartRequest)
+                        .build()).url().toString();
+                presigned.add(new PresignedPart(partNumber, url));
+            }
+            return presigned;
+        });
+    }
+
+    private MultipartUpload getSession(String uploadId, String username) {
+        return uploadRepository.findByUploadIdAndUsername(uploadId, username)
+                .orElseThrow(() -> new RuntimeException("Upload not found or access denied"));
+    }
+
+    private void removeExpiredSessions() {
+        uploadRepository.deleteCreatedBefore(LocalDateTime.now().minusHours(sessionExpiryHours));
+    }
+
+    // DTO classes for multipart uploads
+    public static class MultipartUploadResponse {
+        private String uploadId;
+        private String filename;
+        private long partSize;
+        private int partCount;
+        private List<PresignedPart> parts;
+        private int expiresIn;
+
+        public String getUploadId() { return uploadId; }
+        public void setUploadId(String uploadId) { this.uploadId = uploadId; }
+        public String getFilename() { return filename; }
+        public void setFilename(String filename) { this.filename = filename; }
+        public long getPartSize() { return partSize; }
+        public void setPartSize(long partSize) { this.partSize = partSize; }
+        public int getPartCount() { return partCount; }
+        public void setPartCount(int partCount) { this.partCount = partCount; }
+        public List<PresignedPart> getParts() { return parts; }
+        public void setParts(List<PresignedPart> parts) { this.parts = parts; }
+        public int getExpiresIn() { return expiresIn; }
+        public void setExpiresIn(int expiresIn) { this.expiresIn = expiresIn; }
+    }
+
+    public static class PresignedPart {
+        private int partNumber;
+        private String uploadUrl;
+
+        public PresignedPart(int partNumber, String uploadUrl) {
+            this.partNumber = partNumber;
+            this.uploadUrl = uploadUrl;
+        }
+
+        public int getPartNumber() { return partNumber; }
+        public String getUploadUrl() { return uploadUrl; }
+    }
+
+    public static class CompletedPartInfo {
+        private Integer partNumber;
+        private String eTag;
+
+        public CompletedPartInfo() {}
+
+        public CompletedPartInfo(Integer partNumber, String eTag) {
+            this.partNumber = partNumber;
+            this.eTag = eTag;
+        }
+
+        public Integer getPartNumber() { return partNumber; }
+        public void setPartNumber(Integer partNumber) { this.partNumber = partNumber; }
+        public String getETag() { return eTag; }
+        public void setETag(String eTag) { this.eTag = eTag; }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.imageprocessing.image;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A key this service presigned an upload to, and the user it was issued to. Only such keys can be
+ * registered as images, and only by that user, so a client cannot register an object it did not
+ * upload itself.
+ */
+@Entity
+@Table(name = "presigned_uploads", indexes = @Index(name = "idx_presigned_uploads_created_at", columnList = "created_at"))
+public class PresignedUpload {
+    @Id
+    @Column(name = "object_key", length = 255)
+    private String objectKey;
+
+    @Column(name = "username", nullable = false)
+    private String username;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public PresignedUpload() {
+    }
+
+    public PresignedUpload(String objectKey, String username) {
+        this.objectKey = objectKey;
+        this.username = username;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public String getObjectKey() { return objectKey; }
+    public String getUsername() { return username; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+}
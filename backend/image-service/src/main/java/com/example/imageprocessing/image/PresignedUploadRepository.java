@@ -0,0 +1,31 @@
+package com.example.imageprocessing.image;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PresignedUploadRepository extends JpaRepository<PresignedUpload, String> {
+
+    // Read on the primary: uploads are registered right after they were presigned, possibly by another instance
+    @Transactional
+    @Query("SELECT p.objectKey FROM PresignedUpload p WHERE p.objectKey IN :objectKeys AND p.username = :username")
+    List<String> findObjectKeys(@Param("objectKeys") Collection<String> objectKeys, @Param("username") String username);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM PresignedUpload p WHERE p.objectKey IN :objectKeys")
+    int deleteByObjectKeys(@Param("objectKeys") Collection<String> objectKeys);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM PresignedUpload p WHERE p.createdAt < :createdBefore")
+    int deleteCreatedBefore(@Param("createdBefore") LocalDateTime createdBefore);
+}
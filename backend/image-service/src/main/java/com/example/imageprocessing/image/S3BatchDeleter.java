@@ -0,0 +1,77 @@
+package com.example.imageprocessing.image;
+
+import com.example.imageprocessing.timing.RequestTimings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Deletes S3 objects with batched {@code DeleteObjects} calls of up to 1000 keys, the S3 maximum,
+ * instead of one {@code DeleteObject} request per key.
+ */
+@Component
+public class S3BatchDeleter {
+    private static final Logger logger = LoggerFactory.getLogger(S3BatchDeleter.class);
+
+    static final int MAX_KEYS_PER_REQUEST = 1000;
+
+    private final S3Client s3Client;
+
+    @Value("${aws.s3.bucket:project-image-processing-service-bucket}")
+    private String bucket;
+
+    public S3BatchDeleter(@Lazy S3Client s3Client) {
+        this.s3Client = s3Client;
+    }
+
+    /**
+     * Deletes the given keys and returns the ones S3 could not delete. Keys that do not exist count as deleted.
+     */
+    public Set<String> deleteObjects(Collection<String> keys) {
+        List<String> distinctKeys = new ArrayList<>(new LinkedHashSet<>(keys));
+        Set<String> failedKeys = new HashSet<>();
+
+        for (int from = 0; from < distinctKeys.size(); from += MAX_KEYS_PER_REQUEST) {
+            List<String> batch = distinctKeys.subList(from, Math.min(from + MAX_KEYS_PER_REQUEST, distinctKeys.size()));
+            List<ObjectIdentifier> objects = batch.stream()
+                    .map(key -> ObjectIdentifier.builder().key(key).build())
+                    .toList();
+
+            try {
+                // Quiet mode: the response only lists the keys that failed
+                DeleteObjectsRequest request = DeleteObjectsRequest.builder()
+                        .bucket(bucket)
+                        .delete(Delete.builder().objects(objects).quiet(true).build())
+                        .build();
+                DeleteObjectsResponse response = RequestTimings.time(RequestTimings.S3_DELETE,
+                        () -> s3Client.deleteObjects(request));
+
+                for (S3Error error : response.errors()) {
+                    logger.warn("Failed to delete S3 object {}: {} {}", error.key(), error.code(), error.message());
+                    failedKeys.add(error.key());
+                }
+                logger.info("Deleted {} of {} S3 objects in one batch", batch.size() - response.errors().size(), batch.size());
+            } catch (Exception e) {
+                logger.error("Failed to delete batch of {} S3 objects: {}", batch.size(), e.getMessage(), e);
+                failedKeys.addAll(batch);
+            }
+        }
+
+        return failedKeys;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.imageprocessing.image;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.time.LocalDateTime;
+
+/**
+ * An original stored once in S3 under its SHA-256 digest and shared by every image with the same
+ * bytes. {@code refCount} counts those images; it is -1 while the object is being deleted.
+ */
+@Entity
+@Table(name = "stored_objects")
+public class StoredObject implements Persistable<String> {
+    @Id
+    @Column(name = "sha256", length = 64)
+    private String sha256;
+
+    @Column(name = "object_key", nullable = false)
+    private String objectKey;
+
+    @Column(name = "size")
+    private Long size;
+
+    @Column(name = "ref_count", nullable = false)
+    private long refCount;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Always inserted, never merged: a concurrent insert of the same digest must fail instead of overwriting
+    @Transient
+    private boolean isNew = true;
+
+    public StoredObject() {
+    }
+
+    public StoredObject(String sha256, String objectKey, Long size) {
+        this.sha256 = sha256;
+        this.objectKey = objectKey;
+        this.size = size;
+        this.refCount = 1;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        isNew = false;
+    }
+
+    @Override
+    public String getId() { return sha256; }
+
+    @Override
+    public boolean isNew() { return isNew; }
+
+    public String getSha256() { return sha256; }
+    public String getObjectKey() { return objectKey; }
+    public Long getSize() { return size; }
+    public long getRefCount() { return refCount; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+}
@@ -0,0 +1,44 @@
+package com.example.imageprocessing.image;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface StoredObjectRepository extends JpaRepository<StoredObject, String> {
+
+    // Adds a reference unless the object is being deleted; returns 0 if there is no live object
+    @Transactional
+    @Modifying
+    @Query("UPDATE StoredObject o SET o.refCount = o.refCount + 1 WHERE o.sha256 = :sha256 AND o.refCount >= 0")
+    int incrementRefCount(@Param("sha256") String sha256);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE StoredObject o SET o.refCount = o.refCount - :count WHERE o.sha256 IN :sha256s AND o.refCount >= :count")
+    int decrementRefCounts(@Param("sha256s") Collection<String> sha256s, @Param("count") long count);
+
+    // Only one caller wins the claim on an unreferenced object, and new references are refused from then on
+    @Transactional
+    @Modifying
+    @Query("UPDATE StoredObject o SET o.refCount = -1 WHERE o.sha256 = :sha256 AND o.refCount = 0")
+    int claimForDeletion(@Param("sha256") String sha256);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE StoredObject o SET o.refCount = 0 WHERE o.sha256 IN :sha256s AND o.refCount = -1")
+    int releaseClaims(@Param("sha256s") Collection<String> sha256s);
+
+    // Read on the primary: an object key that is stored content must never be deleted with one image
+    @Transactional
+    @Query("SELECT o.objectKey FROM StoredObject o WHERE o.objectKey IN :objectKeys")
+    List<String> findObjectKeys(@Param("objectKeys") Collection<String> objectKeys);
+
+    List<StoredObject> findBySha256InAndRefCount(Collection<String> sha256s, long refCount);
+}
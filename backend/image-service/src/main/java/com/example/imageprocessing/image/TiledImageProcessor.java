@@ -0,0 +1,450 @@
+package com.example.imageprocessing.image;
+
+import net.coobird.thumbnailator.Thumbnails;
+import net.coobird.thumbnailator.util.exif.Orientation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Processes very large images tile by tile so that heap usage is bounded by the tile size and
+ * the output width instead of the source or output size.
+ *
+ * Source pixels are never decoded as a whole. The output is never held as a whole either: JPEG
+ * and PNG writers pull it row by row, and each strip of {@code tile-size} output rows is rendered
+ * when the writer first reaches it. The source band the strip maps back to is read with a single
+ * {@link ImageReadParam#setSourceRegion} read (with subsampling when the image is being scaled
+ * down); its tiles are cut from that band, resampled, turned by the EXIF orientation and the
+ * requested right-angle rotation, placed at their position in the strip, and the strip is then
+ * filtered and watermarked. Readers such as JPEG's decode every row above a region to reach it, so
+ * one read per strip rather than per tile keeps the decoding to about {@code strips / 2} passes
+ * over the source for an upright strip order, and one pass per strip for a quarter turn, whose
+ * strips are source columns. Blur and sharpen render the strip with as many extra rows as they reach, so strips
+ * join without seams.
+ *
+ * Rotations by other angles, and output formats whose writers need the whole image at once, fall
+ * back to assembling the output, which is only allowed up to {@code threshold-pixels}.
+ */
+@Component
+public class TiledImageProcessor {
+    private static final Logger logger = LoggerFactory.getLogger(TiledImageProcessor.class);
+
+    // Extra source pixels read around every tile so bicubic resampling has real neighbours at the seams
+    private static final int RESAMPLING_OVERLAP = 3;
+
+    // Formats whose ImageIO writers read the image one row at a time
+    private static final Set<String> STREAMED_FORMATS = Set.of("jpg", "png");
+
+    private final ColorProfileConverter colorProfileConverter;
+
+    @Value("${image.transform.tiled.threshold-pixels:40000000}")
+    private long thresholdPixels;
+
+    @Value("${image.transform.tiled.tile-size:1024}")
+    private int tileSize;
+
+    public TiledImageProcessor(ColorProfileConverter colorProfileConverter) {
+        this.colorProfileConverter = colorProfileConverter;
+    }
+
+    /**
+     * Filters and watermarks a band of the output: rows {@code [y, y + band height)} of an image
+     * {@code height} rows high and as wide as the band.
+     */
+    @FunctionalInterface
+    public interface BandFilter {
+        BufferedImage apply(BufferedImage band, int y, int height) throws IOException;
+    }
+
+    /**
+     * Reads only the image header and decides whether the source is large enough to need tiling.
+     */
+    public boolean shouldUseTiledMode(Path source) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            ImageReader reader = getReader(input);
+            try {
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                return pixels > thresholdPixels;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Crops, resizes and rotates the source in upright (EXIF-oriented) coordinates like the
+     * in-memory path, then runs {@code bandFilter} over the result.
+     *
+     * @param filterReach how many rows on each side a filtered row depends on, see
+     *                    {@link ConvolutionFilter#reach}
+     */
+    public void process(Path source, OutputStream outputStream, ImageTransformationService.TransformationOptions options,
+                        String outputFormat, BandFilter bandFilter, int filterReach) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            ImageReader reader = getReader(input);
+            try {
+                Dimension rawSize = new Dimension(reader.getWidth(0), reader.getHeight(0));
+                Orientation orientation = ImageTransformationService.exifOrientation(reader);
+                AffineTransform orient = orientation(orientation);
+                AffineTransform toUpright = placed(orient, rawSize);
+                Dimension uprightSize = transformedSize(toUpright, rawSize);
+
+                Rectangle region = getSourceRegion(options.getCrop(), uprightSize);
+                Dimension target = getTargetSize(options.getResize(), region.width, region.height);
+                // The crop is given in upright coordinates; the reader needs it in stored ones
+                Rectangle rawRegion = inverse(toUpright).createTransformedShape(region).getBounds();
+                // Tiles are resampled in stored orientation and turned upright as they are placed
+                Dimension prepared = transformedSize(orient, target);
+
+                int rotation = options.getRotate() == null ? 0 : Math.floorMod(options.getRotate(), 360);
+                boolean rightAngle = rotation % 90 == 0;
+                AffineTransform turn = new AffineTransform(orient);
+                if (rightAngle) {
+                    turn.preConcatenate(AffineTransform.getQuadrantRotateInstance(rotation / 90));
+                }
+                AffineTransform geometry = placed(turn, prepared);
+                Dimension output = transformedSize(geometry, prepared);
+
+                logger.info("Tiled processing of {}x{} source (orientation {}, region {}x{}) into {}x{} with {}px tiles",
+                        rawSize.width, rawSize.height, orientation,
+                        region.width, region.height, output.width, output.height, tileSize);
+
+                ColorProfileConverter.SourceColor sourceColor = colorProfileConverter.describe(reader);
+                boolean keepAlpha = !"jpg".equals(outputFormat) && reader.getRawImageType(0) != null
+                        && reader.getRawImageType(0).getColorModel().hasAlpha();
+                TileSource tiles = new TileSource(reader, sourceColor, rawRegion, prepared,
+                        keepAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+
+                if (!rightAngle) {
+                    // Arbitrary angles widen the canvas and mix rows, so the rotation needs the whole image
+                    requireAssembled(output, "rotating by " + rotation + " degrees");
+                    BufferedImage upright = tiles.band(geometry, output, 0, output.height);
+                    BufferedImage rotated = Thumbnails.of(upright).scale(1.0).rotate(rotation).asBufferedImage();
+                    write(bandFilter.apply(rotated, 0, rotated.getHeight()), outputFormat, outputStream);
+                    return;
+                }
+
+                if ((long) output.width * output.height > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Output of " + output.width + "x" + output.height + " is too large");
+                }
+                BufferedImage striped = stripedImage(output, keepAlpha, y -> {
+                    // Widened by the filter reach so neighbouring strips agree along their seam
+                    int from = Math.max(0, y - filterReach);
+                    int to = Math.min(output.height, y + tileSize + filterReach);
+                    BufferedImage band = bandFilter.apply(tiles.band(geometry, output, from, to - from), from, output.height);
+                    int rows = Math.min(tileSize, output.height - y);
+                    int[] pixels = ColorMatrix.toPackedPixels(band, keepAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+                    int[] strip = new int[rows * output.width];
+                    System.arraycopy(pixels, (y - from) * output.width, strip, 0, strip.length);
+                    return strip;
+                });
+                if (!STREAMED_FORMATS.contains(outputFormat)) {
+                    // Writers such as GIF's palette builder read the image as a whole
+                    requireAssembled(output, "writing " + outputFormat);
+                    BufferedImage assembled = new BufferedImage(output.width, output.height,
+                            keepAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+                    assembled.setData(striped.getRaster());
+                    striped = assembled;
+                }
+                write(striped, outputFormat, outputStream);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private void requireAssembled(Dimension output, String operation) {
+        if ((long) output.width * output.height > thresholdPixels) {
+            throw new IllegalArgumentException(operation + " is limited to outputs of " + thresholdPixels
+                    + " pixels on large images; resize or crop it first");
+        }
+    }
+
+    /**
+     * Reads and resamples the tiles of the prepared image: the source region scaled to the target
+     * size, still in stored orientation.
+     */
+    private final class TileSource {
+        private final ImageReader reader;
+        private final ColorProfileConverter.SourceColor sourceColor;
+        private final Rectangle region;
+        private final Dimension size;
+        private final int imageType;
+        private final double scaleX;
+        private final double scaleY;
+        private final int subsampling;
+
+        private TileSource(ImageReader reader, ColorProfileConverter.SourceColor sourceColor, Rectangle region,
+                           Dimension size, int imageType) {
+            this.reader = reader;
+            this.sourceColor = sourceColor;
+            this.region = region;
+            this.size = size;
+            this.imageType = imageType;
+            this.scaleX = (double) size.width / region.width;
+            this.scaleY = (double) size.height / region.height;
+            // Decode at no less than twice the target resolution so the resampling step still has detail to work with
+            this.subsampling = Math.max(1, (int) Math.floor(Math.min(1 / scaleX, 1 / scaleY) / 2));
+        }
+
+        /**
+         * Renders rows {@code [y, y + rows)} of the output that {@code geometry} maps the prepared
+         * image onto, reading the source they come from once and resampling it tile by tile.
+         */
+        BufferedImage band(AffineTransform geometry, Dimension output, int y, int rows) throws IOException {
+            Rectangle needed = inverse(geometry).createTransformedShape(new Rectangle(0, y, output.width, rows)).getBounds()
+                    .intersection(new Rectangle(size));
+            SourceBand source = read(needed);
+            BufferedImage band = new BufferedImage(output.width, rows, imageType);
+            Graphics2D graphics = band.createGraphics();
+            try {
+                // Right-angle turns map pixels onto pixels; nothing is resampled a second time
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+                for (int tileY = needed.y; tileY < needed.y + needed.height; tileY += tileSize) {
+                    for (int tileX = needed.x; tileX < needed.x + needed.width; tileX += tileSize) {
+                        Rectangle tile = new Rectangle(tileX, tileY, Math.min(tileSize, needed.x + needed.width - tileX),
+                                Math.min(tileSize, needed.y + needed.height - tileY));
+                        AffineTransform placement = AffineTransform.getTranslateInstance(0, -y);
+                        placement.concatenate(geometry);
+                        placement.translate(tile.x, tile.y);
+                        graphics.drawImage(render(source, tile), placement, null);
+                    }
+                }
+            } finally {
+                graphics.dispose();
+            }
+            return band;
+        }
+
+        /**
+         * Reads the source pixels behind an area of the prepared image, widened by the resampling
+         * overlap, in one read.
+         */
+        private SourceBand read(Rectangle area) throws IOException {
+            Rectangle bounds = sourceBounds(area);
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(bounds);
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            return new SourceBand(bounds.x, bounds.y, colorProfileConverter.read(reader, param, sourceColor));
+        }
+
+        // Maps an area of the prepared image back into source coordinates and widens it by the resampling overlap
+        private Rectangle sourceBounds(Rectangle area) {
+            int margin = RESAMPLING_OVERLAP * subsampling;
+            int sourceX0 = Math.max(region.x, (int) Math.floor(region.x + area.x / scaleX) - margin);
+            int sourceY0 = Math.max(region.y, (int) Math.floor(region.y + area.y / scaleY) - margin);
+            int sourceX1 = Math.min(region.x + region.width,
+                    (int) Math.ceil(region.x + (area.x + area.width) / scaleX) + margin);
+            int sourceY1 = Math.min(region.y + region.height,
+                    (int) Math.ceil(region.y + (area.y + area.height) / scaleY) + margin);
+            return new Rectangle(sourceX0, sourceY0, sourceX1 - sourceX0, sourceY1 - sourceY0);
+        }
+
+        private BufferedImage render(SourceBand source, Rectangle tile) {
+            // Cut the tile's source pixels from the band, starting on the band's subsampling grid
+            Rectangle bounds = sourceBounds(tile);
+            int i0 = (bounds.x - source.x) / subsampling;
+            int j0 = (bounds.y - source.y) / subsampling;
+            int i1 = Math.min(source.image.getWidth(), (bounds.x + bounds.width - source.x + subsampling - 1) / subsampling);
+            int j1 = Math.min(source.image.getHeight(), (bounds.y + bounds.height - source.y + subsampling - 1) / subsampling);
+            BufferedImage sourceTile = source.image.getSubimage(i0, j0, i1 - i0, j1 - j0);
+            int sourceX0 = source.x + i0 * subsampling;
+            int sourceY0 = source.y + j0 * subsampling;
+
+            BufferedImage rendered = new BufferedImage(tile.width, tile.height, imageType);
+            Graphics2D graphics = rendered.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+
+                // Source tile pixel (i, j) sits at source (sourceX0 + i * subsampling, sourceY0 + j * subsampling)
+                AffineTransform transform = new AffineTransform();
+                transform.translate((sourceX0 - region.x) * scaleX - tile.x, (sourceY0 - region.y) * scaleY - tile.y);
+                transform.scale(subsampling * scaleX, subsampling * scaleY);
+                graphics.drawImage(sourceTile, transform, null);
+            } finally {
+                graphics.dispose();
+            }
+            return rendered;
+        }
+    }
+
+    /**
+     * Source pixels read for a band: pixel (i, j) of {@code image} sits at source
+     * (x + i * subsampling, y + j * subsampling).
+     */
+    private record SourceBand(int x, int y, BufferedImage image) {
+    }
+
+    /**
+     * The turn and flip that shows a stored image upright, as Thumbnailator applies it.
+     */
+    private static AffineTransform orientation(Orientation orientation) {
+        AffineTransform flip = AffineTransform.getScaleInstance(-1, 1);
+        return switch (orientation) {
+            case TOP_RIGHT -> flip;
+            case BOTTOM_RIGHT -> AffineTransform.getQuadrantRotateInstance(2);
+            case BOTTOM_LEFT -> AffineTransform.getScaleInstance(1, -1);
+            case LEFT_TOP -> followedBy(AffineTransform.getQuadrantRotateInstance(1), flip);
+            case RIGHT_TOP -> AffineTransform.getQuadrantRotateInstance(1);
+            case RIGHT_BOTTOM -> followedBy(AffineTransform.getQuadrantRotateInstance(3), flip);
+            case LEFT_BOTTOM -> AffineTransform.getQuadrantRotateInstance(3);
+            default -> new AffineTransform();
+        };
+    }
+
+    private static AffineTransform followedBy(AffineTransform first, AffineTransform second) {
+        AffineTransform result = new AffineTransform(first);
+        result.preConcatenate(second);
+        return result;
+    }
+
+    /**
+     * Moves a turned or flipped image of the given size back so its top-left corner is at the origin.
+     */
+    private static AffineTransform placed(AffineTransform transform, Dimension size) {
+        Rectangle bounds = transform.createTransformedShape(new Rectangle(size)).getBounds();
+        return followedBy(transform, AffineTransform.getTranslateInstance(-bounds.x, -bounds.y));
+    }
+
+    private static Dimension transformedSize(AffineTransform transform, Dimension size) {
+        return transform.createTransformedShape(new Rectangle(size)).getBounds().getSize();
+    }
+
+    private static AffineTransform inverse(AffineTransform transform) {
+        try {
+            return transform.createInverse();
+        } catch (NoninvertibleTransformException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * An image whose pixels are produced one strip of {@code tile-size} rows at a time, when they
+     * are first read. Only the current strip is kept, so writers that read rows in order never
+     * see more than one strip in memory.
+     */
+    private BufferedImage stripedImage(Dimension size, boolean alpha, StripRenderer renderer) {
+        DirectColorModel colorModel = alpha
+                ? (DirectColorModel) ColorModel.getRGBdefault()
+                : new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+        WritableRaster raster = Raster.createWritableRaster(colorModel.createCompatibleSampleModel(size.width, size.height),
+                new StripBuffer(size, tileSize, renderer), null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    @FunctionalInterface
+    private interface StripRenderer {
+        int[] render(int y) throws IOException;
+    }
+
+    private static final class StripBuffer extends DataBuffer {
+        private final int rowLength;
+        private final int stripPixels;
+        private final StripRenderer renderer;
+        private int stripIndex = -1;
+        private int[] strip;
+
+        private StripBuffer(Dimension size, int stripHeight, StripRenderer renderer) {
+            super(DataBuffer.TYPE_INT, size.width * size.height);
+            this.rowLength = size.width;
+            this.stripPixels = stripHeight * size.width;
+            this.renderer = renderer;
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            int index = i / stripPixels;
+            if (index != stripIndex) {
+                try {
+                    strip = renderer.render(index * (stripPixels / rowLength));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                stripIndex = index;
+            }
+            return strip[i - index * stripPixels];
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            throw new UnsupportedOperationException("Strips are rendered, not written");
+        }
+    }
+
+    private Rectangle getSourceRegion(ImageTransformationService.CropOptions crop, Dimension size) {
+        Rectangle bounds = new Rectangle(size);
+        if (crop == null) {
+            return bounds;
+        }
+
+        Rectangle region = bounds.intersection(new Rectangle(crop.getX(), crop.getY(), crop.getWidth(), crop.getHeight()));
+        if (region.isEmpty()) {
+            throw new IllegalArgumentException("Crop region lies outside of the image");
+        }
+        return region;
+    }
+
+    private Dimension getTargetSize(ImageTransformationService.ResizeOptions resize, int width, int height) {
+        Dimension size = new Dimension(width, height);
+        if (resize == null || (resize.getWidth() == null && resize.getHeight() == null)) {
+            return size;
+        }
+        return TransformationPlanner.getTargetSize(resize, size);
+    }
+
+    private void write(BufferedImage image, String outputFormat, OutputStream outputStream) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(outputFormat);
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer available for format: " + outputFormat);
+        }
+
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(outputStream)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), writer.getDefaultWriteParam());
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private ImageReader getReader(ImageInputStream input) throws IOException {
+        if (input == null) {
+            throw new IOException("Unable to open image source");
+        }
+
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format");
+        }
+
+        ImageReader reader = readers.next();
+        // Metadata is kept for the embedded color profile and the EXIF orientation
+        reader.setInput(input, true, false);
+        return reader;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.imageprocessing.image;
+
+import com.example.imageprocessing.timing.RequestTimings;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.awt.*;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer instrumentation for the transform path. Every stage (S3 download, decode, transform,
+ * encode, S3 upload, database save, ...) is recorded as {@code image.transform.stage} with
+ * {@code stage}, {@code format} and {@code size} tags and a percentile histogram, so latency can
+ * be attributed per stage on the Prometheus endpoint. Bytes read and written are counted as
+ * {@code image.transform.bytes.in} and {@code image.transform.bytes.out}, requests served by an
+ * identical transformation in progress as {@code image.transform.coalesced}.
+ *
+ * Stage durations are also added to the {@link RequestTimings} of the current request so they
+ * show up in its {@code Server-Timing} header.
+ */
+@Component
+public class TransformMetrics {
+    public static final String STAGE_S3_DOWNLOAD = "s3_download";
+    public static final String STAGE_S3_COPY = "s3_copy";
+    public static final String STAGE_DECODE = "decode";
+    public static final String STAGE_TRANSFORM = "transform";
+    public static final String STAGE_ENCODE = "encode";
+    public static final String STAGE_LOSSLESS_JPEG = "lossless_jpeg";
+    public static final String STAGE_TILED = "tiled";
+    public static final String STAGE_ANIMATED = "animated";
+    public static final String STAGE_S3_UPLOAD = "s3_upload";
+    public static final String STAGE_DB_SAVE = "db_save";
+
+    private final MeterRegistry registry;
+
+    public TransformMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @FunctionalInterface
+    public interface Stage<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Runs one stage of a transformation and records its duration, whether it succeeds or fails.
+     */
+    public <T> T time(String stage, TransformationPlan plan, Stage<T> work) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return work.run();
+        } finally {
+            record(stage, plan, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a stage that was measured by the caller, for stages whose tags are only known once they finished.
+     */
+    public void record(String stage, TransformationPlan plan, long durationNanos) {
+        timer(stage, plan).record(durationNanos, TimeUnit.NANOSECONDS);
+        String requestStage = toRequestStage(stage);
+        if (requestStage != null) {
+            RequestTimings.record(requestStage, durationNanos);
+        }
+    }
+
+    public void recordBytesIn(TransformationPlan plan, long bytes) {
+        counter("image.transform.bytes.in", "Bytes of source images read by transformations", plan).increment(bytes);
+    }
+
+    public void recordBytesOut(TransformationPlan plan, long bytes) {
+        counter("image.transform.bytes.out", "Bytes of transformed images written", plan).increment(bytes);
+    }
+
+    public void recordCoalesced() {
+        Counter.builder("image.transform.coalesced")
+                .description("Transformations answered by an identical one already in progress")
+                .register(registry)
+                .increment();
+    }
+
+    private Timer timer(String stage, TransformationPlan plan) {
+        return Timer.builder("image.transform.stage")
+                .description("Duration of one stage of an image transformation")
+                .tag("stage", stage)
+                .tag("format", plan.getOutputFormat())
+                .tag("size", sizeBucket(plan.getSourceSize()))
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Counter counter(String name, String description, TransformationPlan plan) {
+        return Counter.builder(name)
+                .description(description)
+                .baseUnit("bytes")
+                .tag("format", plan.getOutputFormat())
+                .tag("size", sizeBucket(plan.getSourceSize()))
+                .register(registry);
+    }
+
+    // Database time is already attributed per request by the repository aspect
+    private static String toRequestStage(String stage) {
+        switch (stage) {
+            case STAGE_S3_DOWNLOAD:
+                return RequestTimings.S3_GET;
+            case STAGE_S3_UPLOAD:
+                return RequestTimings.S3_PUT;
+            case STAGE_S3_COPY:
+                return RequestTimings.S3_COPY;
+            case STAGE_DECODE:
+                return RequestTimings.DECODE;
+            case STAGE_ENCODE:
+                return RequestTimings.ENCODE;
+            case STAGE_TRANSFORM:
+            case STAGE_LOSSLESS_JPEG:
+            case STAGE_TILED:
+            case STAGE_ANIMATED:
+                return RequestTimings.PROCESS;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Coarse source-size buckets keep the tag cardinality low while separating thumbnails from camera originals.
+     */
+    static String sizeBucket(Dimension size) {
+        if (size == null) {
+            return "unknown";
+        }
+
+        long pixels = (long) size.width * size.height;
+        if (pixels <= 500_000) {
+            return "le_0.5mp";
+        } else if (pixels <= 2_000_000) {
+            return "le_2mp";
+        } else if (pixels <= 8_000_000) {
+            return "le_8mp";
+        } else if (pixels <= 24_000_000) {
+            return "le_24mp";
+        }
+        return "gt_24mp";
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.imageprocessing.image;
+
+import java.awt.*;
+import java.util.List;
+
+/**
+ * Normalized, ready-to-execute form of {@link ImageTransformationService.TransformationOptions}.
+ * Operations that would not change the image are already removed and the remaining ones are
+ * applied in the order crop, resize, rotate, filters, watermark.
+ */
+public class TransformationPlan {
+    private final ImageTransformationService.CropOptions crop;
+    private final ImageTransformationService.ResizeOptions resize;
+    private final int rotation;
+    private final ImageTransformationService.FilterOptions filters;
+    private final ImageTransformationService.WatermarkOptions watermark;
+    private final String sourceFormat;
+    private final String outputFormat;
+    private final Dimension sourceSize;
+    private final List<String> decisions;
+
+    public TransformationPlan(ImageTransformationService.CropOptions crop, ImageTransformationService.ResizeOptions resize,
+                              int rotation, ImageTransformationService.FilterOptions filters,
+                              ImageTransformationService.WatermarkOptions watermark,
+                              String sourceFormat, String outputFormat, Dimension sourceSize, List<String> decisions) {
+        this.crop = crop;
+        this.resize = resize;
+        this.rotation = rotation;
+        this.filters = filters;
+        this.watermark = watermark;
+        this.sourceFormat = sourceFormat;
+        this.outputFormat = outputFormat;
+        this.sourceSize = sourceSize;
+        this.decisions = List.copyOf(decisions);
+    }
+
+    public ImageTransformationService.CropOptions getCrop() { return crop; }
+    public ImageTransformationService.ResizeOptions getResize() { return resize; }
+    public int getRotation() { return rotation; }
+    public ImageTransformationService.FilterOptions getFilters() { return filters; }
+    public ImageTransformationService.WatermarkOptions getWatermark() { return watermark; }
+    public String getSourceFormat() { return sourceFormat; }
+    public String getOutputFormat() { return outputFormat; }
+    public Dimension getSourceSize() { return sourceSize; }
+    public List<String> getDecisions() { return decisions; }
+
+    public boolean hasPixelOperations() {
+        return crop != null || resize != null || rotation != 0 || filters != null || watermark != null;
+    }
+
+    /**
+     * True when executing the plan would reproduce the source image, so its bytes can be reused as-is.
+     */
+    public boolean isIdentity() {
+        return !hasPixelOperations() && outputFormat.equals(sourceFormat);
+    }
+
+    public String getOutputContentType() {
+        switch (outputFormat) {
+            case "png":
+                return "image/png";
+            case "gif":
+                return "image/gif";
+            case "bmp":
+                return "image/bmp";
+            case "webp":
+                return "image/webp";
+            default:
+                return "image/jpeg";
+        }
+    }
+
+    /**
+     * Converts the plan back into options for the execution paths that consume options directly.
+     */
+    public ImageTransformationService.TransformationOptions toOptions() {
+        ImageTransformationService.TransformationOptions options = new ImageTransformationService.TransformationOptions();
+        options.setCrop(crop);
+        options.setResize(resize);
+        options.setRotate(rotation == 0 ? null : rotation);
+        options.setFilters(filters);
+        options.setWatermark(watermark);
+        options.setFormat(outputFormat);
+        return options;
+    }
+}
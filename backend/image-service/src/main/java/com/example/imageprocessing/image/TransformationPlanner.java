@@ -0,0 +1,320 @@
+package com.example.imageprocessing.image;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Normalizes {@link ImageTransformationService.TransformationOptions} into a {@link TransformationPlan}:
+ * crops run before resizes, rotations are folded into [0, 360), and operations that would not
+ * change the image are dropped. Every decision is logged with a rough cost estimate in
+ * megapixels touched, which is what dominates transform latency.
+ */
+@Component
+public class TransformationPlanner {
+    private static final Logger logger = LoggerFactory.getLogger(TransformationPlanner.class);
+
+    /**
+     * Plans a transformation of the given source.
+     *
+     * @param sourceSize the source dimensions if known; without them identity crops and resizes
+     *                   cannot be detected and costs are reported as unknown
+     */
+    public TransformationPlan plan(Image source, ImageTransformationService.TransformationOptions options, Dimension sourceSize) {
+        List<String> decisions = new ArrayList<>();
+        Dimension current = sourceSize == null ? null : new Dimension(sourceSize);
+        double cost = pixels(current);
+        decisions.add("decode " + describe(current) + " ~" + megapixels(pixels(current)));
+
+        ImageTransformationService.CropOptions crop = planCrop(options.getCrop(), current, decisions);
+        if (crop != null && current != null) {
+            current = new Rectangle(0, 0, current.width, current.height)
+                    .intersection(new Rectangle(crop.getX(), crop.getY(), crop.getWidth(), crop.getHeight())).getSize();
+        }
+
+        ImageTransformationService.ResizeOptions resize = planResize(options.getResize(), current, decisions);
+        if (resize != null && current != null) {
+            Dimension target = getTargetSize(resize, current);
+            cost += pixels(current) + pixels(target);
+            current = target;
+        }
+
+        int rotation = planRotation(options.getRotate(), current, decisions);
+        if (rotation != 0) {
+            cost += pixels(current);
+            if (current != null && rotation % 180 != 0) {
+                current = new Dimension(current.height, current.width);
+            }
+        }
+
+        ImageTransformationService.FilterOptions filters = planFilters(options.getFilters(), current, decisions);
+        if (filters != null) {
+            cost += pixels(current) * (ConvolutionFilter.appliesTo(filters) ? 3 : 1);
+        }
+
+        ImageTransformationService.WatermarkOptions watermark = planWatermark(options.getWatermark(), current, decisions);
+        if (watermark != null) {
+            cost += pixels(current);
+        }
+
+        String sourceFormat = getSourceFormat(source.getContentType());
+        String outputFormat = getOutputFormat(options.getFormat(), sourceFormat);
+        if (!outputFormat.equals(sourceFormat)) {
+            decisions.add("convert " + (sourceFormat == null ? "unknown" : sourceFormat) + " -> " + outputFormat);
+        }
+
+        boolean identity = crop == null && resize == null && rotation == 0 && filters == null && watermark == null
+                && outputFormat.equals(sourceFormat);
+        if (identity) {
+            decisions.add("result is identical to the source: server-side copy, no decode or encode");
+            cost = 0;
+        } else {
+            cost += pixels(current);
+            decisions.add("encode " + outputFormat + " " + describe(current) + " ~" + megapixels(pixels(current)));
+        }
+
+        logger.info("Planned transformation of {}: {} (estimated cost ~{})",
+                source.getFilename(), String.join("; ", decisions), megapixels(cost));
+        return new TransformationPlan(crop, resize, rotation, filters, watermark, sourceFormat, outputFormat, sourceSize, decisions);
+    }
+
+    private ImageTransformationService.CropOptions planCrop(ImageTransformationService.CropOptions crop, Dimension size,
+                                                            List<String> decisions) {
+        if (crop == null) {
+            return null;
+        }
+        if (crop.getWidth() == null || crop.getHeight() == null || crop.getWidth() <= 0 || crop.getHeight() <= 0) {
+            decisions.add("drop crop without a positive width and height");
+            return null;
+        }
+
+        ImageTransformationService.CropOptions normalized = new ImageTransformationService.CropOptions();
+        normalized.setX(crop.getX() == null ? 0 : crop.getX());
+        normalized.setY(crop.getY() == null ? 0 : crop.getY());
+        normalized.setWidth(crop.getWidth());
+        normalized.setHeight(crop.getHeight());
+
+        if (size != null && normalized.getX() <= 0 && normalized.getY() <= 0
+                && normalized.getX() + normalized.getWidth() >= size.width
+                && normalized.getY() + normalized.getHeight() >= size.height) {
+            decisions.add("drop crop covering the whole " + describe(size) + " image");
+            return null;
+        }
+
+        // Crop runs first so every later stage only touches the pixels that survive it
+        decisions.add(String.format("crop %dx%d+%d+%d first ~0 Mpx", normalized.getWidth(), normalized.getHeight(),
+                normalized.getX(), normalized.getY()));
+        return normalized;
+    }
+
+    private ImageTransformationService.ResizeOptions planResize(ImageTransformationService.ResizeOptions resize, Dimension size,
+                                                                List<String> decisions) {
+        if (resize == null) {
+            return null;
+        }
+        if (resize.getWidth() == null && resize.getHeight() == null) {
+            decisions.add("drop resize without dimensions");
+            return null;
+        }
+        if (size != null && getTargetSize(resize, size).equals(size)) {
+            decisions.add("drop resize to the current " + describe(size) + " size");
+            return null;
+        }
+
+        Dimension target = size == null ? null : getTargetSize(resize, size);
+        decisions.add("resize " + describe(size) + " -> " + describe(target)
+                + " ~" + megapixels(pixels(size) + pixels(target)));
+        return resize;
+    }
+
+    private int planRotation(Integer rotate, Dimension size, List<String> decisions) {
+        if (rotate == null) {
+            return 0;
+        }
+
+        int rotation = Math.floorMod(rotate, 360);
+        if (rotation == 0) {
+            if (rotate != 0) {
+                decisions.add("fold rotation " + rotate + " to a no-op");
+            }
+            return 0;
+        }
+        if (rotation != rotate) {
+            decisions.add("fold rotation " + rotate + " to " + rotation);
+        }
+        decisions.add("rotate " + rotation + " ~" + megapixels(pixels(size)));
+        return rotation;
+    }
+
+    private ImageTransformationService.FilterOptions planFilters(ImageTransformationService.FilterOptions filters, Dimension size,
+                                                                 List<String> decisions) {
+        if (filters == null) {
+            return null;
+        }
+        requireNonNegative("brightness", filters.getBrightness());
+        requireNonNegative("contrast", filters.getContrast());
+        requireNonNegative("saturation", filters.getSaturation());
+        if (filters.getHue() != null && !Double.isFinite(filters.getHue())) {
+            throw new IllegalArgumentException("hue must be a finite number of degrees");
+        }
+        requireRange("blur", filters.getBlur(), 0, ConvolutionFilter.MAX_SIGMA);
+        requireRange("sharpen", filters.getSharpen(), 0, ConvolutionFilter.MAX_SHARPEN_AMOUNT);
+        requireRange("sharpenRadius", filters.getSharpenRadius(), 0.1, ConvolutionFilter.MAX_SIGMA);
+        boolean convolution = ConvolutionFilter.appliesTo(filters);
+        if (countFilters(filters) == 0 || (ColorMatrix.of(filters).isIdentity() && !convolution)) {
+            decisions.add("drop filter set that leaves the image unchanged");
+            return null;
+        }
+
+        // Point filters are composed into one color matrix, so any number of them is a single pass;
+        // blur and sharpen are a row and a column pass each, whatever the radius
+        decisions.add(countFilters(filters) + " filter(s) fused into one color-matrix pass ~" + megapixels(pixels(size)));
+        if (convolution) {
+            decisions.add("separable blur/sharpen ~" + megapixels(pixels(size) * 2));
+        }
+        return filters;
+    }
+
+    private ImageTransformationService.WatermarkOptions planWatermark(ImageTransformationService.WatermarkOptions watermark,
+                                                                      Dimension size, List<String> decisions) {
+        if (watermark == null) {
+            return null;
+        }
+        boolean text = watermark.getText() != null;
+        if (text == (watermark.getImageId() != null)) {
+            throw new IllegalArgumentException("watermark needs either text or an imageId");
+        }
+        if (text && (watermark.getText().isBlank() || watermark.getText().length() > WatermarkRenderer.MAX_TEXT_LENGTH)) {
+            throw new IllegalArgumentException("watermark text must be 1 to " + WatermarkRenderer.MAX_TEXT_LENGTH + " characters");
+        }
+        requireRange("watermark opacity", watermark.getOpacity(), 0, 1);
+        if (watermark.getScale() != null && !(watermark.getScale() > 0 && watermark.getScale() <= 1)) {
+            throw new IllegalArgumentException("watermark scale must be greater than 0 and at most 1");
+        }
+        String position = WatermarkRenderer.position(watermark);
+        if (!WatermarkRenderer.POSITIONS.contains(position)) {
+            throw new IllegalArgumentException("watermark position must be one of " + WatermarkRenderer.POSITIONS);
+        }
+        Color color = WatermarkRenderer.color(watermark);
+        if (WatermarkRenderer.opacity(watermark) == 0) {
+            decisions.add("drop fully transparent watermark");
+            return null;
+        }
+
+        // Defaults are filled in so equivalent requests share one overlay and one coalescing key
+        ImageTransformationService.WatermarkOptions normalized = new ImageTransformationService.WatermarkOptions();
+        normalized.setText(watermark.getText());
+        normalized.setImageId(watermark.getImageId());
+        normalized.setPosition(position);
+        normalized.setOpacity(WatermarkRenderer.opacity(watermark));
+        normalized.setScale(WatermarkRenderer.scale(watermark));
+        normalized.setTile(Boolean.TRUE.equals(watermark.getTile()));
+        if (text) {
+            normalized.setColor(String.format("#%06x", color.getRGB() & 0xFFFFFF));
+        }
+        // The overlay is rendered once and cached, so a request pays only for blending it
+        decisions.add("watermark " + (text ? "text" : "image " + watermark.getImageId())
+                + (normalized.getTile() ? " tiled" : " at " + position) + " ~" + megapixels(pixels(size)));
+        return normalized;
+    }
+
+    private int countFilters(ImageTransformationService.FilterOptions filters) {
+        int count = 0;
+        if (Boolean.TRUE.equals(filters.getGrayscale())) count++;
+        if (Boolean.TRUE.equals(filters.getSepia())) count++;
+        if (filters.getBrightness() != null) count++;
+        if (filters.getContrast() != null) count++;
+        if (filters.getSaturation() != null) count++;
+        if (filters.getHue() != null) count++;
+        if (Boolean.TRUE.equals(filters.getInvert())) count++;
+        if (filters.getBlur() != null) count++;
+        if (filters.getSharpen() != null) count++;
+        return count;
+    }
+
+    private static void requireRange(String name, Double value, double min, double max) {
+        if (value != null && !(value >= min && value <= max)) {
+            throw new IllegalArgumentException(name + " must be between " + min + " and " + max);
+        }
+    }
+
+    private static void requireNonNegative(String name, Double value) {
+        if (value != null && !(value >= 0 && Double.isFinite(value))) {
+            throw new IllegalArgumentException(name + " must be a non-negative number");
+        }
+    }
+
+    // Mirrors Thumbnailator's sizing rules: a width and height box keeps the aspect ratio
+    static Dimension getTargetSize(ImageTransformationService.ResizeOptions resize, Dimension size) {
+        double scale;
+        if (resize.getWidth() != null && resize.getHeight() != null) {
+            scale = Math.min((double) resize.getWidth() / size.width, (double) resize.getHeight() / size.height);
+        } else if (resize.getWidth() != null) {
+            scale = (double) resize.getWidth() / size.width;
+        } else {
+            scale = (double) resize.getHeight() / size.height;
+        }
+
+        return new Dimension(Math.max(1, (int) Math.round(size.width * scale)), Math.max(1, (int) Math.round(size.height * scale)));
+    }
+
+    static String getSourceFormat(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+
+        switch (contentType.toLowerCase()) {
+            case "image/jpeg":
+            case "image/jpg":
+                return "jpg";
+            case "image/png":
+                return "png";
+            case "image/gif":
+                return "gif";
+            case "image/bmp":
+                return "bmp";
+            case "image/webp":
+                return "webp";
+            default:
+                return null;
+        }
+    }
+
+    private String getOutputFormat(String requestedFormat, String sourceFormat) {
+        if (requestedFormat == null || requestedFormat.isEmpty()) {
+            // Keep the source format when ImageIO can write it, so untouched images are not re-encoded
+            if ("jpg".equals(sourceFormat) || "png".equals(sourceFormat) || "gif".equals(sourceFormat)
+                    || "bmp".equals(sourceFormat)) {
+                return sourceFormat;
+            }
+            return "jpg";
+        }
+
+        switch (requestedFormat.toLowerCase()) {
+            case "png":
+                return "png";
+            case "gif":
+                return "gif";
+            case "webp":
+                return "webp";
+            default:
+                return "jpg";
+        }
+    }
+
+    private static double pixels(Dimension size) {
+        return size == null ? Double.NaN : (double) size.width * size.height;
+    }
+
+    private static String megapixels(double pixels) {
+        return Double.isNaN(pixels) ? "unknown" : String.format("%.1f Mpx", pixels / 1_000_000);
+    }
+
+    private static String describe(Dimension size) {
+        return size == null ? "?x?" : size.width + "x" + size.height;
+    }
+}
@@ -3,10 +3,13 @@ package com.example.imageprocessing.image;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,6 +24,9 @@ public interface TransformedImageRepository extends JpaRepository<TransformedIma
     
     // Find all transformations of a specific original image for a user
     List<TransformedImage> findByOriginalImageIdAndUserId(Long originalImageId, Long userId);
+
+    // Find all transformations of several original images for a user
+    List<TransformedImage> findByOriginalImageIdInAndUserId(Collection<Long> originalImageIds, Long userId);
     
     // Find a specific transformed image by ID and user (for security)
     Optional<TransformedImage> findByIdAndUserId(Long id, Long userId);
@@ -33,7 +39,17 @@ public interface TransformedImageRepository extends JpaRepository<TransformedIma
     long countByOriginalImageIdAndUserId(@Param("originalImageId") Long originalImageId, @Param("userId") Long userId);
     
     // Delete all transformations for a specific original image (useful when deleting original)
-    void deleteByOriginalImageIdAndUserId(Long originalImageId, Long userId);
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM TransformedImage t WHERE t.originalImageId = :originalImageId AND t.userId = :userId")
+    int deleteByOriginalImageIdAndUserId(@Param("originalImageId") Long originalImageId, @Param("userId") Long userId);
+
+    // Delete all transformations of several original images in one statement
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM TransformedImage t WHERE t.originalImageId IN :originalImageIds AND t.userId = :userId")
+    int deleteByOriginalImageIdInAndUserId(@Param("originalImageIds") Collection<Long> originalImageIds,
+                                           @Param("userId") Long userId);
     
     // Find recent transformations for a user
     @Query("SELECT t FROM TransformedImage t WHERE t.userId = :userId ORDER BY t.createdAt DESC")
@@ -4,7 +4,9 @@ import com.example.imageprocessing.user.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
@@ -13,6 +15,7 @@ import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignReques
 import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class TransformedImageService {
@@ -22,20 +25,24 @@ public class TransformedImageService {
     private final UserRepository userRepository;
     private final S3Client s3Client;
     private final S3Presigner s3Presigner;
+    private final S3BatchDeleter s3BatchDeleter;
 
     @Value("${aws.s3.bucket:project-image-processing-service-bucket}")
     private String bucket;
 
     public TransformedImageService(TransformedImageRepository transformedImageRepository,
                                  UserRepository userRepository,
-                                 S3Client s3Client,
-                                 S3Presigner s3Presigner) {
+                                 @Lazy S3Client s3Client,
+                                 @Lazy S3Presigner s3Presigner,
+                                 S3BatchDeleter s3BatchDeleter) {
         this.transformedImageRepository = transformedImageRepository;
         this.userRepository = userRepository;
         this.s3Client = s3Client;
         this.s3Presigner = s3Presigner;
+        this.s3BatchDeleter = s3BatchDeleter;
     }
 
+    @Transactional(readOnly = true)
     public List<TransformedImage> getTransformationsForImage(Long originalImageId, String username) {
         Long userId = userRepository.findFirstByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"))
@@ -44,6 +51,7 @@ public class TransformedImageService {
         return transformedImageRepository.findByOriginalImageIdAndUserId(originalImageId, userId);
     }
 
+    @Transactional(readOnly = true)
     public List<TransformedImage> getUserTransformedImages(String username) {
         Long userId = userRepository.findFirstByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"))
@@ -52,6 +60,7 @@ public class TransformedImageService {
         return transformedImageRepository.findByUserId(userId);
     }
 
+    @Transactional(readOnly = true)
     public Optional<TransformedImage> getTransformedImageById(Long transformedImageId, String username) {
         Long userId = userRepository.findFirstByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"))
@@ -60,6 +69,7 @@ public class TransformedImageService {
         return transformedImageRepository.findByIdAndUserId(transformedImageId, userId);
     }
 
+    @Transactional(readOnly = true)
     public String generatePresignedDownloadUrlForTransformedImage(Long transformedImageId, String username) {
         Optional<TransformedImage> transformedImageOpt = getTransformedImageById(transformedImageId, username);
         if (transformedImageOpt.isEmpty()) {
@@ -124,21 +134,13 @@ public class TransformedImageService {
         
         List<TransformedImage> transformations = transformedImageRepository.findByOriginalImageIdAndUserId(originalImageId, userId);
         
-        for (TransformedImage transformation : transformations) {
-            try {
-                // Delete from S3
-                software.amazon.awssdk.services.s3.model.DeleteObjectRequest deleteRequest = 
-                    software.amazon.awssdk.services.s3.model.DeleteObjectRequest.builder()
-                        .bucket(bucket)
-                        .key(transformation.getTransformedFilename())
-                        .build();
-                
-                s3Client.deleteObject(deleteRequest);
-                logger.info("Deleted transformed image from S3: {}", transformation.getTransformedFilename());
-                
-            } catch (Exception e) {
-                logger.warn("Failed to delete transformed image from S3: {}", transformation.getTransformedFilename(), e);
-            }
+        // Delete from S3 in batches instead of one request per derivative
+        Set<String> failedKeys = s3BatchDeleter.deleteObjects(transformations.stream()
+                .map(TransformedImage::getTransformedFilename)
+                .toList());
+        if (!failedKeys.isEmpty()) {
+            logger.warn("Failed to delete {} transformed image(s) from S3 for original image ID: {}",
+                       failedKeys.size(), originalImageId);
         }
         
         // Delete all from database
@@ -0,0 +1,59 @@
+package com.example.imageprocessing.image;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD kernel of {@link ColorMatrix}: unpacks as many ARGB pixels as the CPU's preferred vector
+ * holds, computes the four output channels in 32-bit fixed-point lanes and packs them back. Only
+ * loaded when the {@code jdk.incubator.vector} module is present.
+ */
+final class VectorColorMatrix {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private VectorColorMatrix() {
+    }
+
+    /**
+     * Processes whole vectors from the start of {@code pixels} and returns how many pixels were
+     * done; the caller finishes the rest with the scalar loop. Returns 0 for matrices whose sums
+     * could overflow 32 bits, which only extreme adjustment values produce.
+     */
+    static int apply(int[] m, int[] pixels, int[] result, boolean alpha) {
+        if (SPECIES.length() < 4 || !ColorMatrix.fitsInInts(m)) {
+            return 0;
+        }
+        int bound = SPECIES.loopBound(pixels.length);
+        IntVector opaque = IntVector.broadcast(SPECIES, 0xFF);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            IntVector pixel = IntVector.fromArray(SPECIES, pixels, i);
+            IntVector a = alpha ? pixel.lanewise(VectorOperators.LSHR, 24) : opaque;
+            IntVector r = pixel.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+            IntVector g = pixel.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+            IntVector b = pixel.and(0xFF);
+
+            IntVector outR = channel(r, g, b, a, m, 0);
+            IntVector outG = channel(r, g, b, a, m, 5);
+            IntVector outB = channel(r, g, b, a, m, 10);
+            IntVector outA = alpha ? channel(r, g, b, a, m, 15) : opaque;
+            outA.lanewise(VectorOperators.LSHL, 24)
+                    .or(outR.lanewise(VectorOperators.LSHL, 16))
+                    .or(outG.lanewise(VectorOperators.LSHL, 8))
+                    .or(outB)
+                    .intoArray(result, i);
+        }
+        return bound;
+    }
+
+    private static IntVector channel(IntVector r, IntVector g, IntVector b, IntVector a, int[] m, int row) {
+        return r.mul(m[row])
+                .add(g.mul(m[row + 1]))
+                .add(b.mul(m[row + 2]))
+                .add(a.mul(m[row + 3]))
+                .add(m[row + 4] + ColorMatrix.HALF)
+                .lanewise(VectorOperators.ASHR, ColorMatrix.FRACTION_BITS)
+                .max(0)
+                .min(255);
+    }
+}
@@ -0,0 +1,362 @@
+package com.example.imageprocessing.image;
+
+import com.example.imageprocessing.timing.RequestTimings;
+import net.coobird.thumbnailator.Thumbnails;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Composites a text or logo watermark over transformed images.
+ *
+ * Overlays are rendered once per source, size and opacity into premultiplied ARGB ints with the
+ * opacity already applied, and kept in a cache bounded by {@code image.watermark.cache-max-bytes};
+ * logos are downloaded and decoded once and kept in a second, smaller cache. Compositing a cached
+ * overlay is then a single source-over pass over the int arrays of the overlay and the image, so
+ * a watermark costs the same whether it is text or a logo, and every frame of an animation reuses
+ * the same overlay.
+ */
+@Component
+public class WatermarkRenderer {
+    private static final Logger logger = LoggerFactory.getLogger(WatermarkRenderer.class);
+
+    static final Set<String> POSITIONS = Set.of("top-left", "top", "top-right", "left", "center", "right",
+            "bottom-left", "bottom", "bottom-right");
+    static final String DEFAULT_POSITION = "bottom-right";
+    static final double DEFAULT_OPACITY = 0.5;
+    // Overlay width as a fraction of the image width
+    static final double DEFAULT_SCALE = 0.25;
+    static final int MAX_TEXT_LENGTH = 200;
+    // Logos are kept at most this large on their longest side; overlays never need more
+    private static final int MAX_LOGO_SIDE = 2048;
+    // Margin to the image edges and gap between tiles, as a fraction of the image's shorter side
+    private static final double MARGIN = 0.02;
+
+    private final ImageRepository imageRepository;
+    private final S3Client s3Client;
+    private final ColorProfileConverter colorProfileConverter;
+    private final BoundedCache<OverlayKey, Overlay> overlays;
+    private final BoundedCache<Long, BufferedImage> logos;
+
+    @Value("${aws.s3.bucket:project-image-processing-service-bucket}")
+    private String bucket;
+
+    public WatermarkRenderer(ImageRepository imageRepository, @Lazy S3Client s3Client,
+                             ColorProfileConverter colorProfileConverter,
+                             @Value("${image.watermark.cache-max-bytes:67108864}") long cacheMaxBytes,
+                             @Value("${image.watermark.logo-cache-max-bytes:33554432}") long logoCacheMaxBytes) {
+        this.imageRepository = imageRepository;
+        this.s3Client = s3Client;
+        this.colorProfileConverter = colorProfileConverter;
+        this.overlays = new BoundedCache<>(cacheMaxBytes, overlay -> (long) overlay.pixels.length * Integer.BYTES);
+        this.logos = new BoundedCache<>(logoCacheMaxBytes,
+                logo -> (long) logo.getWidth() * logo.getHeight() * Integer.BYTES);
+    }
+
+    /**
+     * Returns the image with the watermark composited over it. The result is RGB for opaque
+     * images and ARGB otherwise.
+     */
+    public BufferedImage apply(BufferedImage image, ImageTransformationService.WatermarkOptions watermark) throws IOException {
+        return applyToBand(image, 0, image.getHeight(), watermark);
+    }
+
+    /**
+     * Like {@link #apply}, for a band of rows {@code [y, y + band height)} of a taller image that
+     * is {@code height} rows high: the watermark is laid out for the whole image and only the part
+     * falling into the band is composited. Lets the tiled path watermark its output strip by strip.
+     */
+    public BufferedImage applyToBand(BufferedImage band, int y, int height,
+                                     ImageTransformationService.WatermarkOptions watermark) throws IOException {
+        if (watermark == null) {
+            return band;
+        }
+        int imageWidth = band.getWidth();
+        int margin = (int) Math.round(Math.min(imageWidth, height) * MARGIN);
+        int maxWidth = Math.max(1, imageWidth - 2 * margin);
+        int width = Math.min(maxWidth, Math.max(1, (int) Math.round(imageWidth * scale(watermark))));
+        Overlay overlay = overlay(watermark, width, height);
+
+        boolean alpha = band.getColorModel().hasAlpha();
+        BufferedImage output = writableCopy(band, alpha);
+        int[] pixels = ((DataBufferInt) output.getRaster().getDataBuffer()).getData();
+        if (Boolean.TRUE.equals(watermark.getTile())) {
+            int stepX = overlay.width + margin * 4;
+            int stepY = overlay.height + margin * 4;
+            for (int row = margin; row < height; row += stepY) {
+                if (row + overlay.height <= y || row >= y + output.getHeight()) {
+                    continue;
+                }
+                // Every other row is shifted by half a step so the tiles do not line up in columns
+                int shift = ((row - margin) / stepY) % 2 == 0 ? 0 : stepX / 2;
+                for (int x = margin - shift; x < imageWidth; x += stepX) {
+                    blend(overlay, pixels, imageWidth, output.getHeight(), x, row - y, alpha);
+                }
+            }
+        } else {
+            Point origin = origin(position(watermark), imageWidth, height, overlay, margin);
+            blend(overlay, pixels, imageWidth, output.getHeight(), origin.x, origin.y - y, alpha);
+        }
+        return output;
+    }
+
+    static double scale(ImageTransformationService.WatermarkOptions watermark) {
+        return watermark.getScale() == null ? DEFAULT_SCALE : watermark.getScale();
+    }
+
+    static double opacity(ImageTransformationService.WatermarkOptions watermark) {
+        return watermark.getOpacity() == null ? DEFAULT_OPACITY : watermark.getOpacity();
+    }
+
+    static String position(ImageTransformationService.WatermarkOptions watermark) {
+        return watermark.getPosition() == null ? DEFAULT_POSITION : watermark.getPosition().toLowerCase();
+    }
+
+    static Color color(ImageTransformationService.WatermarkOptions watermark) {
+        String color = watermark.getColor();
+        if (color == null) {
+            return Color.WHITE;
+        }
+        if (!color.matches("#?[0-9a-fA-F]{6}")) {
+            throw new IllegalArgumentException("watermark color must be a hex RGB value such as #ffffff");
+        }
+        return new Color(Integer.parseInt(color.startsWith("#") ? color.substring(1) : color, 16));
+    }
+
+    private Overlay overlay(ImageTransformationService.WatermarkOptions watermark, int width, int imageHeight) throws IOException {
+        int opacity = (int) Math.round(opacity(watermark) * 255);
+        BufferedImage logo = null;
+        int height = 0;
+        String source;
+        if (watermark.getImageId() != null) {
+            logo = logo(watermark.getImageId());
+            height = Math.max(1, (int) Math.round((double) logo.getHeight() * width / logo.getWidth()));
+            // A tall logo is fitted to the image height instead
+            if (height > imageHeight) {
+                width = Math.max(1, (int) Math.round((double) logo.getWidth() * imageHeight / logo.getHeight()));
+                height = imageHeight;
+            }
+            source = "image:" + watermark.getImageId();
+        } else {
+            source = "text:" + color(watermark).getRGB() + ":" + watermark.getText();
+        }
+        OverlayKey key = new OverlayKey(source, width, height, opacity);
+        Overlay overlay = overlays.get(key);
+        RequestTimings.detail("watermark_cache", overlay == null ? "miss" : "hit");
+        if (overlay == null) {
+            BufferedImage rendered = logo != null
+                    ? Thumbnails.of(logo).forceSize(width, height).imageType(BufferedImage.TYPE_INT_ARGB).asBufferedImage()
+                    : renderText(watermark.getText(), color(watermark), width);
+            overlay = Overlay.of(rendered, opacity);
+            overlays.put(key, overlay);
+        }
+        return overlay;
+    }
+
+    private BufferedImage logo(long imageId) throws IOException {
+        BufferedImage logo = logos.get(imageId);
+        if (logo == null) {
+            logo = loadLogo(imageId);
+            logos.put(imageId, logo);
+        }
+        return logo;
+    }
+
+    private BufferedImage loadLogo(long imageId) throws IOException {
+        Image image = imageRepository.findById(imageId)
+                .orElseThrow(() -> new IllegalArgumentException("Watermark image not found: " + imageId));
+        BufferedImage decoded;
+        try (ResponseInputStream<GetObjectResponse> input = s3Client.getObject(GetObjectRequest.builder()
+                .bucket(bucket).key(image.getFilename()).build())) {
+            decoded = decodeFirstFrame(input);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to download watermark image " + imageId + ": " + e.getMessage(), e);
+        }
+        if (decoded == null) {
+            throw new IllegalArgumentException("Watermark image " + imageId + " is not a readable image");
+        }
+        // Logos are usually small; anything larger is kept scaled down so the cache holds more of them
+        if (Math.max(decoded.getWidth(), decoded.getHeight()) > MAX_LOGO_SIDE) {
+            decoded = Thumbnails.of(decoded).size(MAX_LOGO_SIDE, MAX_LOGO_SIDE)
+                    .imageType(BufferedImage.TYPE_INT_ARGB).asBufferedImage();
+        }
+        logger.info("Loaded watermark image {} ({}x{})", imageId, decoded.getWidth(), decoded.getHeight());
+        return decoded;
+    }
+
+    private BufferedImage decodeFirstFrame(InputStream input) throws IOException {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(input)) {
+            Iterator<ImageReader> readers = stream == null ? null : ImageIO.getImageReaders(stream);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, false);
+                return colorProfileConverter.read(reader);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Renders the text antialiased in the given color, with a soft shadow so it stays legible on
+     * light and dark backgrounds, sized so that it is {@code width} pixels wide.
+     */
+    private static BufferedImage renderText(String text, Color color, int width) {
+        Font reference = new Font(Font.SANS_SERIF, Font.BOLD, 100);
+        FontRenderContext context = new FontRenderContext(null, true, true);
+        double referenceWidth = new TextLayout(text, reference, context).getBounds().getWidth();
+        Font font = reference.deriveFont((float) (100 * width / Math.max(1, referenceWidth)));
+        TextLayout layout = new TextLayout(text, font, context);
+        Rectangle bounds = layout.getPixelBounds(context, 0, 0);
+        int shadow = Math.max(1, Math.round(font.getSize2D() / 24));
+
+        BufferedImage image = new BufferedImage(Math.max(1, bounds.width + shadow), Math.max(1, bounds.height + shadow),
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+        graphics.setColor(new Color(0, 0, 0, 128));
+        layout.draw(graphics, -bounds.x + shadow, -bounds.y + shadow);
+        graphics.setColor(color);
+        layout.draw(graphics, -bounds.x, -bounds.y);
+        graphics.dispose();
+        return image;
+    }
+
+    private static Point origin(String position, int width, int height, Overlay overlay, int margin) {
+        int left = margin;
+        int centerX = (width - overlay.width) / 2;
+        int right = width - overlay.width - margin;
+        int top = margin;
+        int centerY = (height - overlay.height) / 2;
+        int bottom = height - overlay.height - margin;
+        return switch (position) {
+            case "top-left" -> new Point(left, top);
+            case "top" -> new Point(centerX, top);
+            case "top-right" -> new Point(right, top);
+            case "left" -> new Point(left, centerY);
+            case "center" -> new Point(centerX, centerY);
+            case "right" -> new Point(right, centerY);
+            case "bottom-left" -> new Point(left, bottom);
+            case "bottom" -> new Point(centerX, bottom);
+            default -> new Point(right, bottom);
+        };
+    }
+
+    /**
+     * A copy of the image as packed RGB or ARGB ints that can be composited into in place.
+     */
+    private static BufferedImage writableCopy(BufferedImage image, boolean alpha) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(),
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ColorMatrix.toPackedPixels(image, copy.getType());
+        System.arraycopy(pixels, 0, ((DataBufferInt) copy.getRaster().getDataBuffer()).getData(), 0, pixels.length);
+        return copy;
+    }
+
+    /**
+     * Source-over of the premultiplied overlay at {@code (originX, originY)}, clipped to the image.
+     */
+    static void blend(Overlay overlay, int[] pixels, int width, int height, int originX, int originY, boolean alpha) {
+        int fromX = Math.max(0, originX);
+        int toX = Math.min(width, originX + overlay.width);
+        int fromY = Math.max(0, originY);
+        int toY = Math.min(height, originY + overlay.height);
+        for (int y = fromY; y < toY; y++) {
+            int source = (y - originY) * overlay.width - originX;
+            int target = y * width;
+            for (int x = fromX; x < toX; x++) {
+                int over = overlay.pixels[source + x];
+                int overAlpha = over >>> 24;
+                if (overAlpha == 0) {
+                    continue;
+                }
+                int under = pixels[target + x];
+                pixels[target + x] = alpha ? overStraight(over, under) : overOpaque(over, under);
+            }
+        }
+    }
+
+    private static int overOpaque(int over, int under) {
+        int inverse = 255 - (over >>> 24);
+        int r = ((over >> 16) & 0xFF) + div255(((under >> 16) & 0xFF) * inverse);
+        int g = ((over >> 8) & 0xFF) + div255(((under >> 8) & 0xFF) * inverse);
+        int b = (over & 0xFF) + div255((under & 0xFF) * inverse);
+        return 0xFF000000 | r << 16 | g << 8 | b;
+    }
+
+    // The image has straight alpha: premultiply it, composite, and divide the result back out
+    private static int overStraight(int over, int under) {
+        int overAlpha = over >>> 24;
+        int underAlpha = under >>> 24;
+        int inverse = div255(underAlpha * (255 - overAlpha));
+        int outAlpha = overAlpha + inverse;
+        int r = ((over >> 16) & 0xFF) * 255 + ((under >> 16) & 0xFF) * inverse;
+        int g = ((over >> 8) & 0xFF) * 255 + ((under >> 8) & 0xFF) * inverse;
+        int b = (over & 0xFF) * 255 + (under & 0xFF) * inverse;
+        int half = outAlpha / 2;
+        return outAlpha << 24 | Math.min(255, (r + half) / outAlpha) << 16
+                | Math.min(255, (g + half) / outAlpha) << 8 | Math.min(255, (b + half) / outAlpha);
+    }
+
+    // x / 255 rounded, for x in [0, 255 * 255]
+    private static int div255(int x) {
+        x += 128;
+        return (x + (x >> 8)) >> 8;
+    }
+
+    private record OverlayKey(String source, int width, int height, int opacity) {
+    }
+
+    /**
+     * A pre-rendered overlay: premultiplied ARGB with the opacity applied.
+     */
+    static final class Overlay {
+        final int[] pixels;
+        final int width;
+        final int height;
+
+        private Overlay(int[] pixels, int width, int height) {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+        }
+
+        static Overlay of(BufferedImage image, int opacity) {
+            int[] pixels = ColorMatrix.toPackedPixels(image, BufferedImage.TYPE_INT_ARGB).clone();
+            for (int i = 0; i < pixels.length; i++) {
+                int pixel = pixels[i];
+                int a = div255((pixel >>> 24) * opacity);
+                int r = div255(((pixel >> 16) & 0xFF) * a);
+                int g = div255(((pixel >> 8) & 0xFF) * a);
+                int b = div255((pixel & 0xFF) * a);
+                pixels[i] = a << 24 | r << 16 | g << 8 | b;
+            }
+            return new Overlay(pixels, image.getWidth(), image.getHeight());
+        }
+    }
+}
@@ -3,14 +3,29 @@ package com.example.imageprocessing.jwt;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 
 @Component
 public class JwtUtil {
-    private final Key key = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+    private final Key key;
+
+    /**
+     * Signs with {@code jwt.secret} when it is set, so every instance of a cluster accepts the same
+     * tokens; otherwise with a random key, which invalidates tokens on restart.
+     */
+    public JwtUtil(@Value("${jwt.secret:}") String secret) {
+        this.key = secret == null || secret.isBlank()
+                ? Keys.secretKeyFor(SignatureAlgorithm.HS256)
+                // Hashing gives a 256-bit key whatever the length of the configured secret
+                : Keys.hmacShaKeyFor(sha256(secret));
+    }
 
     public String generateToken(String username) {
         long now = System.currentTimeMillis();
@@ -30,4 +45,12 @@ public class JwtUtil {
                 .getBody()
                 .getSubject();
     }
+
+    private static byte[] sha256(String secret) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
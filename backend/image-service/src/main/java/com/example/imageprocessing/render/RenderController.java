@@ -0,0 +1,84 @@
+package com.example.imageprocessing.render;
+
+import com.example.imageprocessing.image.Image;
+import com.example.imageprocessing.image.ImageRepository;
+import com.example.imageprocessing.image.ImageTransformationService;
+import com.example.imageprocessing.throttle.ThrottledException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves signed render URLs without authentication. A URL always renders the same bytes, so the
+ * response is marked immutable for a year and a CDN or caching proxy in front of the service
+ * answers repeat requests; the signature doubles as the ETag. The signature is checked before
+ * anything else, so forged or tampered URLs are rejected without touching the database.
+ */
+@RestController
+public class RenderController {
+    private static final Logger logger = LoggerFactory.getLogger(RenderController.class);
+
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable();
+    // Briefly, so an edge cache absorbs repeated requests for a deleted image
+    private static final CacheControl NOT_FOUND = CacheControl.maxAge(60, TimeUnit.SECONDS).cachePublic();
+
+    private final RenderUrlSigner signer;
+    private final ImageRepository imageRepository;
+    private final ImageTransformationService transformationService;
+
+    public RenderController(RenderUrlSigner signer, ImageRepository imageRepository,
+                            ImageTransformationService transformationService) {
+        this.signer = signer;
+        this.imageRepository = imageRepository;
+        this.transformationService = transformationService;
+    }
+
+    @GetMapping("/r/{signature}/{imageId}/{options}")
+    public ResponseEntity<?> render(@PathVariable String signature, @PathVariable long imageId,
+                                    @PathVariable String options,
+                                    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (!signer.verify(signature, imageId, options)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).cacheControl(CacheControl.noStore())
+                    .body("Invalid signature");
+        }
+        String etag = "\"" + signature + "\"";
+        // The content behind a signature never changes, so a matching ETag needs no lookup at all
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(IMMUTABLE).build();
+        }
+
+        Optional<Image> image = imageRepository.findById(imageId);
+        if (image.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).cacheControl(NOT_FOUND).build();
+        }
+        try {
+            ImageTransformationService.RenderResult result =
+                    transformationService.render(image.get(), RenderOptions.parse(options));
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(result.getContentType()))
+                    .eTag(etag)
+                    .cacheControl(IMMUTABLE)
+                    .body(result.getData());
+        } catch (ThrottledException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .cacheControl(CacheControl.noStore())
+                    .body(e.getMessage());
+        } catch (Exception e) {
+            logger.warn("Render of image {} with options {} failed: {}", imageId, options, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).cacheControl(CacheControl.noStore())
+                    .body("Render failed");
+        }
+    }
+}
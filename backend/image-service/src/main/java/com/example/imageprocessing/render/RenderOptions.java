@@ -0,0 +1,172 @@
+package com.example.imageprocessing.render;
+
+import com.example.imageprocessing.image.ImageTransformationService;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Canonical path form of {@link ImageTransformationService.TransformationOptions} for render URLs:
+ * comma-separated tokens in a fixed order, such as {@code crop_0_0_800_600,w_400,gray,f_webp}.
+ * Numbers are written without trailing zeros and watermark text as unpadded base64url, so the same
+ * options always give the same path and therefore the same cache key in front of the service.
+ */
+public final class RenderOptions {
+    /** Path form of options that change nothing. */
+    static final String ORIGINAL = "original";
+
+    private static final Base64.Encoder TEXT_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder TEXT_DECODER = Base64.getUrlDecoder();
+
+    private RenderOptions() {
+    }
+
+    public static String format(ImageTransformationService.TransformationOptions options) {
+        List<String> tokens = new ArrayList<>();
+        ImageTransformationService.CropOptions crop = options.getCrop();
+        if (crop != null) {
+            tokens.add("crop_" + crop.getX() + "_" + crop.getY() + "_" + crop.getWidth() + "_" + crop.getHeight());
+        }
+        ImageTransformationService.ResizeOptions resize = options.getResize();
+        if (resize != null) {
+            add(tokens, "w", resize.getWidth());
+            add(tokens, "h", resize.getHeight());
+        }
+        add(tokens, "rot", options.getRotate());
+
+        ImageTransformationService.FilterOptions filters = options.getFilters();
+        if (filters != null) {
+            flag(tokens, "gray", filters.getGrayscale());
+            flag(tokens, "sepia", filters.getSepia());
+            add(tokens, "bright", filters.getBrightness());
+            add(tokens, "contrast", filters.getContrast());
+            add(tokens, "sat", filters.getSaturation());
+            add(tokens, "hue", filters.getHue());
+            flag(tokens, "invert", filters.getInvert());
+            add(tokens, "blur", filters.getBlur());
+            add(tokens, "sharpen", filters.getSharpen());
+            add(tokens, "sharpenr", filters.getSharpenRadius());
+        }
+
+        ImageTransformationService.WatermarkOptions watermark = options.getWatermark();
+        if (watermark != null) {
+            if (watermark.getText() != null) {
+                tokens.add("wmtext_" + TEXT_ENCODER.encodeToString(watermark.getText().getBytes(StandardCharsets.UTF_8)));
+            }
+            add(tokens, "wmimg", watermark.getImageId());
+            if (watermark.getPosition() != null) {
+                tokens.add("wmpos_" + watermark.getPosition());
+            }
+            add(tokens, "wmop", watermark.getOpacity());
+            add(tokens, "wmscale", watermark.getScale());
+            flag(tokens, "wmtile", watermark.getTile());
+            if (watermark.getColor() != null) {
+                tokens.add("wmcolor_" + watermark.getColor().replace("#", "").toLowerCase());
+            }
+        }
+
+        if (options.getFormat() != null && !options.getFormat().isEmpty()) {
+            tokens.add("f_" + options.getFormat().toLowerCase());
+        }
+        return tokens.isEmpty() ? ORIGINAL : String.join(",", tokens);
+    }
+
+    /**
+     * Parses the path form back into options.
+     *
+     * @throws IllegalArgumentException if a token is unknown or malformed
+     */
+    public static ImageTransformationService.TransformationOptions parse(String path) {
+        ImageTransformationService.TransformationOptions options = new ImageTransformationService.TransformationOptions();
+        if (ORIGINAL.equals(path)) {
+            return options;
+        }
+        for (String token : path.split(",")) {
+            int separator = token.indexOf('_');
+            String name = separator < 0 ? token : token.substring(0, separator);
+            String value = separator < 0 ? null : token.substring(separator + 1);
+            try {
+                apply(options, name, value);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid render option: " + token, e);
+            }
+        }
+        return options;
+    }
+
+    private static void apply(ImageTransformationService.TransformationOptions options, String name, String value) {
+        switch (name) {
+            case "crop" -> {
+                String[] parts = value.split("_");
+                ImageTransformationService.CropOptions crop = new ImageTransformationService.CropOptions();
+                crop.setX(Integer.parseInt(parts[0]));
+                crop.setY(Integer.parseInt(parts[1]));
+                crop.setWidth(Integer.parseInt(parts[2]));
+                crop.setHeight(Integer.parseInt(parts[3]));
+                options.setCrop(crop);
+            }
+            case "w" -> resize(options).setWidth(Integer.parseInt(value));
+            case "h" -> resize(options).setHeight(Integer.parseInt(value));
+            case "rot" -> options.setRotate(Integer.parseInt(value));
+            case "gray" -> filters(options).setGrayscale(true);
+            case "sepia" -> filters(options).setSepia(true);
+            case "bright" -> filters(options).setBrightness(Double.parseDouble(value));
+            case "contrast" -> filters(options).setContrast(Double.parseDouble(value));
+            case "sat" -> filters(options).setSaturation(Double.parseDouble(value));
+            case "hue" -> filters(options).setHue(Double.parseDouble(value));
+            case "invert" -> filters(options).setInvert(true);
+            case "blur" -> filters(options).setBlur(Double.parseDouble(value));
+            case "sharpen" -> filters(options).setSharpen(Double.parseDouble(value));
+            case "sharpenr" -> filters(options).setSharpenRadius(Double.parseDouble(value));
+            case "wmtext" -> watermark(options).setText(new String(TEXT_DECODER.decode(value), StandardCharsets.UTF_8));
+            case "wmimg" -> watermark(options).setImageId(Long.parseLong(value));
+            case "wmpos" -> watermark(options).setPosition(value);
+            case "wmop" -> watermark(options).setOpacity(Double.parseDouble(value));
+            case "wmscale" -> watermark(options).setScale(Double.parseDouble(value));
+            case "wmtile" -> watermark(options).setTile(true);
+            case "wmcolor" -> watermark(options).setColor("#" + value);
+            case "f" -> options.setFormat(value);
+            default -> throw new IllegalArgumentException("unknown option " + name);
+        }
+    }
+
+    private static ImageTransformationService.ResizeOptions resize(ImageTransformationService.TransformationOptions options) {
+        if (options.getResize() == null) {
+            options.setResize(new ImageTransformationService.ResizeOptions());
+        }
+        return options.getResize();
+    }
+
+    private static ImageTransformationService.FilterOptions filters(ImageTransformationService.TransformationOptions options) {
+        if (options.getFilters() == null) {
+            options.setFilters(new ImageTransformationService.FilterOptions());
+        }
+        return options.getFilters();
+    }
+
+    private static ImageTransformationService.WatermarkOptions watermark(ImageTransformationService.TransformationOptions options) {
+        if (options.getWatermark() == null) {
+            options.setWatermark(new ImageTransformationService.WatermarkOptions());
+        }
+        return options.getWatermark();
+    }
+
+    private static void add(List<String> tokens, String name, Number value) {
+        if (value == null) {
+            return;
+        }
+        String text = value instanceof Double number
+                ? BigDecimal.valueOf(number).stripTrailingZeros().toPlainString()
+                : value.toString();
+        tokens.add(name + "_" + text);
+    }
+
+    private static void flag(List<String> tokens, String name, Boolean value) {
+        if (Boolean.TRUE.equals(value)) {
+            tokens.add(name);
+        }
+    }
+}
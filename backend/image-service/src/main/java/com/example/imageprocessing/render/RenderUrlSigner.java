@@ -0,0 +1,78 @@
+package com.example.imageprocessing.render;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Signs render URLs with HMAC-SHA256 so the render endpoint can trust the image id and options in
+ * the path without a session or a database lookup. The signature covers {@code /{imageId}/{options}}
+ * and is truncated to 128 bits, which keeps URLs short and is still far beyond guessing.
+ */
+@Component
+public class RenderUrlSigner {
+    private static final Logger logger = LoggerFactory.getLogger(RenderUrlSigner.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int SIGNATURE_BYTES = 16;
+
+    private final SecretKeySpec key;
+    private final String baseUrl;
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+    /**
+     * Signs with {@code image.render.secret}, falling back to {@code jwt.secret}, so every instance
+     * of a cluster accepts the same URLs; otherwise with a random key, which invalidates issued URLs
+     * on restart.
+     */
+    public RenderUrlSigner(@Value("${image.render.secret:${jwt.secret:}}") String secret,
+                           @Value("${image.render.base-url:}") String baseUrl) {
+        byte[] keyBytes;
+        if (secret == null || secret.isBlank()) {
+            logger.warn("No render URL secret configured; issued render URLs stop working on restart");
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.baseUrl = baseUrl == null ? "" : baseUrl.replaceAll("/+$", "");
+    }
+
+    /** The render URL for the image with options already in {@link RenderOptions#format canonical form}. */
+    public String url(long imageId, String options) {
+        return baseUrl + "/r/" + sign(imageId, options) + "/" + imageId + "/" + options;
+    }
+
+    public String sign(long imageId, String options) {
+        Mac mac = macs.get();
+        byte[] digest = mac.doFinal(("/" + imageId + "/" + options).getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, SIGNATURE_BYTES));
+    }
+
+    public boolean verify(String signature, long imageId, String options) {
+        byte[] expected = sign(imageId, options).getBytes(StandardCharsets.US_ASCII);
+        // Constant time, so response timing does not reveal how much of a forged signature matched
+        return MessageDigest.isEqual(expected, signature.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+}
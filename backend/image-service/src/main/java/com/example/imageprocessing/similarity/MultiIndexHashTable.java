@@ -0,0 +1,194 @@
+package com.example.imageprocessing.similarity;
+
+import java.util.Arrays;
+
+/**
+ * Multi-index hashing of 64-bit perceptual hashes for Hamming range queries. Each hash is split
+ * into four 16-bit chunks and every chunk has its own table from chunk value to entries. If two
+ * hashes differ in at most {@code r} bits, at least one chunk differs in at most {@code r / 4} bits,
+ * so a query only visits the buckets within that small radius of its own chunks (at most 2517 per
+ * chunk for {@code r = 16}) and checks the full distance of the entries found there.
+ *
+ * A BK-tree prunes badly on 64-bit hashes, since most distances are close to 32; on a library of
+ * 100k images it was slower than a linear scan, while this stays well below a millisecond.
+ *
+ * The tables are counting-sorted arrays rebuilt when enough entries have been added since the last
+ * build; newer entries, and libraries too small to be worth the tables, are scanned linearly. Removed entries are marked and dropped at
+ * the next rebuild. Not thread-safe.
+ */
+final class MultiIndexHashTable {
+    private static final int CHUNKS = 4;
+    private static final int CHUNK_BITS = 16;
+    private static final int BUCKETS = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = BUCKETS - 1;
+    static final int MAX_DISTANCE = CHUNKS * 4;
+    private static final int MIN_UNINDEXED = 1024;
+
+    // All 16-bit masks with at most 4 bits set, by number of bits; MASKS_UP_TO[k] of them have at most k
+    private static final int[] MASKS;
+    private static final int[] MASKS_UP_TO = new int[MAX_DISTANCE / CHUNKS + 1];
+
+    static {
+        int[] masks = new int[BUCKETS];
+        int count = 0;
+        for (int bits = 0; bits < MASKS_UP_TO.length; bits++) {
+            for (int mask = 0; mask < BUCKETS; mask++) {
+                if (Integer.bitCount(mask) == bits) {
+                    masks[count++] = mask;
+                }
+            }
+            MASKS_UP_TO[bits] = count;
+        }
+        MASKS = Arrays.copyOf(masks, count);
+    }
+
+    interface MatchConsumer {
+        void accept(long id, long hash, int distance);
+    }
+
+    private long[] hashes = new long[16];
+    private long[] ids = new long[16];
+    private boolean[] removed = new boolean[16];
+    private int count;
+    private int live;
+    // Entries [0, indexed) are in the chunk tables
+    private int indexed;
+    private final int[][] bucketStarts = new int[CHUNKS][];
+    private final int[][] bucketEntries = new int[CHUNKS][];
+
+    void add(long hash, long id) {
+        if (count == hashes.length) {
+            int capacity = count * 2;
+            hashes = Arrays.copyOf(hashes, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            removed = Arrays.copyOf(removed, capacity);
+        }
+        hashes[count] = hash;
+        ids[count] = id;
+        count++;
+        live++;
+        if (count - indexed > Math.max(MIN_UNINDEXED, indexed / 8)) {
+            rebuild();
+        }
+    }
+
+    boolean remove(long hash, long id) {
+        if (indexed > 0) {
+            int bucket = chunk(hash, 0);
+            for (int i = bucketStarts[0][bucket]; i < bucketStarts[0][bucket + 1]; i++) {
+                if (markRemoved(bucketEntries[0][i], hash, id)) {
+                    return true;
+                }
+            }
+        }
+        for (int entry = indexed; entry < count; entry++) {
+            if (markRemoved(entry, hash, id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void search(long hash, int maxDistance, MatchConsumer consumer) {
+        if (maxDistance < 0 || maxDistance > MAX_DISTANCE) {
+            throw new IllegalArgumentException("maxDistance must be between 0 and " + MAX_DISTANCE);
+        }
+        if (indexed > 0) {
+            int chunkRadius = maxDistance / CHUNKS;
+            int maskCount = MASKS_UP_TO[chunkRadius];
+            for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                int value = chunk(hash, chunk);
+                int[] starts = bucketStarts[chunk];
+                int[] entries = bucketEntries[chunk];
+                for (int m = 0; m < maskCount; m++) {
+                    int bucket = value ^ MASKS[m];
+                    for (int i = starts[bucket]; i < starts[bucket + 1]; i++) {
+                        int entry = entries[i];
+                        long other = hashes[entry];
+                        int distance = PerceptualHash.distance(hash, other);
+                        // An entry close enough in an earlier chunk was already reported from there
+                        if (distance <= maxDistance && !removed[entry]
+                                && !foundInEarlierChunk(hash, other, chunk, chunkRadius)) {
+                            consumer.accept(ids[entry], other, distance);
+                        }
+                    }
+                }
+            }
+        }
+        for (int entry = indexed; entry < count; entry++) {
+            int distance = PerceptualHash.distance(hash, hashes[entry]);
+            if (distance <= maxDistance && !removed[entry]) {
+                consumer.accept(ids[entry], hashes[entry], distance);
+            }
+        }
+    }
+
+    int size() {
+        return live;
+    }
+
+    private boolean markRemoved(int entry, long hash, long id) {
+        if (!removed[entry] && ids[entry] == id && hashes[entry] == hash) {
+            removed[entry] = true;
+            live--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Indexes all entries; done automatically as entries are added, and once after a bulk load.
+     */
+    void rebuild() {
+        // Drop removed entries, then counting-sort the entry numbers by each chunk's value
+        int kept = 0;
+        for (int entry = 0; entry < count; entry++) {
+            if (!removed[entry]) {
+                hashes[kept] = hashes[entry];
+                ids[kept] = ids[entry];
+                removed[kept] = false;
+                kept++;
+            }
+        }
+        Arrays.fill(removed, kept, count, false);
+        count = kept;
+        if (count < MIN_UNINDEXED) {
+            // Small libraries are scanned; the tables take 1 MiB whatever the number of entries
+            indexed = 0;
+            Arrays.fill(bucketStarts, null);
+            Arrays.fill(bucketEntries, null);
+            return;
+        }
+        indexed = count;
+
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            int[] starts = new int[BUCKETS + 1];
+            for (int entry = 0; entry < count; entry++) {
+                starts[chunk(hashes[entry], chunk) + 1]++;
+            }
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                starts[bucket + 1] += starts[bucket];
+            }
+            int[] next = Arrays.copyOf(starts, BUCKETS);
+            int[] entries = new int[count];
+            for (int entry = 0; entry < count; entry++) {
+                entries[next[chunk(hashes[entry], chunk)]++] = entry;
+            }
+            bucketStarts[chunk] = starts;
+            bucketEntries[chunk] = entries;
+        }
+    }
+
+    private static boolean foundInEarlierChunk(long hash, long other, int chunk, int chunkRadius) {
+        for (int earlier = 0; earlier < chunk; earlier++) {
+            if (Integer.bitCount(chunk(hash, earlier) ^ chunk(other, earlier)) <= chunkRadius) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int chunk(long hash, int chunk) {
+        return (int) (hash >>> (chunk * CHUNK_BITS)) & CHUNK_MASK;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.imageprocessing.similarity;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * 64-bit difference hash (dHash): the image is reduced to a 9x8 grid of mean luminance and each bit
+ * says whether a cell is brighter than its right neighbour. Re-encoding, resizing and small edits
+ * change only a few bits, so near-duplicates are within a small Hamming distance of each other.
+ *
+ * The source is decoded with subsampling into a proxy of about {@link #PROXY_SIZE} pixels per side,
+ * so hashing a large original does not allocate its full raster.
+ */
+public final class PerceptualHash {
+    static final int PROXY_SIZE = 64;
+
+    private static final int GRID_WIDTH = 9;
+    private static final int GRID_HEIGHT = 8;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * Hashes the first image of the stream; returns null if it cannot be decoded.
+     */
+    public static Long hash(ImageInputStream input) throws IOException {
+        Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+        if (readers == null || !readers.hasNext()) {
+            return null;
+        }
+
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, true);
+            int step = Math.max(1, Math.min(reader.getWidth(0), reader.getHeight(0)) / PROXY_SIZE);
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(step, step, 0, 0);
+            return hash(reader.read(0, param));
+        } catch (RuntimeException e) {
+            // Unsupported color spaces (CMYK JPEGs) and corrupt data
+            return null;
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    public static long hash(BufferedImage image) {
+        if (image.getWidth() < GRID_WIDTH * 2 || image.getHeight() < GRID_HEIGHT * 2) {
+            image = enlarge(image);
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double[] sums = new double[GRID_WIDTH * GRID_HEIGHT];
+        int[] counts = new int[GRID_WIDTH * GRID_HEIGHT];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int cellRow = y * GRID_HEIGHT / height * GRID_WIDTH;
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                int cell = cellRow + x * GRID_WIDTH / width;
+                sums[cell] += 0.299 * ((rgb >> 16) & 0xFF) + 0.587 * ((rgb >> 8) & 0xFF) + 0.114 * (rgb & 0xFF);
+                counts[cell]++;
+            }
+        }
+
+        long hash = 0;
+        for (int y = 0; y < GRID_HEIGHT; y++) {
+            for (int x = 0; x < GRID_WIDTH - 1; x++) {
+                int cell = y * GRID_WIDTH + x;
+                hash <<= 1;
+                if (sums[cell] / counts[cell] > sums[cell + 1] / counts[cell + 1]) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    // Tiny images are scaled up so that every grid cell covers at least one pixel
+    private static BufferedImage enlarge(BufferedImage image) {
+        BufferedImage enlarged = new BufferedImage(GRID_WIDTH * 2, GRID_HEIGHT * 2, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = enlarged.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, enlarged.getWidth(), enlarged.getHeight(), null);
+        } finally {
+            graphics.dispose();
+        }
+        return enlarged;
+    }
+}
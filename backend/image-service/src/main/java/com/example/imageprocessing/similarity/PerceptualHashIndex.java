@@ -0,0 +1,118 @@
+package com.example.imageprocessing.similarity;
+
+import com.example.imageprocessing.image.ImageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory multi-index hash tables of perceptual hashes, one per user, loaded from the database
+ * the first time a library is searched. Images hashed on this node are added as they are
+ * registered. Tables are reloaded after {@code image.similarity.index-ttl-minutes} so images
+ * registered through other cluster nodes show up as well; expired tables of other users are
+ * dropped whenever one is loaded.
+ */
+@Component
+public class PerceptualHashIndex {
+    private static final Logger logger = LoggerFactory.getLogger(PerceptualHashIndex.class);
+
+    private final ImageRepository imageRepository;
+    private final Map<Long, UserIndex> indexes = new ConcurrentHashMap<>();
+
+    @Value("${image.similarity.index-ttl-minutes:10}")
+    private long ttlMinutes;
+
+    public PerceptualHashIndex(ImageRepository imageRepository) {
+        this.imageRepository = imageRepository;
+    }
+
+    /**
+     * Images of the user whose hash is within {@code maxDistance} bits of {@code hash}.
+     */
+    public List<Match> search(Long userId, long hash, int maxDistance) {
+        UserIndex index = indexFor(userId);
+        List<Match> matches = new ArrayList<>();
+        index.lock.readLock().lock();
+        try {
+            index.table.search(hash, maxDistance, (id, imageHash, distance) -> matches.add(new Match(id, imageHash, distance)));
+        } finally {
+            index.lock.readLock().unlock();
+        }
+        return matches;
+    }
+
+    public void add(Long userId, long imageId, long hash) {
+        // Libraries that were never searched are not loaded; they are read complete on first use
+        UserIndex index = indexes.get(userId);
+        if (index != null) {
+            index.lock.writeLock().lock();
+            try {
+                index.table.add(hash, imageId);
+            } finally {
+                index.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    public void remove(Long userId, long imageId, long hash) {
+        UserIndex index = indexes.get(userId);
+        if (index != null) {
+            index.lock.writeLock().lock();
+            try {
+                index.table.remove(hash, imageId);
+            } finally {
+                index.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private UserIndex indexFor(Long userId) {
+        long now = System.nanoTime();
+        UserIndex index = indexes.get(userId);
+        if (index != null && !index.isExpired(now, ttlNanos())) {
+            return index;
+        }
+
+        indexes.values().removeIf(other -> other.isExpired(now, ttlNanos()));
+        long start = System.nanoTime();
+        UserIndex loaded = new UserIndex(now);
+        for (Object[] row : imageRepository.findPerceptualHashesByUserId(userId)) {
+            loaded.table.add((Long) row[1], (Long) row[0]);
+        }
+        loaded.table.rebuild();
+        logger.info("Loaded similarity index of user {} with {} images in {} ms",
+                userId, loaded.table.size(), (System.nanoTime() - start) / 1_000_000);
+        // Concurrent first searches may both load; the later one wins, and both tables are complete
+        indexes.put(userId, loaded);
+        return loaded;
+    }
+
+    private long ttlNanos() {
+        return ttlMinutes * 60_000_000_000L;
+    }
+
+    private static final class UserIndex {
+        private final MultiIndexHashTable table = new MultiIndexHashTable();
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final long loadedAt;
+
+        private UserIndex(long loadedAt) {
+            this.loadedAt = loadedAt;
+        }
+
+        private boolean isExpired(long now, long ttlNanos) {
+            return now - loadedAt > ttlNanos;
+        }
+    }
+
+    public record Match(long imageId, long hash, int distance) {
+    }
+}
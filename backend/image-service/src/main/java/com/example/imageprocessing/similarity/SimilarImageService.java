@@ -0,0 +1,177 @@
+package com.example.imageprocessing.similarity;
+
+import com.example.imageprocessing.image.Image;
+import com.example.imageprocessing.image.ImageRepository;
+import com.example.imageprocessing.timing.RequestTimings;
+import com.example.imageprocessing.user.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Perceptual hashes of registered images and near-duplicate search over a user's library.
+ *
+ * Direct uploads are hashed from the local file before they are saved. Presigned and multipart
+ * uploads are hashed by ImageService in the background, in the same pass over the object that
+ * computes its SHA-256. Images without a hash (registered before hashing existed, or still queued)
+ * are hashed on demand when they are the subject of a search.
+ */
+@Service
+public class SimilarImageService {
+    private static final Logger logger = LoggerFactory.getLogger(SimilarImageService.class);
+
+    private final S3Client s3Client;
+    private final ImageRepository imageRepository;
+    private final UserRepository userRepository;
+    private final PerceptualHashIndex index;
+
+    @Value("${aws.s3.bucket:project-image-processing-service-bucket}")
+    private String bucket;
+
+    public SimilarImageService(@Lazy S3Client s3Client, ImageRepository imageRepository, UserRepository userRepository,
+                               PerceptualHashIndex index) {
+        this.s3Client = s3Client;
+        this.imageRepository = imageRepository;
+        this.userRepository = userRepository;
+        this.index = index;
+    }
+
+    /**
+     * Hashes a local copy of an image; returns null if it cannot be decoded.
+     */
+    public Long hash(Path file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            return RequestTimings.time(RequestTimings.DECODE, () -> PerceptualHash.hash(input));
+        }
+    }
+
+    /**
+     * Adds saved images that already carry a hash to the index.
+     */
+    public void indexed(Image image) {
+        if (image.getPerceptualHash() != null) {
+            index.add(image.getUserId(), image.getId(), image.getPerceptualHash());
+        }
+    }
+
+    /**
+     * Stores the hash of a saved image and indexes it.
+     */
+    public void record(Image image, long hash) {
+        imageRepository.updatePerceptualHash(image.getId(), hash);
+        image.setPerceptualHash(hash);
+        index.add(image.getUserId(), image.getId(), hash);
+    }
+
+    /**
+     * Images of the user within {@code maxDistance} bits of the given image, closest first, without
+     * the image itself; empty if the image does not exist or belongs to someone else.
+     */
+    public Optional<List<SimilarImage>> findSimilar(Long imageId, int maxDistance, int limit, String username) {
+        if (maxDistance < 0 || maxDistance > MultiIndexHashTable.MAX_DISTANCE) {
+            throw new IllegalArgumentException("maxDistance must be between 0 and " + MultiIndexHashTable.MAX_DISTANCE);
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        Long userId = userRepository.findFirstByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found"))
+                .getId();
+        Optional<Image> imageOpt = RequestTimings.time(RequestTimings.DB,
+                () -> imageRepository.findByIdAndUserId(imageId, userId));
+        if (imageOpt.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Image image = imageOpt.get();
+        Long hash = image.getPerceptualHash();
+        if (hash == null) {
+            hash = hashAndStore(image);
+            if (hash == null) {
+                throw new IllegalArgumentException("Image cannot be decoded for similarity search");
+            }
+        }
+
+        long start = System.nanoTime();
+        List<PerceptualHashIndex.Match> matches = index.search(userId, hash, maxDistance).stream()
+                .filter(match -> match.imageId() != imageId)
+                .sorted(Comparator.comparingInt(PerceptualHashIndex.Match::distance)
+                        .thenComparingLong(PerceptualHashIndex.Match::imageId))
+                .limit(limit)
+                .toList();
+        RequestTimings.detail("similar_candidates", matches.size());
+        RequestTimings.detail("similar_search_ms", (System.nanoTime() - start) / 1_000_000);
+        if (matches.isEmpty()) {
+            return Optional.of(List.of());
+        }
+
+        // The index may still hold images deleted since it was loaded; they are dropped here
+        Map<Long, Image> images = RequestTimings.time(RequestTimings.DB, () -> imageRepository
+                .findByIdInAndUserId(matches.stream().map(PerceptualHashIndex.Match::imageId).toList(), userId))
+                .stream()
+                .collect(Collectors.toMap(Image::getId, Function.identity()));
+        return Optional.of(matches.stream()
+                .filter(match -> {
+                    if (!images.containsKey(match.imageId())) {
+                        index.remove(userId, match.imageId(), match.hash());
+                        return false;
+                    }
+                    return true;
+                })
+                .map(match -> new SimilarImage(images.get(match.imageId()), match.distance()))
+                .toList());
+    }
+
+    private Long hashAndStore(Image image) {
+        GetObjectRequest request = GetObjectRequest.builder().bucket(bucket).key(image.getFilename()).build();
+        Long hash;
+        try {
+            // Decoding is streamed from the response, so the download is timed together with it
+            hash = RequestTimings.time(RequestTimings.S3_GET, () -> {
+                try (ResponseInputStream<GetObjectResponse> object = s3Client.getObject(request);
+                     ImageInputStream input = ImageIO.createImageInputStream(object)) {
+                    return PerceptualHash.hash(input);
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to hash image " + image.getId() + ": " + e.getMessage(), e);
+        }
+        if (hash == null) {
+            logger.info("Image {} cannot be decoded for perceptual hashing", image.getId());
+            return null;
+        }
+
+        record(image, hash);
+        return hash;
+    }
+
+    public static class SimilarImage {
+        private final Image image;
+        private final int distance;
+
+        public SimilarImage(Image image, int distance) {
+            this.image = image;
+            this.distance = distance;
+        }
+
+        public Image getImage() { return image; }
+        public int getDistance() { return distance; }
+    }
+}
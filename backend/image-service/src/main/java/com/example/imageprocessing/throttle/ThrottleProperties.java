@@ -0,0 +1,39 @@
+package com.example.imageprocessing.throttle;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Admission settings for transformations, bound from {@code image.transform.throttle.*}: the per-user
+ * token bucket ({@code rate-per-minute}, {@code burst}) and the weighted fair queue in front of the
+ * transform workers ({@code concurrency}, {@code max-queued}, {@code queue-timeout-ms}, {@code weights}).
+ */
+@ConfigurationProperties(prefix = "image.transform.throttle")
+public class ThrottleProperties {
+    private boolean enabled = true;
+    private double ratePerMinute = 60;
+    private int burst = 20;
+    // Transformations running at once; 0 uses the number of available processors
+    private int concurrency = 0;
+    private int maxQueued = 200;
+    private long queueTimeoutMs = 30000;
+    // Share of the workers per username relative to the default weight of 1
+    private Map<String, Double> weights = new HashMap<>();
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public double getRatePerMinute() { return ratePerMinute; }
+    public void setRatePerMinute(double ratePerMinute) { this.ratePerMinute = ratePerMinute; }
+    public int getBurst() { return burst; }
+    public void setBurst(int burst) { this.burst = burst; }
+    public int getConcurrency() { return concurrency; }
+    public void setConcurrency(int concurrency) { this.concurrency = concurrency; }
+    public int getMaxQueued() { return maxQueued; }
+    public void setMaxQueued(int maxQueued) { this.maxQueued = maxQueued; }
+    public long getQueueTimeoutMs() { return queueTimeoutMs; }
+    public void setQueueTimeoutMs(long queueTimeoutMs) { this.queueTimeoutMs = queueTimeoutMs; }
+    public Map<String, Double> getWeights() { return weights; }
+    public void setWeights(Map<String, Double> weights) { this.weights = weights; }
+}
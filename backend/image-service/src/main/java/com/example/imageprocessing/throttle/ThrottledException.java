@@ -0,0 +1,17 @@
+package com.example.imageprocessing.throttle;
+
+/**
+ * Thrown when a request is not admitted; {@link #getRetryAfterSeconds()} is sent as {@code Retry-After}.
+ */
+public class ThrottledException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public ThrottledException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
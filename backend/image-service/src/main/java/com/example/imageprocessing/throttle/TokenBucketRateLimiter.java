@@ -0,0 +1,72 @@
+package com.example.imageprocessing.throttle;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free per-key token buckets. Each bucket is a single {@link AtomicLong} holding the time at
+ * which it will be full again (the generic cell rate algorithm), so admitting a request is one CAS
+ * and the wait until the next token is exact rather than estimated.
+ */
+final class TokenBucketRateLimiter {
+    private static final int CLEANUP_INTERVAL = 1024;
+
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+
+    TokenBucketRateLimiter(double ratePerMinute, int burst) {
+        if (ratePerMinute <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.emissionIntervalNanos = (long) (60_000_000_000L / ratePerMinute);
+        this.burstToleranceNanos = emissionIntervalNanos * (burst - 1);
+    }
+
+    /**
+     * Takes one token for {@code key}.
+     *
+     * @return 0 if the token was taken, otherwise the nanoseconds until one will be available
+     */
+    long tryAcquire(String key) {
+        long now = System.nanoTime();
+        AtomicLong bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        while (true) {
+            long fullAt = bucket.get();
+            long allowedAt = fullAt - burstToleranceNanos;
+            if (now - allowedAt < 0) {
+                return allowedAt - now;
+            }
+            if (bucket.compareAndSet(fullAt, Math.max(fullAt, now) + emissionIntervalNanos)) {
+                evictIdleBuckets(now);
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Gives back a token taken by {@link #tryAcquire} for a request that was then turned away, so a
+     * rejection further on does not also count against the user's rate.
+     */
+    void refund(String key) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            bucket.getAndAdd(-emissionIntervalNanos);
+        }
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    // Full buckets carry no state; a request racing with its removal just starts a fresh bucket
+    private void evictIdleBuckets(long now) {
+        calls.increment();
+        if (calls.sum() % CLEANUP_INTERVAL == 0) {
+            buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+        }
+    }
+}
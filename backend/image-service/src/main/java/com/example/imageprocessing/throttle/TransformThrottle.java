@@ -0,0 +1,145 @@
+package com.example.imageprocessing.throttle;
+
+import com.example.imageprocessing.timing.RequestTimings;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control in front of the transformation service. A request first takes a token from its
+ * user's bucket (429 with the exact {@code Retry-After} when it is empty) and then waits in a weighted
+ * fair queue for one of a fixed number of worker slots, so one user batch-transforming a library
+ * cannot starve everybody else. A request the queue turns away gets its token back, and a
+ * {@code Retry-After} estimated from the queue depth and the recently observed service and wait times.
+ *
+ * Per-user meters: {@code image.transform.throttle.admitted}, {@code image.transform.throttle.rejected}
+ * (tagged with the {@code reason}) and {@code image.transform.queue.wait}, plus the
+ * {@code image.transform.queue.depth} gauge.
+ */
+@Component
+@EnableConfigurationProperties(ThrottleProperties.class)
+public class TransformThrottle {
+    private static final Logger logger = LoggerFactory.getLogger(TransformThrottle.class);
+
+    @FunctionalInterface
+    public interface Work<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    private final ThrottleProperties properties;
+    private final MeterRegistry registry;
+    private final TokenBucketRateLimiter rateLimiter;
+    private final WeightedFairQueue fairQueue;
+    private final int concurrency;
+    // Exponentially weighted moving averages of recent service and queue wait times
+    private final AtomicLong averageServiceNanos = new AtomicLong();
+    private final AtomicLong averageWaitNanos = new AtomicLong();
+
+    public TransformThrottle(ThrottleProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        this.registry = registry;
+        this.rateLimiter = new TokenBucketRateLimiter(properties.getRatePerMinute(), properties.getBurst());
+        this.concurrency = properties.getConcurrency() > 0
+                ? properties.getConcurrency()
+                : Runtime.getRuntime().availableProcessors();
+        this.fairQueue = new WeightedFairQueue(concurrency, properties.getMaxQueued());
+        Gauge.builder("image.transform.queue.depth", fairQueue, WeightedFairQueue::queued)
+                .description("Transformations waiting for a worker slot")
+                .register(registry);
+        logger.info("Transform throttle: {} per minute per user (burst {}), {} concurrent, {} queued at most",
+                properties.getRatePerMinute(), properties.getBurst(), concurrency, properties.getMaxQueued());
+    }
+
+    /**
+     * Runs {@code work} for {@code username} once it has been admitted.
+     *
+     * @throws ThrottledException if the user is over its rate or the queue is full or too slow
+     */
+    public <T, E extends Exception> T run(String username, Work<T, E> work) throws E {
+        if (!properties.isEnabled()) {
+            return work.run();
+        }
+
+        long waitNanos = rateLimiter.tryAcquire(username);
+        if (waitNanos > 0) {
+            reject(username, "rate_limit");
+            throw new ThrottledException("Transformation rate limit exceeded", toRetryAfterSeconds(waitNanos));
+        }
+
+        long start = System.nanoTime();
+        WeightedFairQueue.Result result;
+        try {
+            result = fairQueue.acquire(username, properties.getWeights().getOrDefault(username, 1.0),
+                    TimeUnit.MILLISECONDS.toNanos(properties.getQueueTimeoutMs()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rateLimiter.refund(username);
+            throw new ThrottledException("Interrupted while waiting for a transformation slot", 1);
+        }
+        long queuedNanos = System.nanoTime() - start;
+
+        if (result != WeightedFairQueue.Result.ADMITTED) {
+            rateLimiter.refund(username);
+            reject(username, result == WeightedFairQueue.Result.QUEUE_FULL ? "queue_full" : "queue_timeout");
+            throw new ThrottledException("Too many transformations in progress",
+                    toRetryAfterSeconds(estimateQueueWaitNanos()));
+        }
+        updateAverage(averageWaitNanos, queuedNanos);
+
+        Timer.builder("image.transform.queue.wait")
+                .description("Time a transformation waited for a worker slot")
+                .tag("user", username)
+                .register(registry)
+                .record(queuedNanos, TimeUnit.NANOSECONDS);
+        RequestTimings.record(RequestTimings.QUEUE, queuedNanos);
+        Counter.builder("image.transform.throttle.admitted")
+                .description("Transformations admitted past the rate limit and queue")
+                .tag("user", username)
+                .register(registry)
+                .increment();
+
+        long serviceStart = System.nanoTime();
+        try {
+            return work.run();
+        } finally {
+            fairQueue.release();
+            updateAverage(averageServiceNanos, System.nanoTime() - serviceStart);
+        }
+    }
+
+    /**
+     * How long a request arriving now would wait for a slot: the queue ahead of it drains
+     * {@code concurrency} requests per average service time. Before any transformation has finished,
+     * or when waits have recently been longer, the average observed wait is used instead.
+     */
+    private long estimateQueueWaitNanos() {
+        long drainNanos = (fairQueue.queued() + 1) * averageServiceNanos.get() / concurrency;
+        return Math.max(drainNanos, averageWaitNanos.get());
+    }
+
+    private static void updateAverage(AtomicLong average, long sampleNanos) {
+        average.accumulateAndGet(sampleNanos,
+                (current, sample) -> current == 0 ? sample : current + (sample - current) / 8);
+    }
+
+    private void reject(String username, String reason) {
+        Counter.builder("image.transform.throttle.rejected")
+                .description("Transformations rejected with 429")
+                .tag("user", username)
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    private static long toRetryAfterSeconds(long waitNanos) {
+        return Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L);
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.imageprocessing.throttle;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out a fixed number of worker slots in start-time fair queuing order. Every request gets a
+ * virtual start tag of {@code max(virtual time, previous finish tag of its user)} and advances its
+ * user's finish tag by {@code 1 / weight}, so when the slots are contended a user with many queued
+ * requests only gets its weighted share and a user sending a single request is served next.
+ */
+final class WeightedFairQueue {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Waiter> waiting = new PriorityQueue<>(
+            Comparator.comparingDouble((Waiter waiter) -> waiter.startTag).thenComparingLong(waiter -> waiter.sequence));
+    private final Map<String, Double> finishTags = new HashMap<>();
+    private final int maxQueued;
+    private int availableSlots;
+    private double virtualTime;
+    private long sequence;
+
+    WeightedFairQueue(int slots, int maxQueued) {
+        this.availableSlots = slots;
+        this.maxQueued = maxQueued;
+    }
+
+    enum Result { ADMITTED, QUEUE_FULL, TIMED_OUT }
+
+    /**
+     * Waits for a worker slot; every {@link Result#ADMITTED} must be paired with {@link #release()}.
+     */
+    Result acquire(String key, double weight, long timeoutNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            double startTag = Math.max(virtualTime, finishTags.getOrDefault(key, 0.0));
+            if (availableSlots > 0 && waiting.isEmpty()) {
+                availableSlots--;
+                virtualTime = startTag;
+                finishTags.put(key, startTag + 1.0 / weight);
+                return Result.ADMITTED;
+            }
+            if (waiting.size() >= maxQueued) {
+                return Result.QUEUE_FULL;
+            }
+
+            // Reserve the finish tag now so the user's next request queues behind this one
+            Double previousFinishTag = finishTags.put(key, startTag + 1.0 / weight);
+            Waiter waiter = new Waiter(key, startTag, startTag + 1.0 / weight, previousFinishTag,
+                    sequence++, lock.newCondition());
+            waiting.add(waiter);
+
+            long remaining = timeoutNanos;
+            try {
+                while (!waiter.granted && remaining > 0) {
+                    remaining = waiter.condition.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    release();
+                } else {
+                    abandon(waiter);
+                }
+                throw e;
+            }
+            if (!waiter.granted) {
+                abandon(waiter);
+                return Result.TIMED_OUT;
+            }
+            return Result.ADMITTED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a waiter that gave up out of the queue. Its reserved finish tag is rolled back unless a
+     * later request of the same user has already queued behind it, so a timed-out request does not
+     * push the user's next one further back.
+     */
+    private void abandon(Waiter waiter) {
+        waiting.remove(waiter);
+        Double finishTag = finishTags.get(waiter.key);
+        if (finishTag != null && finishTag == waiter.finishTag) {
+            if (waiter.previousFinishTag == null) {
+                finishTags.remove(waiter.key);
+            } else {
+                finishTags.put(waiter.key, waiter.previousFinishTag);
+            }
+        }
+    }
+
+    void release() {
+        lock.lock();
+        try {
+            Waiter next = waiting.poll();
+            if (next == null) {
+                availableSlots++;
+                // Tags behind the virtual time no longer affect anyone's position
+                finishTags.values().removeIf(finishTag -> finishTag <= virtualTime);
+                return;
+            }
+            // The slot passes straight to the next waiter
+            virtualTime = Math.max(virtualTime, next.startTag);
+            next.granted = true;
+            next.condition.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int queued() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Waiter {
+        private final String key;
+        private final double startTag;
+        private final double finishTag;
+        private final Double previousFinishTag;
+        private final long sequence;
+        private final Condition condition;
+        private boolean granted;
+
+        private Waiter(String key, double startTag, double finishTag, Double previousFinishTag, long sequence,
+                       Condition condition) {
+            this.key = key;
+            this.startTag = startTag;
+            this.finishTag = finishTag;
+            this.previousFinishTag = previousFinishTag;
+            this.sequence = sequence;
+            this.condition = condition;
+        }
+    }
+}
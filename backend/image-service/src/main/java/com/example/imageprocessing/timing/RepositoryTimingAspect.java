@@ -0,0 +1,19 @@
+package com.example.imageprocessing.timing;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts every Spring Data repository call towards the {@code db} stage of the current request.
+ */
+@Aspect
+@Component
+public class RepositoryTimingAspect {
+
+    @Around("this(org.springframework.data.repository.Repository)")
+    public Object timeRepositoryCall(ProceedingJoinPoint joinPoint) throws Throwable {
+        return RequestTimings.time(RequestTimings.DB, joinPoint::proceed);
+    }
+}
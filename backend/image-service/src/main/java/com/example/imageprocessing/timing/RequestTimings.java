@@ -0,0 +1,139 @@
+package com.example.imageprocessing.timing;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request breakdown of where time was spent (auth, db, presign, S3, decode, process, encode).
+ * The instance lives in a thread local for the duration of a request, so code anywhere below the
+ * controller can add to it without it being passed around; outside a request every call is a no-op.
+ * It is only ever touched by the request thread and is therefore not thread-safe.
+ */
+public final class RequestTimings {
+    public static final String AUTH = "auth";
+    public static final String QUEUE = "queue";
+    public static final String FORWARD = "forward";
+    public static final String DB = "db";
+    public static final String PRESIGN = "presign";
+    public static final String S3_GET = "s3-get";
+    public static final String S3_PUT = "s3-put";
+    public static final String S3_COPY = "s3-copy";
+    public static final String S3_DELETE = "s3-delete";
+    public static final String DECODE = "decode";
+    public static final String PROCESS = "process";
+    public static final String ENCODE = "encode";
+
+    private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final Map<String, Object> details = new LinkedHashMap<>();
+    // Stage being timed right now; nested stages are not added to it a second time
+    private String activeStage;
+
+    private RequestTimings() {
+    }
+
+    @FunctionalInterface
+    public interface TimedCall<T, E extends Throwable> {
+        T call() throws E;
+    }
+
+    static RequestTimings begin() {
+        RequestTimings timings = new RequestTimings();
+        CURRENT.set(timings);
+        return timings;
+    }
+
+    static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Runs {@code call} and adds its duration to {@code stage} of the current request, if there is one.
+     */
+    public static <T, E extends Throwable> T time(String stage, TimedCall<T, E> call) throws E {
+        RequestTimings timings = CURRENT.get();
+        if (timings == null || timings.activeStage != null) {
+            return call.call();
+        }
+
+        timings.activeStage = stage;
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } finally {
+            timings.activeStage = null;
+            timings.add(stage, System.nanoTime() - start);
+        }
+    }
+
+    public static void record(String stage, long durationNanos) {
+        RequestTimings timings = CURRENT.get();
+        if (timings != null && timings.activeStage == null) {
+            timings.add(stage, durationNanos);
+        }
+    }
+
+    /**
+     * Attaches context (image dimensions, options, ...) that is logged if the request turns out to be slow.
+     */
+    public static void detail(String name, Object value) {
+        RequestTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.details.put(name, value);
+        }
+    }
+
+    private void add(String stage, long durationNanos) {
+        stages.computeIfAbsent(stage, name -> new Stage()).add(durationNanos);
+    }
+
+    long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Formats the stages as a {@code Server-Timing} header value, e.g.
+     * {@code db;dur=3.1;desc="3 calls", decode;dur=41.7, total;dur=52.0}.
+     */
+    String toServerTimingHeader() {
+        StringJoiner header = new StringJoiner(", ");
+        stages.forEach((name, stage) -> {
+            String entry = name + ";dur=" + millis(stage.nanos);
+            if (stage.count > 1) {
+                entry += ";desc=\"" + stage.count + " calls\"";
+            }
+            header.add(entry);
+        });
+        header.add("total;dur=" + millis(getElapsedNanos()));
+        return header.toString();
+    }
+
+    /**
+     * Formats stages and details as space-separated {@code key=value} pairs for a single log line.
+     */
+    String toLogFields() {
+        StringJoiner fields = new StringJoiner(" ");
+        stages.forEach((name, stage) -> fields.add(name + "_ms=" + millis(stage.nanos)));
+        details.forEach((name, value) -> fields.add(name + "=" + value));
+        return fields.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private static final class Stage {
+        private long nanos;
+        private int count;
+
+        private void add(long durationNanos) {
+            nanos += durationNanos;
+            count++;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.imageprocessing.image;
+
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ColorMatrixTest {
+
+    private static final List<ColorMatrix> MATRICES = List.of(
+            ColorMatrix.IDENTITY,
+            ColorMatrix.brightness(1.3),
+            ColorMatrix.contrast(0.4),
+            ColorMatrix.saturation(2.5),
+            ColorMatrix.hueRotation(123),
+            ColorMatrix.grayscale(),
+            ColorMatrix.sepia(),
+            ColorMatrix.invert(),
+            ColorMatrix.brightness(0.8).then(ColorMatrix.contrast(1.7)).then(ColorMatrix.hueRotation(-45))
+                    .then(ColorMatrix.sepia()).then(ColorMatrix.invert()));
+
+    @Test
+    void vectorKernelMatchesScalarKernel() {
+        assumeTrue(ColorMatrix.VECTORIZED, "jdk.incubator.vector is not available");
+
+        // An odd length leaves a tail for the scalar loop after the last whole vector
+        int[] pixels = randomPixels(4099);
+        for (ColorMatrix matrix : MATRICES) {
+            int[] m = matrix.toFixedPoint();
+            for (boolean alpha : new boolean[]{false, true}) {
+                int[] scalar = new int[pixels.length];
+                ColorMatrix.applyScalar(m, pixels, scalar, 0, pixels.length, alpha);
+
+                int[] vector = new int[pixels.length];
+                int done = VectorColorMatrix.apply(m, pixels, vector, alpha);
+                assertThat(done).isPositive();
+                ColorMatrix.applyScalar(m, pixels, vector, done, pixels.length, alpha);
+
+                assertThat(vector).isEqualTo(scalar);
+            }
+        }
+    }
+
+    @Test
+    void vectorKernelLeavesOverflowingMatricesToScalarKernel() {
+        assumeTrue(ColorMatrix.VECTORIZED, "jdk.incubator.vector is not available");
+
+        int[] m = ColorMatrix.brightness(1e6).toFixedPoint();
+        assertThat(ColorMatrix.fitsInInts(m)).isFalse();
+        assertThat(VectorColorMatrix.apply(m, randomPixels(64), new int[64], false)).isZero();
+    }
+
+    @Test
+    void wideScalarKernelClampsLikeNarrowOne() {
+        int[] pixels = randomPixels(1000);
+        int[] result = new int[pixels.length];
+        ColorMatrix.applyScalar(ColorMatrix.brightness(1e6).toFixedPoint(), pixels, result, 0, pixels.length, false);
+
+        for (int i = 0; i < pixels.length; i++) {
+            int expected = 0xFF000000;
+            for (int shift = 0; shift <= 16; shift += 8) {
+                expected |= (((pixels[i] >> shift) & 0xFF) == 0 ? 0 : 0xFF) << shift;
+            }
+            assertThat(result[i]).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void composedMatrixMatchesSuccessivePasses() {
+        ColorMatrix first = ColorMatrix.saturation(0.5);
+        ColorMatrix second = ColorMatrix.brightness(1.1);
+        int[] pixels = randomPixels(1000);
+
+        int[] once = new int[pixels.length];
+        first.then(second).apply(pixels, once, false);
+        int[] intermediate = new int[pixels.length];
+        first.apply(pixels, intermediate, false);
+        int[] twice = new int[pixels.length];
+        second.apply(intermediate, twice, false);
+
+        // The fused pass rounds once instead of twice, so channels may differ by one
+        for (int i = 0; i < pixels.length; i++) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                assertThat((once[i] >> shift) & 0xFF).isCloseTo((twice[i] >> shift) & 0xFF, Offset.offset(1));
+            }
+        }
+    }
+
+    private static int[] randomPixels(int count) {
+        Random random = new Random(42);
+        int[] pixels = new int[count];
+        for (int i = 0; i < count; i++) {
+            pixels[i] = random.nextInt();
+        }
+        // Extremes, where clamping and rounding matter most
+        pixels[0] = 0x00000000;
+        pixels[1] = 0xFFFFFFFF;
+        pixels[2] = 0x80808080;
+        return pixels;
+    }
+}
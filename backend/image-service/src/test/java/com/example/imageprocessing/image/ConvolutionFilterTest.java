@@ -0,0 +1,94 @@
+package com.example.imageprocessing.image;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ConvolutionFilterTest {
+
+    private final ConvolutionFilter filter = new ConvolutionFilter(2);
+
+    @AfterEach
+    void shutdown() {
+        filter.shutdown();
+    }
+
+    @Test
+    void boxBlurVarianceMatchesGaussian() {
+        for (double sigma : new double[]{2.5, 3, 4.2, 7, 10, 25, 60, 150}) {
+            ConvolutionFilter.RowFilter rowFilter = ConvolutionFilter.rowFilter(sigma);
+
+            // The blurred impulse is the filter's kernel; far enough from the ends to see all of it
+            int length = 2 * rowFilter.reach() + 101;
+            int centre = length / 2;
+            int[] line = new int[length];
+            line[centre] = 1 << 20;
+            int[] output = new int[length];
+            rowFilter.filter(line, new int[length], output);
+
+            double mass = 0;
+            double moment = 0;
+            for (int x = 0; x < length; x++) {
+                mass += output[x];
+                moment += (double) output[x] * (x - centre) * (x - centre);
+            }
+            // Box widths are odd integers, so mixing the two widths nearest the ideal one can only move
+            // the variance in steps of ((w + 2)^2 - w^2) / 12; the mix is the one nearest the Gaussian's
+            double halfStep = (Math.sqrt(4 * sigma * sigma + 1) + 1) / 6;
+            assertThat(mass).as("mass for sigma %s", sigma).isCloseTo(1 << 20, within(0.001 * (1 << 20)));
+            assertThat(moment / mass).as("variance for sigma %s", sigma)
+                    .isCloseTo(sigma * sigma, within(halfStep + 0.001 * sigma * sigma));
+        }
+    }
+
+    @Test
+    void flatLinesStayExactlyFlat() {
+        for (double sigma : new double[]{0.5, 1, 2, 2.5, 10, 100, ConvolutionFilter.MAX_SIGMA}) {
+            ConvolutionFilter.RowFilter rowFilter = ConvolutionFilter.rowFilter(sigma);
+            for (int value : new int[]{0, 1, 17 << 4, 128 << 4, 255 << 4}) {
+                int[] line = new int[500];
+                Arrays.fill(line, value);
+                int[] output = new int[line.length];
+                rowFilter.filter(line, new int[line.length], output);
+
+                assertThat(output).as("sigma %s, value %s", sigma, value).containsOnly(value);
+            }
+        }
+    }
+
+    @Test
+    void flatImagesStayExactlyFlat() {
+        for (double sigma : new double[]{1.5, 12, 80}) {
+            BufferedImage opaque = flat(BufferedImage.TYPE_INT_RGB, new Color(200, 37, 5));
+            assertThat(pixels(filter.blur(opaque, sigma))).containsOnly(pixels(opaque)[0]);
+
+            // Translucent images are blurred premultiplied, which rounds the colors once
+            BufferedImage translucent = flat(BufferedImage.TYPE_INT_ARGB, new Color(10, 240, 99, 128));
+            BufferedImage premultiplied = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB_PRE);
+            premultiplied.setRGB(0, 0, pixels(translucent)[0]);
+            assertThat(pixels(filter.blur(translucent, sigma))).containsOnly(premultiplied.getRGB(0, 0));
+
+            assertThat(pixels(filter.sharpen(opaque, 2, sigma))).containsOnly(pixels(opaque)[0]);
+        }
+    }
+
+    private static BufferedImage flat(int type, Color color) {
+        BufferedImage image = new BufferedImage(300, 200, type);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setComposite(AlphaComposite.Src);
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.dispose();
+        return image;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+}
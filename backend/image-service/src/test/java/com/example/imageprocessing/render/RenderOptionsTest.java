@@ -0,0 +1,129 @@
+package com.example.imageprocessing.render;
+
+import com.example.imageprocessing.image.ImageTransformationService.CropOptions;
+import com.example.imageprocessing.image.ImageTransformationService.FilterOptions;
+import com.example.imageprocessing.image.ImageTransformationService.ResizeOptions;
+import com.example.imageprocessing.image.ImageTransformationService.TransformationOptions;
+import com.example.imageprocessing.image.ImageTransformationService.WatermarkOptions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RenderOptionsTest {
+
+    @Test
+    void roundTripsEveryOption() {
+        TransformationOptions options = allOptions();
+
+        TransformationOptions parsed = RenderOptions.parse(RenderOptions.format(options));
+
+        assertThat(parsed).usingRecursiveComparison().isEqualTo(options);
+        assertThat(RenderOptions.format(parsed)).isEqualTo(RenderOptions.format(options));
+    }
+
+    @Test
+    void roundTripsDoublesExactly() {
+        double[] values = {0, -0.5, 0.1, 1.0 / 3, 1, 100, 1e-9, 2.5e10, -273.15, Double.MIN_VALUE, 123456789.123456789};
+        Random random = new Random(7);
+        for (int i = 0; i < values.length + 1000; i++) {
+            double value = i < values.length ? values[i] : (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 6);
+            TransformationOptions options = new TransformationOptions();
+            FilterOptions filters = new FilterOptions();
+            filters.setBrightness(value);
+            filters.setHue(value);
+            options.setFilters(filters);
+
+            FilterOptions parsed = RenderOptions.parse(RenderOptions.format(options)).getFilters();
+
+            assertThat(parsed.getBrightness()).isEqualTo(value);
+            assertThat(parsed.getHue()).isEqualTo(value);
+        }
+    }
+
+    @Test
+    void writesNumbersWithoutTrailingZeros() {
+        TransformationOptions options = new TransformationOptions();
+        FilterOptions filters = new FilterOptions();
+        filters.setBlur(3.0);
+        filters.setContrast(1.50);
+        options.setFilters(filters);
+
+        assertThat(RenderOptions.format(options)).isEqualTo("contrast_1.5,blur_3");
+    }
+
+    @Test
+    void roundTripsWatermarkTextWithSeparatorsAndUnicode() {
+        for (String text : new String[]{"", "a", "© 2024, Example_Co", "a,b_c/d+e=f?g&h#i%j", "日本語 🌅", "  padded  ", "\n"}) {
+            TransformationOptions options = new TransformationOptions();
+            WatermarkOptions watermark = new WatermarkOptions();
+            watermark.setText(text);
+            options.setWatermark(watermark);
+
+            String path = RenderOptions.format(options);
+
+            assertThat(path).matches("wmtext_[A-Za-z0-9_-]*");
+            assertThat(RenderOptions.parse(path).getWatermark().getText()).isEqualTo(text);
+        }
+    }
+
+    @Test
+    void formatsOptionsThatChangeNothingAsOriginal() {
+        TransformationOptions options = new TransformationOptions();
+
+        assertThat(RenderOptions.format(options)).isEqualTo(RenderOptions.ORIGINAL);
+        assertThat(RenderOptions.parse(RenderOptions.ORIGINAL)).usingRecursiveComparison().isEqualTo(options);
+    }
+
+    @Test
+    void rejectsUnknownAndMalformedTokens() {
+        assertThatThrownBy(() -> RenderOptions.parse("w_400,frobnicate_1")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RenderOptions.parse("w_wide")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RenderOptions.parse("crop_1_2")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static TransformationOptions allOptions() {
+        TransformationOptions options = new TransformationOptions();
+
+        CropOptions crop = new CropOptions();
+        crop.setX(10);
+        crop.setY(0);
+        crop.setWidth(800);
+        crop.setHeight(600);
+        options.setCrop(crop);
+
+        ResizeOptions resize = new ResizeOptions();
+        resize.setWidth(400);
+        resize.setHeight(300);
+        options.setResize(resize);
+        options.setRotate(-90);
+
+        FilterOptions filters = new FilterOptions();
+        filters.setGrayscale(true);
+        filters.setSepia(true);
+        filters.setBrightness(1.25);
+        filters.setContrast(0.8);
+        filters.setSaturation(0.1);
+        filters.setHue(-33.333);
+        filters.setInvert(true);
+        filters.setBlur(12.0);
+        filters.setSharpen(1.5);
+        filters.setSharpenRadius(0.75);
+        options.setFilters(filters);
+
+        WatermarkOptions watermark = new WatermarkOptions();
+        watermark.setText("Draft, not for release");
+        watermark.setImageId(42L);
+        watermark.setPosition("bottom-right");
+        watermark.setOpacity(0.35);
+        watermark.setScale(0.2);
+        watermark.setTile(true);
+        watermark.setColor("#ff8800");
+        options.setWatermark(watermark);
+
+        options.setFormat("webp");
+        return options;
+    }
+}
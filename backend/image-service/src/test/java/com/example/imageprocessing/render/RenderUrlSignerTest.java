@@ -0,0 +1,78 @@
+package com.example.imageprocessing.render;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RenderUrlSignerTest {
+
+    private static final long IMAGE_ID = 1234;
+    private static final String OPTIONS = "crop_0_0_800_600,w_400,gray,wmtext_RHJhZnQ,f_webp";
+
+    private final RenderUrlSigner signer = new RenderUrlSigner("test-secret", "https://img.example.com/");
+
+    @Test
+    void acceptsItsOwnSignature() {
+        assertThat(signer.verify(signer.sign(IMAGE_ID, OPTIONS), IMAGE_ID, OPTIONS)).isTrue();
+    }
+
+    @Test
+    void rejectsAnySingleCharacterChangeOfTheOptions() {
+        String signature = signer.sign(IMAGE_ID, OPTIONS);
+        for (int i = 0; i < OPTIONS.length(); i++) {
+            for (char replacement : new char[]{'a', 'Z', '0', '_', ','}) {
+                if (OPTIONS.charAt(i) == replacement) {
+                    continue;
+                }
+                String changed = OPTIONS.substring(0, i) + replacement + OPTIONS.substring(i + 1);
+                assertThat(signer.verify(signature, IMAGE_ID, changed)).as(changed).isFalse();
+            }
+        }
+    }
+
+    @Test
+    void rejectsAnySingleDigitChangeOfTheImageId() {
+        String signature = signer.sign(IMAGE_ID, OPTIONS);
+        String id = Long.toString(IMAGE_ID);
+        for (int i = 0; i < id.length(); i++) {
+            for (char digit = '0'; digit <= '9'; digit++) {
+                if (id.charAt(i) == digit) {
+                    continue;
+                }
+                long changed = Long.parseLong(id.substring(0, i) + digit + id.substring(i + 1));
+                assertThat(signer.verify(signature, changed, OPTIONS)).as("image %s", changed).isFalse();
+            }
+        }
+    }
+
+    @Test
+    void rejectsPathsMovedBetweenTheImageIdAndTheOptions() {
+        // "/12/34..." and "/123/4..." must not share a signature
+        assertThat(signer.verify(signer.sign(12, "34,w_1"), 123, "4,w_1")).isFalse();
+    }
+
+    @Test
+    void rejectsAnySingleCharacterChangeOfTheSignature() {
+        String signature = signer.sign(IMAGE_ID, OPTIONS);
+        for (int i = 0; i < signature.length(); i++) {
+            char replacement = signature.charAt(i) == 'A' ? 'B' : 'A';
+            String changed = signature.substring(0, i) + replacement + signature.substring(i + 1);
+            assertThat(signer.verify(changed, IMAGE_ID, OPTIONS)).as(changed).isFalse();
+        }
+        assertThat(signer.verify(signature.substring(1), IMAGE_ID, OPTIONS)).isFalse();
+        assertThat(signer.verify(signature + "A", IMAGE_ID, OPTIONS)).isFalse();
+    }
+
+    @Test
+    void rejectsSignaturesMadeWithAnotherSecret() {
+        RenderUrlSigner other = new RenderUrlSigner("other-secret", "");
+
+        assertThat(signer.verify(other.sign(IMAGE_ID, OPTIONS), IMAGE_ID, OPTIONS)).isFalse();
+    }
+
+    @Test
+    void buildsUrlsUnderTheBaseUrl() {
+        assertThat(signer.url(IMAGE_ID, OPTIONS))
+                .isEqualTo("https://img.example.com/r/" + signer.sign(IMAGE_ID, OPTIONS) + "/" + IMAGE_ID + "/" + OPTIONS);
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.imageprocessing.similarity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MultiIndexHashTableTest {
+
+    private final Random random = new Random(11);
+    // Hashes cluster around a few centres so every radius up to the maximum finds something
+    private final long[] centres = {random.nextLong(), random.nextLong(), random.nextLong(), 0L, -1L};
+    private long nextId = 1;
+
+    @Test
+    void smallTableMatchesBruteForce() {
+        MultiIndexHashTable table = new MultiIndexHashTable();
+        Map<Long, Long> reference = fill(table, 300);
+
+        assertMatchesBruteForce(table, reference);
+    }
+
+    @Test
+    void indexedTableMatchesBruteForce() {
+        MultiIndexHashTable table = new MultiIndexHashTable();
+        Map<Long, Long> reference = fill(table, 6000);
+        table.rebuild();
+
+        assertMatchesBruteForce(table, reference);
+    }
+
+    @Test
+    void indexedTableWithUnindexedTailMatchesBruteForce() {
+        MultiIndexHashTable table = new MultiIndexHashTable();
+        Map<Long, Long> reference = fill(table, 5000);
+        table.rebuild();
+        // Fewer than a rebuild's worth, so these are only found by the linear scan
+        reference.putAll(fill(table, 400));
+
+        assertMatchesBruteForce(table, reference);
+    }
+
+    @Test
+    void removedEntriesAreNotFoundBeforeOrAfterRebuild() {
+        MultiIndexHashTable table = new MultiIndexHashTable();
+        Map<Long, Long> reference = fill(table, 5000);
+        table.rebuild();
+        reference.putAll(fill(table, 400));
+
+        // From the indexed entries and from the tail
+        List<Long> ids = new ArrayList<>(reference.keySet());
+        for (int i = 0; i < ids.size(); i += 3) {
+            long id = ids.get(i);
+            assertThat(table.remove(reference.get(id), id)).isTrue();
+            assertThat(table.remove(reference.get(id), id)).isFalse();
+            reference.remove(id);
+        }
+        assertThat(table.size()).isEqualTo(reference.size());
+        assertMatchesBruteForce(table, reference);
+
+        // Compacting drops the removed entries; what is left must still be found
+        table.rebuild();
+        assertThat(table.size()).isEqualTo(reference.size());
+        assertMatchesBruteForce(table, reference);
+
+        // Removing enough to fall below the indexing threshold goes back to scanning
+        ids = new ArrayList<>(reference.keySet());
+        for (int i = 0; i < ids.size() - 500; i++) {
+            table.remove(reference.remove(ids.get(i)), ids.get(i));
+        }
+        table.rebuild();
+        assertMatchesBruteForce(table, reference);
+    }
+
+    @Test
+    void removeNeedsTheMatchingHashAndId() {
+        MultiIndexHashTable table = new MultiIndexHashTable();
+        Map<Long, Long> reference = fill(table, 2000);
+        table.rebuild();
+        long id = reference.keySet().iterator().next();
+        long hash = reference.get(id);
+
+        assertThat(table.remove(hash ^ 1, id)).isFalse();
+        assertThat(table.remove(hash, -1)).isFalse();
+        assertThat(table.size()).isEqualTo(reference.size());
+    }
+
+    private Map<Long, Long> fill(MultiIndexHashTable table, int entries) {
+        Map<Long, Long> added = new LinkedHashMap<>();
+        for (int i = 0; i < entries; i++) {
+            long hash;
+            if (i % 50 == 1) {
+                // The same hash under another id
+                hash = added.values().iterator().next();
+            } else {
+                hash = flipBits(centres[random.nextInt(centres.length)], random.nextInt(24));
+            }
+            long id = nextId++;
+            table.add(hash, id);
+            added.put(id, hash);
+        }
+        return added;
+    }
+
+    private long flipBits(long hash, int bits) {
+        for (int i = 0; i < bits; i++) {
+            hash ^= 1L << random.nextInt(64);
+        }
+        return hash;
+    }
+
+    private void assertMatchesBruteForce(MultiIndexHashTable table, Map<Long, Long> reference) {
+        List<Long> queries = new ArrayList<>();
+        for (long centre : centres) {
+            queries.add(centre);
+            queries.add(flipBits(centre, 5));
+        }
+        queries.add(reference.values().iterator().next());
+        queries.add(random.nextLong());
+
+        for (long query : queries) {
+            for (int maxDistance = 0; maxDistance <= MultiIndexHashTable.MAX_DISTANCE; maxDistance++) {
+                List<String> expected = new ArrayList<>();
+                for (Map.Entry<Long, Long> entry : reference.entrySet()) {
+                    int distance = Long.bitCount(query ^ entry.getValue());
+                    if (distance <= maxDistance) {
+                        expected.add(match(entry.getKey(), entry.getValue(), distance));
+                    }
+                }
+                List<String> found = new ArrayList<>();
+                table.search(query, maxDistance, (id, hash, distance) -> found.add(match(id, hash, distance)));
+
+                // Every match exactly once: no entry reported from two chunks
+                assertThat(found).as("query %016x within %d", query, maxDistance)
+                        .doesNotHaveDuplicates()
+                        .containsExactlyInAnyOrderElementsOf(expected);
+            }
+        }
+    }
+
+    private static String match(long id, long hash, int distance) {
+        return id + ":" + Long.toHexString(hash) + ":" + distance;
+    }
+}